@@ -25,8 +25,10 @@ import java.util.logging.Logger;
 
 import org.freedesktop.dbus.DBusConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
+import org.ow2.erocci.backend.impl.ActionJobManager;
 import org.ow2.erocci.backend.impl.CoreImpl;
 import org.ow2.erocci.model.ConfigurationManager;
+import org.ow2.erocci.model.persistence.ModelJournal;
 
 /**
  * Erocci backend DBus service implementation.
@@ -66,6 +68,13 @@ private CoreImpl coreImpl = new CoreImpl();
 	 * (if null or empty, the package name of the current class will be used).
 	 */
 	public final void start(String dbusServiceName) {
+		try {
+			// Reload the model saved by a previous run (if erocci.data.dir is set).
+			ModelJournal.getInstance().open();
+		} catch (IOException e) {
+			logger.warning("Error while loading the persisted model, starting with an empty model !");
+			e.printStackTrace(System.err);
+		}
 		try {
 			if(dbusServiceName == null || dbusServiceName.trim().length() < 1)
 				dbusServiceName = this.getClass().getPackage().getName();
@@ -75,6 +84,13 @@ private CoreImpl coreImpl = new CoreImpl();
             dbusConnection.requestBusName(dbusServiceName.trim());
             //EROCCI considers that the service is available on / (convention)
             dbusConnection.exportObject("/", coreImpl);
+            // Signal the end of the actions run asynchronously.
+            coreImpl.getActionJobManager().addListener(new ActionJobManager.ActionJobListener() {
+                @Override
+                public void jobCompleted(ActionJobManager.ActionJob job) {
+                    sendActionCompleted(job);
+                }
+            });
             
             // dbusConnection.exportObject("/action", actionImpl);
             
@@ -87,6 +103,19 @@ private CoreImpl coreImpl = new CoreImpl();
         }
 	}
 
+	/**
+	 * Send the ActionCompleted signal of an action job.
+	 * @param job
+	 */
+	private void sendActionCompleted(ActionJobManager.ActionJob job) {
+		String error = job.getError() == null ? "" : job.getError();
+		try {
+			dbusConnection.sendSignal(new action.ActionCompleted("/", job.getId(), job.getStatus(), error));
+		} catch (DBusException e) {
+			logger.warning("Error while sending the completion signal of action job " + job.getId() + " : " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Sample main program
 	 * @param args
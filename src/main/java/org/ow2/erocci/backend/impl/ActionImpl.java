@@ -16,7 +16,11 @@
 package org.ow2.erocci.backend.impl;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.freedesktop.dbus.Variant;
@@ -24,8 +28,11 @@ import org.occiware.clouddesigner.occi.Action;
 import org.occiware.clouddesigner.occi.Entity;
 import org.occiware.clouddesigner.occi.Extension;
 import org.occiware.clouddesigner.occi.util.OcciHelper;
+import org.ow2.erocci.backend.Pair;
+import org.ow2.erocci.backend.Struct6;
 import org.ow2.erocci.backend.action;
 import org.ow2.erocci.model.ConfigurationManager;
+import org.ow2.erocci.model.EntityState;
 import org.ow2.erocci.model.exception.ExecuteActionException;
 import org.ow2.erocci.runtime.ActionExecutorFactory;
 import org.ow2.erocci.runtime.IActionExecutor;
@@ -40,6 +47,7 @@ public class ActionImpl implements action {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
     private int mode = 0;
+    private final ActionJobManager jobManager = new ActionJobManager();
 
     @Override
     public boolean isRemote() {
@@ -52,73 +60,299 @@ public class ActionImpl implements action {
     }
 
     /**
-     * Launch an action on a resource or link.
+     *
+     * @return the manager of the action jobs.
+     */
+    public ActionJobManager getJobManager() {
+        return jobManager;
+    }
+
+    /**
+     * Launch an action on a resource or link, the action is run
+     * asynchronously (see ActionJobManager).
      *
      * @param id , represent entityId ex: compute/vm1
      * @param action_id, represent action scheme + term ex:
      * http://schemas.ogf.org/occi/infrastructure/compute/action#start
      * @param attributes, the attributes of the action, may be empty.
+     * @return the job id of the action, to use with GetActionStatus.
      */
     @Override
-    public void Action(String id, String action_id, Map<String, Variant> attributes) {
+    public String Action(String id, final String action_id, Map<String, Variant> attributes) {
 
-        logger.info("id " + id + " >-- action_id: " + action_id + " --< attributes=" + Utils.convertVariantMap(attributes));
+        final Map<String, String> actionAttributes = Utils.convertVariantMap(attributes);
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("id " + id + " >-- action_id: " + action_id + " --< attributes=" + actionAttributes);
+        }
 
         if (action_id == null) {
-            // TODO : return fail or no state.
-            return;
+            return jobManager.fail(id, action_id, "No action id provided");
         }
         // TODO : Owner in parameters entry of Action method.
-        String owner = ConfigurationManager.DEFAULT_OWNER;
+        final String owner = ConfigurationManager.DEFAULT_OWNER;
 
-        Map<String, String> actionAttributes = Utils.convertVariantMap(attributes);
+        final Entity entity = ConfigurationManager.findEntity(owner, id);
+        if (entity == null) {
+            logger.info("Entity doesnt exist : " + id);
+            return jobManager.fail(id, action_id, "Entity doesnt exist : " + id);
+        }
+        // Unknown actions are rejected before reaching the executor.
+        ActionTarget target = resolveTarget(owner, entity, action_id);
+        if (target.error != null) {
+            return jobManager.fail(entity.getId(), action_id, target.error);
+        }
+        return jobManager.submit(entity.getId(), action_id,
+                createTask(owner, entity, target, action_id, actionAttributes));
+    }
 
-        Entity entity = ConfigurationManager.findEntity(owner, id);
-        if (entity != null) {
-            if (mode == CoreImpl.DEFAULT_MODE) {
-                // TODO : Model validator AFTER launching the action, this can cause a lot of problem if constraints aren't respected.
-                // Get the executor corresponding on entity kind.
-                // Launch the action effectively.
-                String entityKind = entity.getKind().getScheme() + entity.getKind().getTerm();
-                IActionExecutor actExecutor = ActionExecutorFactory.build(ConfigurationManager.getExtensionForKind(owner, entityKind));
+    /**
+     * Launch an action on all the entities of a collection, the actions are
+     * run asynchronously as one job (see ActionJobManager.submitAll).
+     *
+     * @param id , a category id (kind or mixin) ex:
+     * http://schemas.ogf.org/occi/infrastructure#compute, or a path prefix ex:
+     * compute/
+     * @param action_id, represent action scheme + term ex:
+     * http://schemas.ogf.org/occi/infrastructure/compute/action#start
+     * @param attributes, the attributes of the action, may be empty.
+     * @return the job id of the actions, to use with GetActionStatus and
+     * GetActionOutcomes.
+     */
+    @Override
+    public String ActionOnCollection(String id, final String action_id, Map<String, Variant> attributes) {
 
-                try {
-                    actExecutor.execute(action_id, actionAttributes, entity, IActionExecutor.FROM_ACTION);
-                } catch (ExecuteActionException ex) {
-                    logger.warning("Action launch error : " + ex.getMessage());
-                }
-            } else if (mode == CoreImpl.EMBED_MODE) {
+        final Map<String, String> actionAttributes = Utils.convertVariantMap(attributes);
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("collection " + id + " >-- action_id: " + action_id + " --< attributes=" + actionAttributes);
+        }
 
-                String entityKind = entity.getKind().getScheme() + entity.getKind().getTerm();
-                Extension ext = ConfigurationManager.getExtensionForKind(owner, entityKind);
-                if (action_id == null) {
-                    logger.warning("You must provide an action kind for entity : " + entity.getId());
-                    return;
-                }
-                Action actionKind = ConfigurationManager.getActionKindFromExtension(ext, action_id);
-                if (actionKind == null) {
-                    logger.warning(
-                            "Action : " + action_id + " doesnt exist on extension : " + ext.getName());
-                }
+        if (id == null || action_id == null) {
+            return jobManager.fail(id, action_id, "No collection id or action id provided");
+        }
+        // The collection is resolved once from the indexes, entities added
+        // later are not in this job.
+        Map<String, List<Entity>> entitiesByOwner;
+        if (id.startsWith("http")) {
+            entitiesByOwner = ConfigurationManager.findAllEntitiesForCategoryId(id);
+        } else {
+            entitiesByOwner = ConfigurationManager.findAllEntitiesLikePartialIdOnAllOwner(id);
+        }
 
-                String[] actionParameters = Utils.getActionParametersArray(actionAttributes);
-                try {
-                    if (actionParameters == null) {
-                        OcciHelper.executeAction(entity, actionKind.getTerm());
-                    } else {
-                        OcciHelper.executeAction(entity, actionKind.getTerm(), actionParameters);
+        // Key : owner + kind id, the extension and executor of a kind are
+        // resolved once for the collection.
+        Map<String, ActionTarget> targets = new HashMap<>();
+        List<ActionJobManager.ActionItem> items = new ArrayList<>();
+        for (Map.Entry<String, List<Entity>> entry : entitiesByOwner.entrySet()) {
+            String owner = entry.getKey();
+            for (Entity entity : entry.getValue()) {
+                ActionTarget target;
+                if (entity.getKind() == null) {
+                    // Failed outcome for this entity, as for an unsupported kind.
+                    target = resolveTarget(owner, entity, action_id);
+                } else {
+                    String key = owner + ' ' + entity.getKind().getScheme() + entity.getKind().getTerm();
+                    target = targets.get(key);
+                    if (target == null) {
+                        target = resolveTarget(owner, entity, action_id);
+                        targets.put(key, target);
                     }
-                } catch (InvocationTargetException ex) {
-                    logger.warning("Action failed to execute : " + ex.getMessage());
                 }
+                items.add(new ActionJobManager.ActionItem(entity.getId(),
+                        createTask(owner, entity, target, action_id, actionAttributes)));
             }
+        }
+        return jobManager.submitAll(id, action_id, items);
+    }
+
+    /**
+     * Get the status of an action job.
+     *
+     * @param job_id
+     * @return the status (pending, running, done, failed or unknown if the
+     * job has expired) and the error message of a failed job (empty
+     * otherwise).
+     */
+    @Override
+    public Pair<String, String> GetActionStatus(String job_id) {
+        ActionJobManager.ActionJob job = jobManager.getJob(job_id);
+        if (job == null) {
+            return new Pair<>(ActionJobManager.STATUS_UNKNOWN, "");
+        }
+        String error = job.getError();
+        return new Pair<>(job.getStatus(), error == null ? "" : error);
+    }
 
+    /**
+     * Get the outcomes of an action job, for each entity of a collection job.
+     *
+     * @param job_id
+     * @return the entity id, status and error message of the actions, in
+     * collection order. A job on one entity gives one outcome, an unknown or
+     * expired job gives none.
+     */
+    @Override
+    public List<Struct6> GetActionOutcomes(String job_id) {
+        List<Struct6> outcomes = new ArrayList<>();
+        ActionJobManager.ActionJob job = jobManager.getJob(job_id);
+        if (job == null) {
+            return outcomes;
+        }
+        if (!job.isCollection()) {
+            String error = job.getError();
+            outcomes.add(new Struct6(job.getEntityId(), job.getStatus(), error == null ? "" : error));
+            return outcomes;
+        }
+        for (ActionJobManager.ActionOutcome outcome : job.getOutcomes()) {
+            String error = outcome.getError();
+            outcomes.add(new Struct6(outcome.getEntityId(), outcome.getStatus(), error == null ? "" : error));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Resolve the extension of an entity kind and the way to run an action
+     * on the entities of this kind.
+     *
+     * @param owner
+     * @param entity
+     * @param action_id
+     * @return the target, with an error if the action cannot be run on this
+     * kind.
+     */
+    private ActionTarget resolveTarget(final String owner, final Entity entity, final String action_id) {
+        if (entity.getKind() == null) {
+            String error = "No kind for entity : " + entity.getId();
+            logger.warning(error);
+            return new ActionTarget(null, null, error);
+        }
+        String entityKind = entity.getKind().getScheme() + entity.getKind().getTerm();
+        Extension ext = ConfigurationManager.getExtensionForKind(owner, entityKind);
+        String error;
+        if (ext == null) {
+            error = "No extension found for kind : " + entityKind;
+        } else if (mode == CoreImpl.EMBED_MODE) {
+            Action actionKind = ConfigurationManager.getActionKindFromExtension(ext, action_id);
+            if (actionKind != null) {
+                return new ActionTarget(actionKind, null, null);
+            }
+            error = "Action : " + action_id + " doesnt exist on extension : " + ext.getName();
         } else {
-            logger.info("Entity doesnt exist : " + id);
-            // return failed; (or state)
+            // Get the executor corresponding on entity kind.
+            IActionExecutor actExecutor = ActionExecutorFactory.build(ext);
+            if (actExecutor.isActionSupported(action_id)) {
+                return new ActionTarget(null, actExecutor, null);
+            }
+            error = "Action : " + action_id + " is not supported on extension : " + ext.getName();
+        }
+        logger.warning(error);
+        return new ActionTarget(null, null, error);
+    }
+
+    /**
+     *
+     * @param owner
+     * @param entity
+     * @param target
+     * @param action_id
+     * @param actionAttributes
+     * @return the task running the action on the entity, failing with the
+     * target error if the action cannot be run.
+     */
+    private ActionJobManager.ActionTask createTask(final String owner, final Entity entity,
+            final ActionTarget target, final String action_id, final Map<String, String> actionAttributes) {
+        return new ActionJobManager.ActionTask() {
+            @Override
+            public void run() throws ExecuteActionException {
+                if (target.error != null) {
+                    throw new ExecuteActionException(target.error);
+                } else if (target.actionKind != null) {
+                    executeEmbedded(owner, entity, target.actionKind, actionAttributes);
+                } else {
+                    execute(owner, entity, target.executor, action_id, actionAttributes);
+                }
+            }
+        };
+    }
+
+    /**
+     * Execute an action with the executor of the entity's extension, on an
+     * action job thread. The actions on an entity are serialized, the
+     * executor runs without the owner's lock and the changes made by the
+     * action are journaled under the owner's write lock.
+     *
+     * @param owner
+     * @param entity
+     * @param actExecutor
+     * @param action_id
+     * @param actionAttributes
+     * @throws ExecuteActionException if the action has failed.
+     */
+    private void execute(final String owner, final Entity entity, final IActionExecutor actExecutor,
+            final String action_id, final Map<String, String> actionAttributes) throws ExecuteActionException {
+        synchronized (ConfigurationManager.getEntityMonitor(owner, entity.getId())) {
+            EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+            try {
+                // TODO : Model validator AFTER launching the action, this can cause a lot of problem if constraints aren't respected.
+                // Launch the action effectively.
+                actExecutor.execute(action_id, actionAttributes, entity, IActionExecutor.FROM_ACTION);
+            } catch (ExecuteActionException ex) {
+                logger.warning("Action launch error : " + ex.getMessage());
+                throw ex;
+            } finally {
+                // The action may have changed the entity attributes (ex: state).
+                ConfigurationManager.commitEntityChanges(state);
+            }
+        }
+    }
+
+    /**
+     * Execute an action with the OCCI model (embedded mode), on an action job
+     * thread. As for the executors, the actions on an entity are serialized
+     * and run without the owner's lock.
+     *
+     * @param owner
+     * @param entity
+     * @param actionKind
+     * @param actionAttributes
+     * @throws ExecuteActionException if the action has failed.
+     */
+    private void executeEmbedded(final String owner, final Entity entity, final Action actionKind,
+            final Map<String, String> actionAttributes) throws ExecuteActionException {
+        String[] actionParameters = Utils.getActionParametersArray(actionAttributes);
+        synchronized (ConfigurationManager.getEntityMonitor(owner, entity.getId())) {
+            EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+            try {
+                if (actionParameters == null) {
+                    OcciHelper.executeAction(entity, actionKind.getTerm());
+                } else {
+                    OcciHelper.executeAction(entity, actionKind.getTerm(), actionParameters);
+                }
+            } catch (InvocationTargetException ex) {
+                logger.warning("Action failed to execute : " + ex.getMessage());
+                throw new ExecuteActionException("Action failed to execute : " + ex.getMessage(), ex);
+            } finally {
+                // The action may have changed the entity attributes (ex: state).
+                ConfigurationManager.commitEntityChanges(state);
+            }
         }
+    }
 
-        // TODO : Give a return value to this method (ex: a state or if the action command succeed or not).
+    /**
+     * The way to run an action on the entities of a kind : the action kind
+     * (embedded mode) or the executor, or an error if the action cannot be
+     * run.
+     */
+    private static class ActionTarget {
+
+        private final Action actionKind;
+        private final IActionExecutor executor;
+        private final String error;
+
+        ActionTarget(final Action actionKind, final IActionExecutor executor, final String error) {
+            this.actionKind = actionKind;
+            this.executor = executor;
+            this.error = error;
+        }
     }
 
 }
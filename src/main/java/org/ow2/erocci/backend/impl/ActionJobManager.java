@@ -0,0 +1,549 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.ow2.erocci.model.exception.ExecuteActionException;
+
+/**
+ * Run the OCCI actions asynchronously, outside of the DBus dispatch thread.
+ * Each action is a job with an id, his status and error are kept in a job
+ * table until they expire.
+ *
+ * Configuration (system properties) :
+ * <ul>
+ * <li>erocci.action.threads : number of threads running the actions (default
+ * 4),</li>
+ * <li>erocci.action.jobs.max : maximum number of jobs in the table (default
+ * 1000), the oldest finished jobs are removed first,</li>
+ * <li>erocci.action.jobs.ttl : time in milliseconds a finished job is kept
+ * (default 600000), 0 to keep it until it is removed by a newer job.</li>
+ * <li>erocci.action.collection.concurrency : maximum number of actions run
+ * at the same time by a collection job (default 4).</li>
+ * </ul>
+ *
+ */
+public class ActionJobManager {
+
+    public static final String THREADS_PROPERTY = "erocci.action.threads";
+    public static final String MAX_JOBS_PROPERTY = "erocci.action.jobs.max";
+    public static final String JOB_TTL_PROPERTY = "erocci.action.jobs.ttl";
+    public static final String COLLECTION_CONCURRENCY_PROPERTY = "erocci.action.collection.concurrency";
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_FAILED = "failed";
+    /**
+     * Status of a job not in the table (expired or never submitted).
+     */
+    public static final String STATUS_UNKNOWN = "unknown";
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final ExecutorService executor;
+    /**
+     * Threads helping the job threads to run the actions of a collection
+     * job, at most (collectionConcurrency - 1) for a collection job.
+     */
+    private final ExecutorService collectionExecutor;
+    private final int maxJobs;
+    private final long jobTtl;
+    private final int collectionConcurrency;
+
+    /**
+     * Key : job id, in submission order.
+     */
+    private final LinkedHashMap<String, ActionJob> jobs = new LinkedHashMap<>();
+
+    private final List<ActionJobListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * An action to run.
+     */
+    public interface ActionTask {
+
+        void run() throws ExecuteActionException;
+    }
+
+    /**
+     * Notified when a job is finished (done or failed), on the thread which
+     * has run the job. A job failed before running (rejected or invalid) is
+     * notified on a job thread too, after his id is returned to the caller.
+     */
+    public interface ActionJobListener {
+
+        void jobCompleted(ActionJob job);
+    }
+
+    /**
+     * An action of a collection job.
+     */
+    public static class ActionItem {
+
+        private final String entityId;
+        private final ActionTask task;
+
+        /**
+         *
+         * @param entityId
+         * @param task the action, it may throw an ExecuteActionException to
+         * record an entity on which the action cannot be run.
+         */
+        public ActionItem(final String entityId, final ActionTask task) {
+            this.entityId = entityId;
+            this.task = task;
+        }
+    }
+
+    public ActionJobManager() {
+        this(Integer.getInteger(THREADS_PROPERTY, 4), Integer.getInteger(MAX_JOBS_PROPERTY, 1000),
+                Long.getLong(JOB_TTL_PROPERTY, 600000L), Integer.getInteger(COLLECTION_CONCURRENCY_PROPERTY, 4));
+    }
+
+    /**
+     *
+     * @param threads number of threads running the actions.
+     * @param maxJobs maximum number of jobs in the table.
+     * @param jobTtl time in milliseconds a finished job is kept, 0 for no
+     * expiration.
+     */
+    public ActionJobManager(final int threads, final int maxJobs, final long jobTtl) {
+        this(threads, maxJobs, jobTtl, Integer.getInteger(COLLECTION_CONCURRENCY_PROPERTY, 4));
+    }
+
+    /**
+     *
+     * @param threads number of threads running the actions.
+     * @param maxJobs maximum number of jobs in the table.
+     * @param jobTtl time in milliseconds a finished job is kept, 0 for no
+     * expiration.
+     * @param collectionConcurrency maximum number of actions run at the same
+     * time by a collection job.
+     */
+    public ActionJobManager(final int threads, final int maxJobs, final long jobTtl,
+            final int collectionConcurrency) {
+        this.maxJobs = Math.max(maxJobs, 1);
+        this.jobTtl = jobTtl;
+        this.collectionConcurrency = Math.max(collectionConcurrency, 1);
+        this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "erocci-action-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Bounded by the job threads, each one uses at most
+        // (collectionConcurrency - 1) helpers.
+        this.collectionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "erocci-action-collection-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue an action.
+     *
+     * @param entityId
+     * @param actionId
+     * @param task
+     * @return the job id. If the table is full of unfinished jobs, the job
+     * fails without running the action and is not kept.
+     */
+    public String submit(final String entityId, final String actionId, final ActionTask task) {
+        final ActionJob job = new ActionJob(Utils.createUUID(), entityId, actionId);
+        if (!register(job)) {
+            logger.warning("Too many running actions, action " + actionId + " on " + entityId + " rejected");
+            completeLater(job, STATUS_FAILED, "Too many running actions");
+            return job.getId();
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                job.status = STATUS_RUNNING;
+                try {
+                    task.run();
+                    complete(job, STATUS_DONE, null);
+                } catch (ExecuteActionException ex) {
+                    complete(job, STATUS_FAILED, ex.getMessage());
+                } catch (RuntimeException ex) {
+                    logger.warning("Action " + actionId + " on " + entityId + " failed : " + ex);
+                    complete(job, STATUS_FAILED, ex.toString());
+                }
+            }
+        });
+        return job.getId();
+    }
+
+    /**
+     * Queue the actions on a collection of entities as one job. The actions
+     * are run in parallel, at most erocci.action.collection.concurrency at the
+     * same time, the outcome of each action is kept on the job. The job is
+     * done when all the actions are done, failed when one of them has failed.
+     *
+     * @param collectionId the category id or path prefix of the collection.
+     * @param actionId
+     * @param items the actions, by entity.
+     * @return the job id. If the table is full of unfinished jobs, the job
+     * fails without running the actions and is not kept.
+     */
+    public String submitAll(final String collectionId, final String actionId, final List<ActionItem> items) {
+        final ActionJob job = new ActionJob(Utils.createUUID(), collectionId, actionId, items);
+        if (!register(job)) {
+            logger.warning("Too many running actions, action " + actionId + " on " + collectionId + " rejected");
+            completeLater(job, STATUS_FAILED, "Too many running actions");
+            return job.getId();
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                job.status = STATUS_RUNNING;
+                runAll(job, items);
+                int failed = 0;
+                for (ActionOutcome outcome : job.getOutcomes()) {
+                    if (!STATUS_DONE.equals(outcome.getStatus())) {
+                        failed++;
+                    }
+                }
+                if (failed == 0) {
+                    complete(job, STATUS_DONE, null);
+                } else {
+                    complete(job, STATUS_FAILED, failed + " of " + items.size() + " actions failed");
+                }
+            }
+        });
+        return job.getId();
+    }
+
+    /**
+     * Record a job failed before running (ex: unknown entity). The job is
+     * failed when this returns, the listeners are notified on a job thread.
+     *
+     * @param entityId
+     * @param actionId
+     * @param error
+     * @return the job id. If the table is full of unfinished jobs, the job is
+     * not kept.
+     */
+    public String fail(final String entityId, final String actionId, final String error) {
+        ActionJob job = new ActionJob(Utils.createUUID(), entityId, actionId);
+        if (!register(job)) {
+            logger.warning("Too many running actions, failed action " + actionId + " on " + entityId + " not kept");
+        }
+        completeLater(job, STATUS_FAILED, error);
+        return job.getId();
+    }
+
+    /**
+     *
+     * @param jobId
+     * @return the job, null if it is unknown or expired.
+     */
+    public ActionJob getJob(final String jobId) {
+        synchronized (jobs) {
+            ActionJob job = jobs.get(jobId);
+            if (job != null && isExpired(job, System.currentTimeMillis())) {
+                jobs.remove(jobId);
+                return null;
+            }
+            return job;
+        }
+    }
+
+    public void addListener(final ActionJobListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final ActionJobListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add a job to the table, after removing the expired jobs and, if the
+     * table is full, the oldest finished jobs.
+     *
+     * @param job
+     * @return false if the table is full of unfinished jobs.
+     */
+    private boolean register(final ActionJob job) {
+        long now = System.currentTimeMillis();
+        synchronized (jobs) {
+            Iterator<ActionJob> it = jobs.values().iterator();
+            while (it.hasNext()) {
+                if (isExpired(it.next(), now)) {
+                    it.remove();
+                }
+            }
+            it = jobs.values().iterator();
+            while (jobs.size() >= maxJobs && it.hasNext()) {
+                if (it.next().isFinished()) {
+                    it.remove();
+                }
+            }
+            if (jobs.size() >= maxJobs) {
+                return false;
+            }
+            jobs.put(job.getId(), job);
+            return true;
+        }
+    }
+
+    /**
+     * Run the actions of a collection job, on the job thread and on
+     * collection helper threads, and wait for their end.
+     *
+     * @param job
+     * @param items
+     */
+    private void runAll(final ActionJob job, final List<ActionItem> items) {
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < items.size()) {
+                    runItem(job.outcomes.get(index), items.get(index));
+                }
+            }
+        };
+        int helperCount = Math.min(collectionConcurrency, items.size()) - 1;
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 0; i < helperCount; i++) {
+            helpers.add(collectionExecutor.submit(worker));
+        }
+        worker.run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                logger.warning("Collection action error : " + ex.getCause());
+            }
+        }
+    }
+
+    private void runItem(final ActionOutcome outcome, final ActionItem item) {
+        outcome.status = STATUS_RUNNING;
+        try {
+            item.task.run();
+            outcome.complete(STATUS_DONE, null);
+        } catch (ExecuteActionException ex) {
+            outcome.complete(STATUS_FAILED, ex.getMessage());
+        } catch (RuntimeException ex) {
+            logger.warning("Action on " + item.entityId + " failed : " + ex);
+            outcome.complete(STATUS_FAILED, ex.toString());
+        }
+    }
+
+    private boolean isExpired(final ActionJob job, final long now) {
+        return jobTtl > 0 && job.isFinished() && now - job.completedAt >= jobTtl;
+    }
+
+    private void complete(final ActionJob job, final String status, final String error) {
+        finish(job, status, error);
+        notifyListeners(job);
+    }
+
+    /**
+     * Complete a job now and notify the listeners on a job thread, so they
+     * are notified after the job id is returned to the caller.
+     */
+    private void completeLater(final ActionJob job, final String status, final String error) {
+        finish(job, status, error);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListeners(job);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            notifyListeners(job);
+        }
+    }
+
+    private void finish(final ActionJob job, final String status, final String error) {
+        job.error = error;
+        job.completedAt = System.currentTimeMillis();
+        job.status = status;
+    }
+
+    private void notifyListeners(final ActionJob job) {
+        for (ActionJobListener listener : listeners) {
+            try {
+                listener.jobCompleted(job);
+            } catch (RuntimeException ex) {
+                logger.warning("Action job listener error : " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * An action job, his status is updated by the thread running it. A
+     * collection job has an outcome for each entity of the collection.
+     */
+    public static class ActionJob {
+
+        private final String id;
+        private final String entityId;
+        private final String actionId;
+        private final List<ActionOutcome> outcomes;
+        private final boolean collection;
+        private volatile String status = STATUS_PENDING;
+        private volatile String error = null;
+        private volatile long completedAt = 0;
+
+        ActionJob(final String id, final String entityId, final String actionId) {
+            this.id = id;
+            this.entityId = entityId;
+            this.actionId = actionId;
+            this.outcomes = Collections.emptyList();
+            this.collection = false;
+        }
+
+        ActionJob(final String id, final String collectionId, final String actionId, final List<ActionItem> items) {
+            this.id = id;
+            this.entityId = collectionId;
+            this.actionId = actionId;
+            List<ActionOutcome> itemOutcomes = new ArrayList<>(items.size());
+            for (ActionItem item : items) {
+                itemOutcomes.add(new ActionOutcome(item.entityId));
+            }
+            this.outcomes = Collections.unmodifiableList(itemOutcomes);
+            this.collection = true;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         *
+         * @return the entity id, or the collection id of a collection job.
+         */
+        public String getEntityId() {
+            return entityId;
+        }
+
+        public String getActionId() {
+            return actionId;
+        }
+
+        /**
+         *
+         * @return pending, running, done or failed.
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         *
+         * @return the error message of a failed job, null otherwise.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         *
+         * @return true if the job is done or failed.
+         */
+        public boolean isFinished() {
+            return STATUS_DONE.equals(status) || STATUS_FAILED.equals(status);
+        }
+
+        /**
+         *
+         * @return true if the job runs an action on a collection.
+         */
+        public boolean isCollection() {
+            return collection;
+        }
+
+        /**
+         *
+         * @return the outcomes of a collection job in collection order, empty
+         * for a job on one entity.
+         */
+        public List<ActionOutcome> getOutcomes() {
+            return outcomes;
+        }
+    }
+
+    /**
+     * The outcome of an action on an entity of a collection job.
+     */
+    public static class ActionOutcome {
+
+        private final String entityId;
+        private volatile String status = STATUS_PENDING;
+        private volatile String error = null;
+
+        ActionOutcome(final String entityId) {
+            this.entityId = entityId;
+        }
+
+        public String getEntityId() {
+            return entityId;
+        }
+
+        /**
+         *
+         * @return pending, running, done or failed.
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         *
+         * @return the error message of a failed action, null otherwise.
+         */
+        public String getError() {
+            return error;
+        }
+
+        private void complete(final String status, final String error) {
+            this.error = error;
+            this.status = status;
+        }
+    }
+
+}
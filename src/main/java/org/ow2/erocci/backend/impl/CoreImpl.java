@@ -19,10 +19,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.freedesktop.DBus;
@@ -33,12 +39,24 @@ import org.ow2.erocci.backend.Pair;
 import org.ow2.erocci.backend.Quad;
 import org.ow2.erocci.backend.Struct1;
 import org.ow2.erocci.backend.Struct2;
+import org.ow2.erocci.backend.Struct3;
+import org.ow2.erocci.backend.Struct4;
+import org.ow2.erocci.backend.Struct5;
+import org.ow2.erocci.backend.Struct6;
 import org.ow2.erocci.backend.action;
 import org.ow2.erocci.backend.core;
 import org.ow2.erocci.backend.mixin;
 import org.ow2.erocci.model.ConfigurationManager;
+import org.ow2.erocci.model.EntityFilter;
+import org.ow2.erocci.model.EntityInput;
+import org.ow2.erocci.model.EntityState;
+import org.ow2.erocci.model.ShardExecutors;
 import org.ow2.erocci.model.exception.ExecuteActionException;
+import org.ow2.erocci.model.persistence.ModelJournal;
 import org.ow2.erocci.runtime.ActionExecutorFactory;
+import org.ow2.erocci.runtime.CloudActionExecutor;
+import org.ow2.erocci.runtime.DockerActionExecutor;
+import org.ow2.erocci.runtime.DockerWorkerPool;
 import org.ow2.erocci.runtime.IActionExecutor;
 
 /**
@@ -59,7 +77,8 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
 
     private String schema;
 
-    private Map<String, List<Struct2>> currentListRequests = new HashMap<String, List<Struct2>>();
+    private final ListCursorRegistry listCursors = new ListCursorRegistry();
+    private final QuadCache quadCache = new QuadCache();
     // Delegate to action.
     private ActionImpl actionImpl = new ActionImpl();
     // Delegate to mixin methods.
@@ -115,6 +134,23 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
     public <A> A Get(String interfaceName, String property) {
         if ("schema".equalsIgnoreCase(property)) {
             return (A) this.schema;
+        } else if (listCursors.getMetrics().containsKey(property)) {
+            // List cursor metrics.
+            return (A) listCursors.getMetrics().get(property);
+        } else if (quadCache.getMetrics().containsKey(property)) {
+            // Load cache metrics.
+            return (A) quadCache.getMetrics().get(property);
+        } else if (DockerWorkerPool.getInstance().getMetrics().containsKey(property)) {
+            // Docker queue depth and running commands.
+            return (A) DockerWorkerPool.getInstance().getMetrics().get(property);
+        } else if (property != null && property.startsWith("docker.models.")) {
+            // Docker executable models cache metrics.
+            return (A) ((DockerActionExecutor) DockerActionExecutor.getInstance()).getModelCache().getMetrics()
+                    .get(property);
+        } else if (property != null && property.startsWith("cloud.")) {
+            // Cloud machine handles cache metrics.
+            return (A) ((CloudActionExecutor) CloudActionExecutor.getInstance()).getMachineCache().getMetrics()
+                    .get(property);
         } else {
             return null;
         }
@@ -142,7 +178,9 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
 
     @Override
     public void Init(Map<String, Variant> opts) {
-        logger.info("Init method invoked with opts : " + Utils.convertVariantMap(opts));
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("Init method invoked with opts : " + Utils.convertVariantMap(opts));
+        }
         // It may be here for using a new extension schema, to check.
 
     }
@@ -152,6 +190,8 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         logger.info("Terminate method invoked");
         // TODO : Release all resources (and link) created and referenced here.
         // TODO : Check with occi spec and erocci spec.
+        // Last snapshot of the model, if persistence is enabled.
+        ModelJournal.getInstance().close();
         ConfigurationManager.resetAll();
         // terminate the program.
         Runtime.getRuntime().exit(0);
@@ -171,62 +211,62 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
     @Override
     public String SaveResource(String id, String kind, java.util.List<String> mixins, Map<String, Variant> attributes,
             String owner) {
-        logger.info("Save resource input with id=" + id + ", kind=" + kind + ", mixins=" + mixins + ", attributes="
-                + Utils.convertVariantMap(attributes));
+        // Attributes are converted once, the log messages use the converted map.
+        Map<String, String> attr = Utils.convertVariantMap(attributes);
+        boolean logInfo = logger.isLoggable(Level.INFO);
+        if (logInfo) {
+            logger.info("Save resource input with id=" + id + ", kind=" + kind + ", mixins=" + mixins
+                    + ", attributes=" + attr);
+        }
 
         if (id == null || id.isEmpty()) {
             id = "/resource/" + Utils.createUUID();
         }
 
-        String relativePath = id;
-
-        String identifierUUID;
-        Map<String, String> attr = Utils.convertVariantMap(attributes);
-
         if (attr.get("command") != null) {
             attr.put("command", "sleep,9999");
         }
 
-        // Check if identifier UUID is provided (on occi.core.id or on id).
-        if (Utils.isEntityUUIDProvided(id, attr)) {
-            // the id may have relative path part so we need to get the UUID
-            // only.
-            identifierUUID = Utils.getUUIDFromId(id, attr);
-            relativePath = Utils.getRelativePathFromId(id, identifierUUID);
-        } else {
-            identifierUUID = Utils.createUUID();
-        }
-        relativePath = checkRelativePath(relativePath);
-
-        // Entity unique identifier.
-        String entityId = relativePath + identifierUUID; // as for ex :
+        // Entity unique identifier, as for ex :
         // /compute/0872c4e0-001a-11e2-b82d-a4b197fffef3
+        String entityId = buildEntityId(id, attr);
         // DefaultActionExecutor actionExecutor = new DefaultActionExecutor();
 
         // Check if id is an entity Id or a relative Path only. (for update it
         // if necessary).
         if (ConfigurationManager.isEntityExist(owner, entityId)) {
-            logger.info("Overwrite resource invoked with id=" + id + ", kind=" + kind + ", mixins=" + mixins
-                    + ", attributes=" + Utils.convertVariantMap(attributes));
+            if (logInfo) {
+                logger.info("Overwrite resource invoked with id=" + id + ", kind=" + kind + ", mixins=" + mixins
+                        + ", attributes=" + attr);
+            }
             ConfigurationManager.addResourceToConfiguration(id, kind, mixins, attr, owner);
         } else {
-            logger.info("SaveResource invoked with id=" + entityId + ", kind=" + kind + ", mixins=" + mixins
-                    + ", attributes=" + Utils.convertVariantMap(attributes));
+            if (logInfo) {
+                logger.info("SaveResource invoked with id=" + entityId + ", kind=" + kind + ", mixins=" + mixins
+                        + ", attributes=" + attr);
+            }
             attr.put("occi.core.id", entityId);
             ConfigurationManager.addResourceToConfiguration(entityId, kind, mixins, attr, owner);
         }
         Entity entity = ConfigurationManager.findEntity(owner, entityId);
-        if (entity != null && mode == DEFAULT_MODE) {
-            try {
-                IActionExecutor actExecutor = ActionExecutorFactory
-                        .build(ConfigurationManager.getExtensionForKind(owner, kind));
-                // Entity entity = ConfigurationManager.findEntity(owner, entityId);
-                actExecutor.occiPostCreate(entity);
-            } catch (ExecuteActionException ex) {
-                logger.warning("SaveResource action launch error : " + ex.getMessage());
+        if (entity != null) {
+            // The executor calls on an entity are serialized.
+            synchronized (ConfigurationManager.getEntityMonitor(owner, entityId)) {
+                EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+                if (mode == DEFAULT_MODE) {
+                    try {
+                        IActionExecutor actExecutor = ActionExecutorFactory
+                                .build(ConfigurationManager.getExtensionForKind(owner, kind));
+                        actExecutor.occiPostCreate(entity);
+                    } catch (ExecuteActionException ex) {
+                        logger.warning("SaveResource action launch error : " + ex.getMessage());
+                    }
+                } else if (mode == EMBED_MODE) {
+                    entity.occiCreate();
+                }
+                // The executor may have changed the entity attributes.
+                ConfigurationManager.commitEntityChanges(state);
             }
-        } else if (entity != null && mode == EMBED_MODE) {
-            entity.occiCreate();
         }
 
         logger.info("SaveResource done returning relative path : " + id);
@@ -255,34 +295,27 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
             id = "/link/" + Utils.createUUID();
         }
         Map<String, String> attr = Utils.convertVariantMap(attributes);
-        String identifierUUID;
-        String relativePath = id;
-        // Check if identifier UUID is provided.
-        if (Utils.isEntityUUIDProvided(id, attr)) {
-            // the id may have relative path part so we need to get the UUID
-            // only.
-            identifierUUID = Utils.getUUIDFromId(id, attr);
-            relativePath = Utils.getRelativePathFromId(id, identifierUUID);
-        } else {
-            identifierUUID = Utils.createUUID();
-        }
-        relativePath = checkRelativePath(relativePath);
+        boolean logInfo = logger.isLoggable(Level.INFO);
 
-        // Entity unique identifier.
-        String entityId = relativePath + identifierUUID; // as for ex :
+        // Entity unique identifier, as for ex :
         // /storagelink/0872c4e0-001a-11e2-b82d-a4b197fffef3
+        String entityId = buildEntityId(id, attr);
         // DefaultActionExecutor defaultActionExecutor = new
         // DefaultActionExecutor();
         // Check if id is an entity Id or a relative Path only. (for update it
         // if necessary).
         if (ConfigurationManager.isEntityExist(owner, entityId)) {
-            logger.info("Overwrite link invoked with id=" + id + ", kind=" + kind + ", mixins=" + mixins
-                    + ", attributes=" + Utils.convertVariantMap(attributes));
+            if (logInfo) {
+                logger.info("Overwrite link invoked with id=" + id + ", kind=" + kind + ", mixins=" + mixins
+                        + ", attributes=" + attr);
+            }
             ConfigurationManager.addLinkToConfiguration(id, kind, mixins, src, target, attr, owner);
 
         } else {
-            logger.info("SaveLink invoked with id=" + entityId + ", kind=" + kind + ", mixins=" + mixins
-                    + ", attributes=" + Utils.convertVariantMap(attributes));
+            if (logInfo) {
+                logger.info("SaveLink invoked with id=" + entityId + ", kind=" + kind + ", mixins=" + mixins
+                        + ", attributes=" + attr);
+            }
 
             attr.put("occi.core.id", entityId);
 
@@ -291,17 +324,24 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         }
 
         Entity entity = ConfigurationManager.findEntity(owner, entityId);
-
-        if (entity != null && mode == DEFAULT_MODE) {
-            try {
-                IActionExecutor actExecutor = ActionExecutorFactory
-                        .build(ConfigurationManager.getExtensionForKind(owner, kind));
-                actExecutor.occiPostCreate(entity);
-            } catch (ExecuteActionException ex) {
-                logger.warning("SaveLink action launch error : " + ex.getMessage());
+        if (entity != null) {
+            // The executor calls on an entity are serialized.
+            synchronized (ConfigurationManager.getEntityMonitor(owner, entityId)) {
+                EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+                if (mode == DEFAULT_MODE) {
+                    try {
+                        IActionExecutor actExecutor = ActionExecutorFactory
+                                .build(ConfigurationManager.getExtensionForKind(owner, kind));
+                        actExecutor.occiPostCreate(entity);
+                    } catch (ExecuteActionException ex) {
+                        logger.warning("SaveLink action launch error : " + ex.getMessage());
+                    }
+                } else if (mode == EMBED_MODE) {
+                    entity.occiCreate();
+                }
+                // The executor may have changed the entity attributes.
+                ConfigurationManager.commitEntityChanges(state);
             }
-        } else if (entity != null && mode == EMBED_MODE) {
-            entity.occiCreate();
         }
 
         return id;
@@ -320,13 +360,13 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
 
         List<Entity> entities = null;
         Entity entity = null;
+        String owner = null;
         // Find the entity
-        java.util.Set<String> owners = ConfigurationManager.getAllOwner();
-        for (String owner : owners) {
-            entities = ConfigurationManager.findAllEntitiesLikePartialId(owner, id);
-            if (!entities.isEmpty()) {
-                break;
-            }
+        Map<String, List<Entity>> entitiesMap = ConfigurationManager.findAllEntitiesLikePartialIdOnAllOwner(id);
+        if (!entitiesMap.isEmpty()) {
+            Map.Entry<String, List<Entity>> entry = entitiesMap.entrySet().iterator().next();
+            owner = entry.getKey();
+            entities = entry.getValue();
         }
         if (entities != null && entities.size() == 1) {
             entity = entities.get(0);
@@ -336,18 +376,23 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         } else {
             logger.info("entity found : " + id + " updating...");
             // update attributes .
-            entity = ConfigurationManager.updateAttributesToEntity(entity, attr);
-
-            if (mode == DEFAULT_MODE) {
-                try {
-                    IActionExecutor actExecutor = ActionExecutorFactory
-                            .build(ConfigurationManager.getExtensionFromEntity(entity));
-                    actExecutor.occiPostUpdate(entity);
-                } catch (ExecuteActionException ex) {
-                    logger.warning("Update action launch error : " + ex.getMessage());
+            entity = ConfigurationManager.updateAttributesToEntity(owner, entity, attr);
+            synchronized (ConfigurationManager.getEntityMonitor(owner, entity.getId())) {
+                EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+
+                if (mode == DEFAULT_MODE) {
+                    try {
+                        IActionExecutor actExecutor = ActionExecutorFactory
+                                .build(ConfigurationManager.getExtensionFromEntity(entity));
+                        actExecutor.occiPostUpdate(entity);
+                    } catch (ExecuteActionException ex) {
+                        logger.warning("Update action launch error : " + ex.getMessage());
+                    }
+                } else if (mode == EMBED_MODE) {
+                    entity.occiUpdate();
                 }
-            } else if (mode == EMBED_MODE) {
-                entity.occiUpdate();
+                // The executor may have changed the entity attributes.
+                ConfigurationManager.commitEntityChanges(state);
             }
 
         }
@@ -449,10 +494,18 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
 
         if (entity != null) {
             // ConfigurationManager.printEntity(entity);
+            owner = ConfigurationManager.findOwnerForEntity(entity);
 
             logger.info("Owner : " + owner + "--< Entity : " + entity.getId()
                     + " loaded with success, transaction with dbus to come...");
-            return Utils.convertEntityToQuad(entity);
+            // Attributes must not be read while the entity is updated.
+            Lock lock = ConfigurationManager.getLockForOwner(owner).readLock();
+            lock.lock();
+            try {
+                return quadCache.get(owner, entity, ConfigurationManager.getEntityVersion(owner, entity.getId()));
+            } finally {
+                lock.unlock();
+            }
         } else {
             logger.info("Entity : " + opaque_id + " --< entity doesnt exist !");
 
@@ -464,6 +517,38 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         return new Quad(opaque_id, "", vals, attrDefault);
     }
 
+    /**
+     * Load the content of many entities in one call, the entities of an owner
+     * are read under one lock acquisition.
+     *
+     * @param opaque_ids entity ids, as given by Next.
+     * @return the entities (id, kind, mixins, attributes) in opaque_ids
+     * order, an entity not found has an empty kind (as with Load).
+     */
+    @Override
+    public List<Struct5> LoadMany(List<Variant> opaque_ids) {
+        logger.info("LoadMany invoked with " + opaque_ids.size() + " ids");
+        List<String> ids = new ArrayList<>(opaque_ids.size());
+        for (Variant opaqueId : opaque_ids) {
+            ids.add(opaqueId.getValue().toString());
+        }
+        List<Struct5> entities = ConfigurationManager.readEntitiesOnAllOwner(ids,
+                new ConfigurationManager.EntityReader<Struct5>() {
+            @Override
+            public Struct5 read(String owner, Entity entity) {
+                Quad<String, String, List<String>, Map<String, Variant>> quad = quadCache.get(owner, entity,
+                        ConfigurationManager.getEntityVersion(owner, entity.getId()));
+                return quad == null ? null : new Struct5(quad.a, quad.b, quad.c, quad.d);
+            }
+        });
+        for (int i = 0; i < entities.size(); i++) {
+            if (entities.get(i) == null) {
+                entities.set(i, new Struct5(ids.get(i), "", new ArrayList<String>(), new HashMap<String, Variant>()));
+            }
+        }
+        return entities;
+    }
+
     /**
      * Get an iterator for a collection: then use Next() to iterate (the List
      * call initiates an iterator for subsequent Next() calls).
@@ -479,10 +564,9 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         // TODO : Next step, Add support for root query like :  http://localhost:8080/ <--< "/".
             // give : all resources on collections.
             
-        int collectionNb = Utils.getUniqueInt();
-        String collectionName = "collection" + collectionNb;
+        int collectionNb = listCursors.open(listItems(id, filters));
+        String collectionName = ListCursorRegistry.getCollectionId(collectionNb);
 
-        currentListRequests.put(collectionName, listItems(id, filters));
         return new Pair<Variant, UInt32>(new Variant<String>(collectionName), new UInt32(collectionNb));
     }
 
@@ -498,13 +582,11 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
     @Override
     public java.util.List<Struct2> Next(Variant opaque_id, UInt32 start, UInt32 items) {
         logger.info("Next invoked with opaque_id=" + opaque_id + ", start=" + start + ", items=" + items);
-        List<Struct2> fullList = currentListRequests.remove(opaque_id.getValue());
-        if (fullList != null) {
-            int toIndex = items.intValue();
-            if (toIndex <= 0) {
-                toIndex = fullList.size();
-            }
-            return fullList.subList(start.intValue(), toIndex);
+        // The cursor stays open for the next pages, until it expires.
+        java.util.List<Struct2> page = listCursors.page(String.valueOf(opaque_id.getValue()), start.intValue(),
+                items.intValue());
+        if (page != null) {
+            return page;
         }
         return new LinkedList<Struct2>(); // Empty list
     }
@@ -524,56 +606,254 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
         List<Entity> entities = ConfigurationManager.findAllEntitiesLikePartialId(ConfigurationManager.DEFAULT_OWNER,
                 id);
         for (Entity entity : entities) {
+            preDelete(entity, "Delete");
+            ConfigurationManager.removeOrDissociate(id);
+        }
+        if (entities.isEmpty()) {
+            ConfigurationManager.removeOrDissociate(id);
+        }
+
+    }
+
+    /**
+     * Save many resources in one call, the resources of an owner are saved
+     * with one lock acquisition, the executors are called afterwards.
+     *
+     * @param resources (id, kind, mixins, attributes, owner)
+     * @return the resource ids, in resources order, an empty id for a
+     * resource not saved.
+     */
+    @Override
+    public List<String> SaveResources(List<Struct3> resources) {
+        logger.info("SaveResources invoked with " + resources.size() + " resources");
+        Map<String, List<EntityInput>> inputsByOwner = new LinkedHashMap<>();
+        List<EntityInput> inputs = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (Struct3 resource : resources) {
+            String id = resource.a;
+            if (id == null || id.isEmpty()) {
+                id = "/resource/" + Utils.createUUID();
+            }
+            Map<String, String> attr = Utils.convertVariantMap(resource.d);
+            if (attr.get("command") != null) {
+                attr.put("command", "sleep,9999");
+            }
+            EntityInput input = new EntityInput(buildEntityId(id, attr), resource.b, resource.c, attr);
+            getInputs(inputsByOwner, resource.e).add(input);
+            inputs.add(input);
+            ids.add(id);
+        }
+        clearUnsavedIds(ids, inputs, saveInputs(inputsByOwner));
+        return ids;
+    }
+
+    /**
+     * Save many links in one call, the links of an owner are saved with one
+     * lock acquisition, the executors are called afterwards.
+     *
+     * @param links (id, kind, mixins, source, target, attributes, owner)
+     * @return the link ids, in links order, an empty id for a link not saved
+     * (source or target not found).
+     */
+    @Override
+    public List<String> SaveLinks(List<Struct4> links) {
+        logger.info("SaveLinks invoked with " + links.size() + " links");
+        Map<String, List<EntityInput>> inputsByOwner = new LinkedHashMap<>();
+        List<EntityInput> inputs = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (Struct4 link : links) {
+            String id = link.a;
+            if (id == null || id.isEmpty()) {
+                id = "/link/" + Utils.createUUID();
+            }
+            Map<String, String> attr = Utils.convertVariantMap(link.f);
+            EntityInput input = new EntityInput(buildEntityId(id, attr), link.b, link.c, link.d, link.e, attr);
+            getInputs(inputsByOwner, link.g).add(input);
+            inputs.add(input);
+            ids.add(id);
+        }
+        clearUnsavedIds(ids, inputs, saveInputs(inputsByOwner));
+        return ids;
+    }
+
+    /**
+     * Delete many entities in one call, each owner is updated once.
+     *
+     * @param ids entity ids, kind ids or mixin ids (see Delete).
+     */
+    @Override
+    public void DeleteMany(List<String> ids) {
+        logger.info("DeleteMany invoked with " + ids.size() + " ids");
+        for (String id : ids) {
+            // TODO : Default owner to all owners ? Or owner in parameter.
+            for (Entity entity : ConfigurationManager.findAllEntitiesLikePartialId(ConfigurationManager.DEFAULT_OWNER,
+                    id)) {
+                preDelete(entity, "DeleteMany");
+            }
+        }
+        ConfigurationManager.removeOrDissociate(ids);
+    }
+
+    private static List<EntityInput> getInputs(final Map<String, List<EntityInput>> inputsByOwner, String owner) {
+        if (owner == null || owner.isEmpty()) {
+            owner = ConfigurationManager.DEFAULT_OWNER;
+        }
+        List<EntityInput> inputs = inputsByOwner.get(owner);
+        if (inputs == null) {
+            inputs = new ArrayList<>();
+            inputsByOwner.put(owner, inputs);
+        }
+        return inputs;
+    }
+
+    /**
+     * Save the inputs of each owner, owners are processed in parallel on their
+     * shards. The executors are called afterwards on the calling thread, so a
+     * slow executor doesn't hold a shard thread.
+     *
+     * @param inputsByOwner
+     * @return the inputs not saved.
+     */
+    private Set<EntityInput> saveInputs(final Map<String, List<EntityInput>> inputsByOwner) {
+        Map<String, List<Entity>> savedByOwner = ShardExecutors.invokeAll(inputsByOwner.keySet(),
+                new ShardExecutors.OwnerTask<List<Entity>>() {
+            @Override
+            public List<Entity> call(String owner) {
+                return ConfigurationManager.saveEntities(owner, inputsByOwner.get(owner));
+            }
+        });
+        Set<EntityInput> unsaved = Collections.newSetFromMap(new IdentityHashMap<EntityInput, Boolean>());
+        for (Map.Entry<String, List<EntityInput>> entry : inputsByOwner.entrySet()) {
+            List<Entity> saved = savedByOwner.get(entry.getKey());
+            List<EntityState> states = new ArrayList<>();
+            for (int i = 0; i < saved.size(); i++) {
+                if (saved.get(i) == null) {
+                    unsaved.add(entry.getValue().get(i));
+                } else {
+                    states.add(postCreate(entry.getKey(), saved.get(i)));
+                }
+            }
+            // The changes made by the executors are committed in one pass.
+            ConfigurationManager.commitEntityChanges(entry.getKey(), states);
+        }
+        return unsaved;
+    }
+
+    /**
+     * Replace the ids of the inputs not saved by an empty id.
+     *
+     * @param ids
+     * @param inputs the inputs, in ids order.
+     * @param unsaved
+     */
+    private static void clearUnsavedIds(final List<String> ids, final List<EntityInput> inputs,
+            final Set<EntityInput> unsaved) {
+        for (int i = 0; i < inputs.size(); i++) {
+            if (unsaved.contains(inputs.get(i))) {
+                ids.set(i, "");
+            }
+        }
+    }
+
+    /**
+     * Call the executor of a saved entity.
+     *
+     * @param owner
+     * @param entity
+     * @return the entity state before the call, to commit the changes made by
+     * the executor.
+     */
+    private EntityState postCreate(final String owner, final Entity entity) {
+        synchronized (ConfigurationManager.getEntityMonitor(owner, entity.getId())) {
+            EntityState state = ConfigurationManager.captureEntityState(owner, entity);
+            if (mode == DEFAULT_MODE) {
+                try {
+                    IActionExecutor actExecutor = ActionExecutorFactory
+                            .build(ConfigurationManager.getExtensionFromEntity(entity));
+                    actExecutor.occiPostCreate(entity);
+                } catch (ExecuteActionException ex) {
+                    logger.warning("Save action launch error : " + ex.getMessage());
+                }
+            } else if (mode == EMBED_MODE) {
+                entity.occiCreate();
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Call the executor of an entity before its deletion.
+     *
+     * @param entity
+     * @param operation the operation name, for the log.
+     */
+    private void preDelete(final Entity entity, final String operation) {
+        // TODO : Default owner to all owners ? Or owner in parameter.
+        synchronized (ConfigurationManager.getEntityMonitor(ConfigurationManager.DEFAULT_OWNER, entity.getId())) {
             if (mode == DEFAULT_MODE) {
                 try {
                     IActionExecutor actExecutor = ActionExecutorFactory
                             .build(ConfigurationManager.getExtensionFromEntity(entity));
                     actExecutor.occiPreDelete(entity);
                 } catch (ExecuteActionException ex) {
-                    logger.warning("Delete action launch error : " + ex.getMessage());
+                    logger.warning(operation + " action launch error : " + ex.getMessage());
                 }
             } else if (mode == EMBED_MODE) {
                 entity.occiDelete();
             }
-            ConfigurationManager.removeOrDissociate(id);
-        }
-        if (entities.isEmpty()) {
-            ConfigurationManager.removeOrDissociate(id);
         }
+    }
 
+    /**
+     * Build the entity id of a saved entity : the relative path of the id
+     * followed by the UUID given in id or in occi.core.id, or by a new UUID.
+     *
+     * @param id
+     * @param attr
+     * @return the entity id.
+     */
+    private String buildEntityId(final String id, final Map<String, String> attr) {
+        // Check if identifier UUID is provided (on occi.core.id or on id),
+        // the id may have relative path part.
+        Utils.EntityIdParts parts = Utils.parseEntityId(id, attr);
+        String identifierUUID = parts.getUuid();
+        if (identifierUUID == null) {
+            identifierUUID = Utils.createUUID();
+        }
+        return checkRelativePath(parts.getRelativePath()) + identifierUUID;
     }
 
     /**
      * List items from a given collection id.
      *
      * @param id category id or path relative url part.
-     * @param filters (string-variant array): key-value specified
-     * @return A list of entities, as Struct2 containing the path relative url
-     * part + owner.
+     * @param filters (string-variant array): key-value specified, see
+     * EntityFilter, user mixins are listed only without filter.
+     * @return A cursor on entities, as Struct2 containing the path relative
+     * url part + owner. Entities of categories are read from a model snapshot.
      */
-    private List<Struct2> listItems(String id, Map<String, Variant> filters) {
-        // TODO add filter support...
-        List<Struct2> ret = new LinkedList<Struct2>();
-
-        Map<String, List<Entity>> entitiesMap;
+    private ListCursor listItems(String id, Map<String, Variant> filters) {
+        ListCursor ret = new ListCursor();
+        EntityFilter filter = EntityFilter.fromMap(Utils.convertVariantMap(filters));
 
         // Check if categoryId or relative path part.
         if (id != null && id.startsWith("http")) {
             // it's a categoryId...
             // Search for kind, mixins, actions and get their entities.
             // the map is by owner.
-            entitiesMap = ConfigurationManager.findAllEntitiesForCategoryId(id);
+            Map<String, List<Iterable<String>>> snapshotsMap = ConfigurationManager.snapshotAllEntityIdsForCategoryId(id, filter);
 
-            List<Entity> entities;
             String owner;
-            for (Map.Entry<String, List<Entity>> entry : entitiesMap.entrySet()) {
+            for (Map.Entry<String, List<Iterable<String>>> entry : snapshotsMap.entrySet()) {
                 owner = entry.getKey();
-                entities = entry.getValue();
-                for (Entity entity : entities) {
-                    ret.add(new Struct2(entity.getId(), owner));
+                for (Iterable<String> snapshot : entry.getValue()) {
+                    ret.addEntityIds(owner, snapshot);
                 }
 
             }
+            if (!filter.isEmpty()) {
+                return ret;
+            }
             // Search for user mixin tag.
             // We consider here that this is by a location (http://localhost:8080/myxinsCollection/).
             Map<String, List<String>> userMixins = ConfigurationManager.findAllUserMixinKindByLocation(id);
@@ -582,7 +862,7 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
                 owner = entry.getKey();
                 mixins = entry.getValue();
                 for (String mixinKind : mixins) {
-                    ret.add(new Struct2(mixinKind, owner));
+                    ret.addItem(new Struct2(mixinKind, owner));
                 }
             }
 
@@ -593,17 +873,20 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
             String owner;
 
             for (String usedKind : usedKinds) {
-                ret.add(new Struct2(usedKind, ""));
+                ret.addItem(new Struct2(usedKind, ""));
             }
 
         } else {
             // it's a relative path url part.
-            Map<String, Entity> entityMap = ConfigurationManager.findEntitiesOnAllOwner(id);
+            Map<String, Entity> entityMap = ConfigurationManager.findEntitiesOnAllOwner(id, filter);
             String owner;
             for (Map.Entry<String, Entity> entry : entityMap.entrySet()) {
                 owner = entry.getKey();
                 Entity ent = entry.getValue();
-                ret.add(new Struct2(ent.getId(), owner));
+                ret.addItem(new Struct2(ent.getId(), owner));
+            }
+            if (!filter.isEmpty()) {
+                return ret;
             }
 
             // Search for user tag mixin by location with relative path part.
@@ -614,7 +897,7 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
                 owner = entry.getKey();
                 mixins = entry.getValue();
                 for (String mixinKind : mixins) {
-                    ret.add(new Struct2(mixinKind, owner));
+                    ret.addItem(new Struct2(mixinKind, owner));
                 }
             }
 
@@ -629,12 +912,58 @@ public class CoreImpl implements core, action, mixin, DBus.Properties {
      * @param id
      * @param action_id
      * @param attributes
+     * @return the job id of the action.
      */
     @Override
-    public void Action(String id, String action_id, Map<String, Variant> attributes) {
+    public String Action(String id, String action_id, Map<String, Variant> attributes) {
         logger.info("---------------------->Action method invoked !!!");
         actionImpl.setMode(mode);
-        actionImpl.Action(id, action_id, attributes);
+        return actionImpl.Action(id, action_id, attributes);
+    }
+
+    /**
+     * Delegate GetActionStatus method to Action Object method.
+     *
+     * @param job_id
+     * @return the status and error of the action job.
+     */
+    @Override
+    public Pair<String, String> GetActionStatus(String job_id) {
+        return actionImpl.GetActionStatus(job_id);
+    }
+
+    /**
+     * Delegate ActionOnCollection method to Action Object method.
+     *
+     * @param id category id or path prefix of the collection.
+     * @param action_id
+     * @param attributes
+     * @return the job id of the actions.
+     */
+    @Override
+    public String ActionOnCollection(String id, String action_id, Map<String, Variant> attributes) {
+        actionImpl.setMode(mode);
+        return actionImpl.ActionOnCollection(id, action_id, attributes);
+    }
+
+    /**
+     * Delegate GetActionOutcomes method to Action Object method.
+     *
+     * @param job_id
+     * @return the outcomes of the actions, by entity.
+     */
+    @Override
+    public List<Struct6> GetActionOutcomes(String job_id) {
+        return actionImpl.GetActionOutcomes(job_id);
+    }
+
+    /**
+     *
+     * @return the manager of the action jobs, to be notified of the completed
+     * actions.
+     */
+    public ActionJobManager getActionJobManager() {
+        return actionImpl.getJobManager();
     }
 
     /**
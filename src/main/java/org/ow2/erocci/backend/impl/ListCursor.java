@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.ow2.erocci.backend.Struct2;
+
+/**
+ * Result of a List request, iterated by Next. Entity collections are kept as
+ * model snapshots and converted to Struct2 only when a page is read, so
+ * nothing is copied when the List request is done. Items must not be added
+ * once the cursor is registered (see ListCursorRegistry).
+ *
+ */
+public class ListCursor {
+
+    /**
+     * Parts of the collection, in order.
+     */
+    private final List<Iterable<Struct2>> parts = new ArrayList<>();
+
+    /**
+     * Items added one by one, they are returned where they are added.
+     */
+    private List<Struct2> currentItems = null;
+
+    /**
+     * Position after the last page read.
+     */
+    private Position position = null;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Add an item to the collection.
+     *
+     * @param item
+     */
+    public void addItem(final Struct2 item) {
+        if (currentItems == null) {
+            currentItems = new ArrayList<>();
+            parts.add(currentItems);
+        }
+        currentItems.add(item);
+    }
+
+    /**
+     * Add entities of an owner to the collection.
+     *
+     * @param owner
+     * @param entityIds (a model snapshot)
+     */
+    public void addEntityIds(final String owner, final Iterable<String> entityIds) {
+        currentItems = null;
+        parts.add(new Iterable<Struct2>() {
+            @Override
+            public Iterator<Struct2> iterator() {
+                final Iterator<String> it = entityIds.iterator();
+                return new Iterator<Struct2>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Struct2 next() {
+                        return new Struct2(it.next(), owner);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Read a page of the collection. Pages are computed on demand, the
+     * position of the last page is kept so reading the next page doesnt
+     * iterate the previous items again.
+     *
+     * @param start the first item index (start with 0)
+     * @param items the number of items (0 for all the remaining items)
+     * @return A list of entities, as Struct2 containing the path relative url
+     * part + owner.
+     */
+    public synchronized List<Struct2> page(final int start, final int items) {
+        if (position == null || start < position.getIndex()) {
+            position = new Position();
+        }
+        List<Struct2> page = new LinkedList<>();
+        while (position.getIndex() < start && position.hasNext()) {
+            position.next();
+        }
+        while (position.hasNext() && (items <= 0 || page.size() < items)) {
+            page.add(position.next());
+        }
+        return page;
+    }
+
+    /**
+     *
+     * @param time last access time, in milliseconds.
+     */
+    void touch(final long time) {
+        lastAccess = time;
+    }
+
+    /**
+     *
+     * @return the last access time, in milliseconds.
+     */
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Iterator over all the parts, with the index of the next item.
+     */
+    private class Position {
+
+        private final Iterator<Iterable<Struct2>> partIterator = parts.iterator();
+        private Iterator<Struct2> itemIterator = null;
+        private int index = 0;
+
+        int getIndex() {
+            return index;
+        }
+
+        boolean hasNext() {
+            while (itemIterator == null || !itemIterator.hasNext()) {
+                if (!partIterator.hasNext()) {
+                    return false;
+                }
+                itemIterator = partIterator.next().iterator();
+            }
+            return true;
+        }
+
+        Struct2 next() {
+            index++;
+            return itemIterator.next();
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.ow2.erocci.backend.Struct2;
+
+/**
+ * Open List cursors, by collection id. A cursor stays open for repeated Next
+ * calls until it is idle for erocci.cursor.ttl milliseconds (default 60000).
+ * At most erocci.cursor.max cursors are kept (default 1000), the least
+ * recently used ones are evicted first, so cursors abandoned by clients
+ * don't grow the memory.
+ *
+ * Expired cursors are removed when a cursor is opened, no thread is used.
+ *
+ */
+public class ListCursorRegistry {
+
+    public static final String TTL_PROPERTY = "erocci.cursor.ttl";
+    public static final String MAX_PROPERTY = "erocci.cursor.max";
+
+    public static final String METRIC_OPEN = "cursors.open";
+    public static final String METRIC_CREATED = "cursors.created";
+    public static final String METRIC_EXPIRED = "cursors.expired";
+    public static final String METRIC_EVICTED = "cursors.evicted";
+    public static final String METRIC_PAGES = "cursors.pages";
+    public static final String METRIC_MISSES = "cursors.misses";
+
+    private static final String COLLECTION_PREFIX = "collection";
+
+    private static final Logger logger = Logger.getLogger("ListCursorRegistry");
+
+    private final long ttl;
+    private final int maxCursors;
+
+    private final Map<String, ListCursor> cursors = new ConcurrentHashMap<>();
+    private final AtomicInteger collectionCounter = new AtomicInteger(0);
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ListCursorRegistry() {
+        this(Long.getLong(TTL_PROPERTY, 60000L), Integer.getInteger(MAX_PROPERTY, 1000));
+    }
+
+    /**
+     *
+     * @param ttl idle time to live of a cursor, in milliseconds.
+     * @param maxCursors maximum number of open cursors.
+     */
+    public ListCursorRegistry(final long ttl, final int maxCursors) {
+        this.ttl = ttl;
+        this.maxCursors = Math.max(maxCursors, 1);
+    }
+
+    /**
+     * Register a new cursor.
+     *
+     * @param cursor
+     * @return the collection number, the collection id is "collection" +
+     * number.
+     */
+    public int open(final ListCursor cursor) {
+        long now = System.currentTimeMillis();
+        sweep(now);
+        int number = collectionCounter.incrementAndGet() & Integer.MAX_VALUE;
+        cursor.touch(now);
+        cursors.put(getCollectionId(number), cursor);
+        created.incrementAndGet();
+        while (cursors.size() > maxCursors) {
+            evictLeastRecentlyUsed();
+        }
+        return number;
+    }
+
+    /**
+     *
+     * @param number
+     * @return the collection id of a collection number.
+     */
+    public static String getCollectionId(final int number) {
+        return COLLECTION_PREFIX + number;
+    }
+
+    /**
+     * Read a page of a cursor, the cursor stays open.
+     *
+     * @param collectionId
+     * @param start the first item index (start with 0)
+     * @param items the number of items (0 for all the remaining items)
+     * @return the page, null if the cursor doesnt exist or has expired.
+     */
+    public List<Struct2> page(final String collectionId, final int start, final int items) {
+        ListCursor cursor = collectionId == null ? null : cursors.get(collectionId);
+        long now = System.currentTimeMillis();
+        if (cursor != null && now - cursor.getLastAccess() > ttl) {
+            if (cursors.remove(collectionId, cursor)) {
+                expired.incrementAndGet();
+            }
+            cursor = null;
+        }
+        if (cursor == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        cursor.touch(now);
+        pages.incrementAndGet();
+        return cursor.page(start, items);
+    }
+
+    /**
+     * Close a cursor.
+     *
+     * @param collectionId
+     */
+    public void close(final String collectionId) {
+        if (collectionId != null) {
+            cursors.remove(collectionId);
+        }
+    }
+
+    /**
+     * Close all the cursors.
+     */
+    public void clear() {
+        cursors.clear();
+    }
+
+    /**
+     *
+     * @return the number of open cursors.
+     */
+    public int size() {
+        return cursors.size();
+    }
+
+    /**
+     *
+     * @return the cursor metrics, by name.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put(METRIC_OPEN, (long) cursors.size());
+        metrics.put(METRIC_CREATED, created.get());
+        metrics.put(METRIC_EXPIRED, expired.get());
+        metrics.put(METRIC_EVICTED, evicted.get());
+        metrics.put(METRIC_PAGES, pages.get());
+        metrics.put(METRIC_MISSES, misses.get());
+        return metrics;
+    }
+
+    /**
+     * Remove the expired cursors, at most once per quarter of ttl.
+     */
+    private void sweep(final long now) {
+        long last = lastSweep.get();
+        if (now - last < ttl / 4 || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        Iterator<Map.Entry<String, ListCursor>> it = cursors.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().getLastAccess() > ttl) {
+                it.remove();
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        String oldestId = null;
+        ListCursor oldest = null;
+        for (Map.Entry<String, ListCursor> entry : cursors.entrySet()) {
+            if (oldest == null || entry.getValue().getLastAccess() < oldest.getLastAccess()) {
+                oldestId = entry.getKey();
+                oldest = entry.getValue();
+            }
+        }
+        if (oldest != null && cursors.remove(oldestId, oldest)) {
+            evicted.incrementAndGet();
+            logger.fine("Cursor " + oldestId + " evicted, too many open cursors");
+        }
+    }
+
+}
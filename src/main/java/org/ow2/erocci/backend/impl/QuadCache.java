@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.freedesktop.dbus.Variant;
+import org.occiware.clouddesigner.occi.Entity;
+import org.ow2.erocci.backend.Quad;
+
+/**
+ * Cache of the Quad representations of the entities (see
+ * Utils.convertEntityToQuad), by owner and entity id. A cached Quad is used
+ * only for the entity object and the entity version it was built from :
+ * entity versions change on each update or mixin change, and a reset owner
+ * gets new entity objects, so an old Quad is never returned. Deleted
+ * entities are evicted as the least recently used ones.
+ *
+ * At most erocci.quad.cache.size Quads are kept (default 10000), 0 disables
+ * the cache. Cached Quads are shared and must not be modified.
+ *
+ */
+public class QuadCache {
+
+    public static final String SIZE_PROPERTY = "erocci.quad.cache.size";
+
+    public static final String METRIC_SIZE = "quads.cached";
+    public static final String METRIC_HITS = "quads.hits";
+    public static final String METRIC_MISSES = "quads.misses";
+
+    private final int maxSize;
+
+    /**
+     * Key : owner + id, in access order.
+     */
+    private final LinkedHashMap<String, CachedQuad> quads;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public QuadCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, 10000));
+    }
+
+    /**
+     *
+     * @param maxSize maximum number of cached Quads, 0 to disable the cache.
+     */
+    public QuadCache(final int maxSize) {
+        this.maxSize = Math.max(maxSize, 0);
+        this.quads = new LinkedHashMap<String, CachedQuad>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedQuad> eldest) {
+                return size() > QuadCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the Quad of an entity, built if it is not cached for this version.
+     * The caller must hold the read lock of the entity's owner.
+     *
+     * @param owner
+     * @param entity
+     * @param version the entity version (see
+     * ConfigurationManager.getEntityVersion).
+     * @return the Quad, null if the entity has no kind.
+     */
+    public Quad<String, String, List<String>, Map<String, Variant>> get(final String owner, final Entity entity,
+            final long version) {
+        if (maxSize == 0) {
+            return Utils.convertEntityToQuad(entity);
+        }
+        String key = owner + '\n' + entity.getId();
+        synchronized (quads) {
+            CachedQuad cached = quads.get(key);
+            if (cached != null && cached.entity == entity && cached.version == version) {
+                hits.incrementAndGet();
+                return cached.quad;
+            }
+        }
+        misses.incrementAndGet();
+        Quad<String, String, List<String>, Map<String, Variant>> quad = Utils.convertEntityToQuad(entity);
+        if (quad != null) {
+            synchronized (quads) {
+                quads.put(key, new CachedQuad(entity, version, quad));
+            }
+        }
+        return quad;
+    }
+
+    /**
+     * Remove all the cached Quads.
+     */
+    public void clear() {
+        synchronized (quads) {
+            quads.clear();
+        }
+    }
+
+    /**
+     *
+     * @return the cache metrics, by name.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        synchronized (quads) {
+            metrics.put(METRIC_SIZE, (long) quads.size());
+        }
+        metrics.put(METRIC_HITS, hits.get());
+        metrics.put(METRIC_MISSES, misses.get());
+        return metrics;
+    }
+
+    private static class CachedQuad {
+
+        private final Entity entity;
+        private final long version;
+        private final Quad<String, String, List<String>, Map<String, Variant>> quad;
+
+        CachedQuad(final Entity entity, final long version,
+                final Quad<String, String, List<String>, Map<String, Variant>> quad) {
+            this.entity = entity;
+            this.version = version;
+            this.quad = quad;
+        }
+    }
+
+}
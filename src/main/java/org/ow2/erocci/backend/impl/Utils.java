@@ -30,13 +30,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.UUID;
 import java.util.logging.Logger;
 
 import org.eclipse.emf.common.util.EList;
-import org.freedesktop.dbus.UInt16;
 import org.freedesktop.dbus.UInt32;
-import org.freedesktop.dbus.UInt64;
 import org.freedesktop.dbus.Variant;
 import org.occiware.clouddesigner.occi.AttributeState;
 import org.occiware.clouddesigner.occi.Entity;
@@ -53,6 +52,12 @@ import org.ow2.erocci.backend.Quad;
 public class Utils {
 
 	private static Logger logger = Logger.getLogger("Utils");
+
+	/**
+	 * Seed of the eTag numbers, so eTags of a previous run are not reused.
+	 */
+	private static final int ETAG_SEED = new Random().nextInt();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	public static final String REGEX_CONTROL_UUID = "[0-9a-f]{8}-[0-9a-f]{4}-[1-5][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}";
 
 	// Conventional name ASCII type-code Encoding
@@ -81,78 +86,17 @@ public class Utils {
 	 */
 	public static Map<String, String> convertVariantMap(Map<String, Variant> vmap) {
 
-		if (vmap == null) {
-			vmap = new HashMap<String, Variant>();
+		if (vmap == null || vmap.isEmpty()) {
+			return new HashMap<String, String>();
 		}
-		Map<String, String> map = new HashMap<String, String>();
+		Map<String, String> map = new HashMap<String, String>(vmap.size() * 4 / 3 + 1);
 		for (Entry<String, Variant> e : vmap.entrySet()) {
 			Variant variant = e.getValue();
 
 			if (variant != null) {
-				switch (variant.getSig()) {
-				case "ay": // Array of bytes, assume String !
-					map.put(e.getKey(), new String((byte[]) variant.getValue(), Charset.forName("UTF-8")));
-					break;
-				case "b": // boolean (0 for false or 1 for true)
-					Boolean bool = (Boolean) variant.getValue();
-					map.put(e.getKey(), bool.toString());
-					break;
-				case "n": // signed integer 16
-					Short valSho = (Short) variant.getValue();
-					map.put(e.getKey(), valSho.toString());
-
-					break;
-				case "q": // unsigned integer 16
-					UInt16 uint16Val = (UInt16) variant.getValue();
-					map.put(e.getKey(), uint16Val.toString());
-
-					break;
-				case "i": // signed integer 32
-					Integer valInt = (Integer) variant.getValue();
-					map.put(e.getKey(), valInt.toString());
-
-					break;
-				case "u": // unsigned integer 32
-					// logger.info("Convert unsigned integer 32 to String
-					// value");
-					UInt32 uint32Val = (UInt32) variant.getValue();
-					map.put(e.getKey(), uint32Val.toString());
-
-					break;
-				case "x": // signed integer 64
-					Long lonVal = (Long) variant.getValue();
-					map.put(e.getKey(), lonVal.toString());
-
-					break;
-				case "t": // unsigned integer 64
-					UInt64 uint64Val = (UInt64) variant.getValue();
-					map.put(e.getKey(), uint64Val.toString());
-
-					break;
-				case "d": // IEEE 754 double-precision floating point
-					Double douVal = (Double) variant.getValue();
-					map.put(e.getKey(), douVal.toString());
-					break;
-				case "s":
-					// logger.info("String value on input => variant of type
-					// string");
-					String valStr = (String) variant.getValue();
-					map.put(e.getKey(), valStr);
-					break;
-				case "h": // Unsigned 32-bit integer representing an index into
-							// an out-of-band array of file descriptors,
-							// transferred via some platform-specific mechanism
-							// (mnemonic: h for handle)
-					UInt32 uint32ValHandle = (UInt32) variant.getValue();
-					map.put(e.getKey(), uint32ValHandle.toString());
-
-					break;
-				default:
-					logger.warning("WARNING: trying to convert variant of type " + variant.getSig()
-							+ " but this doesnt exist for now, and will be implemented in future");
-					// TODO : Report exception.
-
-					break;
+				String value = convertVariant(variant);
+				if (value != null) {
+					map.put(e.getKey(), value);
 				}
 			} else {
 				// TODO : Report exception.
@@ -163,6 +107,43 @@ public class Utils {
 		return map;
 	}
 
+	/**
+	 * Convert a variant to a String. The signature is switched on its type
+	 * code, values of basic types are converted with their toString method.
+	 * 
+	 * @param variant
+	 * @return the String value, null if the signature is not supported.
+	 */
+	public static String convertVariant(Variant variant) {
+		String sig = variant.getSig();
+		if (sig.length() == 1) {
+			switch (sig.charAt(0)) {
+			case 's':
+				return (String) variant.getValue();
+			case 'b': // boolean (0 for false or 1 for true)
+			case 'n': // signed integer 16
+			case 'q': // unsigned integer 16
+			case 'i': // signed integer 32
+			case 'u': // unsigned integer 32
+			case 'x': // signed integer 64
+			case 't': // unsigned integer 64
+			case 'd': // IEEE 754 double-precision floating point
+			case 'h': // Unsigned 32-bit integer representing an index into
+						// an out-of-band array of file descriptors
+				return variant.getValue().toString();
+			default:
+				break;
+			}
+		} else if (sig.length() == 2 && sig.charAt(0) == 'a' && sig.charAt(1) == 'y') {
+			// Array of bytes, assume String !
+			return new String((byte[]) variant.getValue(), UTF_8);
+		}
+		logger.warning("WARNING: trying to convert variant of type " + sig
+				+ " but this doesnt exist for now, and will be implemented in future");
+		// TODO : Report exception.
+		return null;
+	}
+
 	/**
 	 * Convert an OCCI Entity to Quad object, this is for dialog with dbus
 	 * protocol.
@@ -343,35 +324,25 @@ public class Utils {
 	}
 
 	/**
-	 * Serialize a string (entity id for example with an owner)
+	 * Create an eTag number from an entity version. The version is mixed
+	 * with the entity id and a seed drawn at startup (versions restart with
+	 * the process), distinct versions of an entity give distinct eTags. Values
+	 * 0 and 1 are never returned.
 	 * 
 	 * @param id
-	 * @param owner
 	 * @param version
-	 *            (version number, will increment with each update on this
-	 *            object).
-	 * @return
+	 *            (entity version, changes with each update on this object).
+	 * @return an eTag number.
 	 */
-	public static UInt32 createEtagNumber(final String id, final String owner, final int version) {
-		String eTag = null;
-		if (id == null) {
-			eTag = "1";
-		} else {
-			try {
-				eTag = getMd5Digest(serialize(id + owner + version));
-			} catch (IOException ioe) {
-				logger.warning("IOException thrown : " + ioe.getMessage());
-				eTag = "1";
-			}
-		}
-		StringBuilder sb = new StringBuilder();
-
-		for (char c : eTag.toCharArray()) {
-			sb.append((int) c);
+	public static UInt32 createEtagNumber(final String id, final long version) {
+		int hash = (int) (version ^ (version >>> 32));
+		hash = (hash * 0x9E3779B1 + (id == null ? 0 : id.hashCode())) ^ ETAG_SEED;
+		hash ^= hash >>> 16;
+		long eTag = hash & 0xFFFFFFFFL;
+		if (eTag <= 1) {
+			eTag += 2;
 		}
-		String result = sb.toString().substring(0, 7);
-
-		return new UInt32(result);
+		return new UInt32(eTag);
 	}
 
 	/**
@@ -382,34 +353,7 @@ public class Utils {
 	 * @return true if provided or false if not provided
 	 */
 	public static boolean isEntityUUIDProvided(final String id, final Map<String, String> attr) {
-		String[] uuids = id.split("/");
-		boolean match = false;
-
-		for (String uuid : uuids) {
-			if (uuid.matches(REGEX_CONTROL_UUID)) {
-				match = true;
-				break;
-			}
-		}
-		String occiCoreId = attr.get("occi.core.id");
-		if (!match && occiCoreId != null && !occiCoreId.isEmpty()) {
-			String[] spls = { "/", ":" };
-			for (String spl : spls) {
-				uuids = occiCoreId.split(spl);
-				for (String uuid : uuids) {
-					if (uuid.matches(REGEX_CONTROL_UUID)) {
-						match = true;
-						break;
-					}
-				}
-				if (match) {
-					break;
-				}
-			}
-
-		}
-
-		return match;
+		return parseEntityId(id, attr).getUuid() != null;
 	}
 
 	/**
@@ -420,35 +364,107 @@ public class Utils {
 	 * @return the UUID provided may return null if uuid not found.
 	 */
 	public static String getUUIDFromId(final String id, final Map<String, String> attr) {
-		String[] uuids = id.split("/");
-		String uuidToReturn = null;
-		boolean match = false;
+		return parseEntityId(id, attr).getUuid();
+	}
 
-		for (String uuid : uuids) {
-			if (uuid.matches(REGEX_CONTROL_UUID)) {
-				uuidToReturn = uuid;
-				break;
+	/**
+	 * Parse an entity id in one pass : the UUID is the first id segment (path
+	 * separator '/') matching REGEX_CONTROL_UUID, or else the first segment of
+	 * attribute occi.core.id (separators '/' and ':') matching it.
+	 * 
+	 * @param id
+	 * @param attr (may be null)
+	 * @return the UUID and the relative path of the id, the UUID is null if
+	 *         not found and the relative path is then the id.
+	 */
+	public static EntityIdParts parseEntityId(final String id, final Map<String, String> attr) {
+		int[] bounds = findUUIDSegment(id, false);
+		if (bounds != null) {
+			String uuid = id.substring(bounds[0], bounds[1]);
+			String relativePath = id.substring(0, bounds[0]) + id.substring(bounds[1]);
+			if (relativePath.endsWith("/")) {
+				relativePath = relativePath.substring(0, relativePath.length() - 1);
+			}
+			return new EntityIdParts(uuid, relativePath);
+		}
+		String occiCoreId = attr == null ? null : attr.get("occi.core.id");
+		if (occiCoreId != null) {
+			bounds = findUUIDSegment(occiCoreId, true);
+			if (bounds != null) {
+				String uuid = occiCoreId.substring(bounds[0], bounds[1]);
+				return new EntityIdParts(uuid, getRelativePathFromId(id, uuid));
 			}
 		}
-		String occiCoreId = attr.get("occi.core.id");
-		if (!match && occiCoreId != null && !occiCoreId.isEmpty()) {
-			String[] spls = { "/", ":" };
-			for (String spl : spls) {
-				uuids = occiCoreId.split(spl);
-				for (String uuid : uuids) {
-					if (uuid.matches(REGEX_CONTROL_UUID)) {
-						uuidToReturn = uuid;
-						break;
-					}
+		return new EntityIdParts(null, id);
+	}
+
+	/**
+	 * Check if a part of a String is an UUID, same as matching
+	 * REGEX_CONTROL_UUID without a regex.
+	 * 
+	 * @param value
+	 * @param start
+	 *            index of the first char.
+	 * @param end
+	 *            index after the last char.
+	 * @return true if value[start, end[ is an UUID.
+	 */
+	public static boolean isUUID(final CharSequence value, final int start, final int end) {
+		if (end - start != 36) {
+			return false;
+		}
+		for (int i = 0; i < 36; i++) {
+			char c = value.charAt(start + i);
+			switch (i) {
+			case 8:
+			case 13:
+			case 18:
+			case 23:
+				if (c != '-') {
+					return false;
 				}
-				if (match) {
-					break;
+				break;
+			case 14:
+				// Version.
+				if (c < '1' || c > '5') {
+					return false;
+				}
+				break;
+			case 19:
+				// Variant.
+				if (c != '8' && c != '9' && c != 'a' && c != 'b') {
+					return false;
+				}
+				break;
+			default:
+				if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+					return false;
 				}
 			}
-
 		}
+		return true;
+	}
 
-		return uuidToReturn;
+	/**
+	 * Find the first UUID segment of a String.
+	 * 
+	 * @param value
+	 * @param colonSeparator
+	 *            true if ':' separates segments as well as '/'.
+	 * @return the start and end indexes of the segment, null if not found.
+	 */
+	private static int[] findUUIDSegment(final String value, final boolean colonSeparator) {
+		int length = value.length();
+		int start = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i == length || value.charAt(i) == '/' || colonSeparator && value.charAt(i) == ':') {
+				if (isUUID(value, start, i)) {
+					return new int[] { start, i };
+				}
+				start = i + 1;
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -498,4 +514,35 @@ public class Utils {
 	public static synchronized int getUniqueInt() {
 		return uniqueInt++;
 	}
+
+	/**
+	 * UUID and relative path of an entity id (see parseEntityId).
+	 */
+	public static final class EntityIdParts {
+
+		private final String uuid;
+		private final String relativePath;
+
+		EntityIdParts(final String uuid, final String relativePath) {
+			this.uuid = uuid;
+			this.relativePath = relativePath;
+		}
+
+		/**
+		 * 
+		 * @return the UUID, null if not provided.
+		 */
+		public String getUuid() {
+			return uuid;
+		}
+
+		/**
+		 * 
+		 * @return the id without the UUID and trailing '/'.
+		 */
+		public String getRelativePath() {
+			return relativePath;
+		}
+	}
+
 }
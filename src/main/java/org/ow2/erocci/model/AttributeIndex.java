@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+
+/**
+ * Index of entities by the values of some attributes (ex: occi.core.title,
+ * occi.compute.state). For each indexed attribute name, a hash map gives the
+ * entities with a value and a sorted map gives the entities with a value
+ * prefix. Both maps share the same entity sets.
+ *
+ * The values used when an entity is indexed are kept, so the entity can be
+ * removed from the index even if his attributes have changed since.
+ *
+ */
+public class AttributeIndex {
+
+    /**
+     * Indexed attribute names.
+     */
+    private final Set<String> names;
+
+    /**
+     * Key : attribute name, Value : entities by value.
+     */
+    private final Map<String, Map<String, Set<Entity>>> entitiesByValue = new HashMap<>();
+
+    /**
+     * Key : attribute name, Value : entities by sorted value.
+     */
+    private final Map<String, TreeMap<String, Set<Entity>>> sortedEntitiesByValue = new HashMap<>();
+
+    /**
+     * Indexed values of the entities, key : attribute name.
+     */
+    private final Map<Entity, Map<String, String>> indexedValues = new HashMap<>();
+
+    /**
+     *
+     * @param names the attribute names to index.
+     */
+    public AttributeIndex(final Set<String> names) {
+        this.names = Collections.unmodifiableSet(new LinkedHashSet<>(names));
+        for (String name : this.names) {
+            entitiesByValue.put(name, new HashMap<String, Set<Entity>>());
+            sortedEntitiesByValue.put(name, new TreeMap<String, Set<Entity>>());
+        }
+    }
+
+    /**
+     *
+     * @return the indexed attribute names.
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+
+    /**
+     *
+     * @param name
+     * @return true if this attribute is indexed.
+     */
+    public boolean isIndexed(final String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Index the attribute values of an entity.
+     *
+     * @param entity
+     */
+    public void add(final Entity entity) {
+        if (names.isEmpty()) {
+            return;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (AttributeState attribute : entity.getAttributes()) {
+            String name = attribute.getName();
+            if (attribute.getValue() != null && names.contains(name)) {
+                values.put(name, attribute.getValue());
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            Set<Entity> entities = entitiesByValue.get(value.getKey()).get(value.getValue());
+            if (entities == null) {
+                entities = new LinkedHashSet<>();
+                entitiesByValue.get(value.getKey()).put(value.getValue(), entities);
+                sortedEntitiesByValue.get(value.getKey()).put(value.getValue(), entities);
+            }
+            entities.add(entity);
+        }
+        indexedValues.put(entity, values);
+    }
+
+    /**
+     * Remove an entity, with the values used when it was indexed.
+     *
+     * @param entity
+     */
+    public void remove(final Entity entity) {
+        Map<String, String> values = indexedValues.remove(entity);
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            Map<String, Set<Entity>> byValue = entitiesByValue.get(value.getKey());
+            Set<Entity> entities = byValue.get(value.getValue());
+            if (entities != null) {
+                entities.remove(entity);
+                if (entities.isEmpty()) {
+                    byValue.remove(value.getValue());
+                    sortedEntitiesByValue.get(value.getKey()).remove(value.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the index after the attributes of an entity have changed.
+     *
+     * @param entity
+     */
+    public void reindex(final Entity entity) {
+        remove(entity);
+        add(entity);
+    }
+
+    /**
+     * Get the entities with an attribute value.
+     *
+     * @param name
+     * @param value
+     * @return a read only set of entities, null if the attribute is not
+     * indexed.
+     */
+    public Set<Entity> findByValue(final String name, final String value) {
+        Map<String, Set<Entity>> byValue = entitiesByValue.get(name);
+        if (byValue == null) {
+            return null;
+        }
+        Set<Entity> entities = byValue.get(value);
+        if (entities == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(entities);
+    }
+
+    /**
+     * Get the entities with an attribute value starting with a prefix.
+     *
+     * @param name
+     * @param prefix
+     * @return a list of entities, null if the attribute is not indexed.
+     */
+    public List<Entity> findByPrefix(final String name, final String prefix) {
+        TreeMap<String, Set<Entity>> sorted = sortedEntitiesByValue.get(name);
+        if (sorted == null) {
+            return null;
+        }
+        List<Entity> entities = new ArrayList<>();
+        for (Map.Entry<String, Set<Entity>> entry : sorted.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            entities.addAll(entry.getValue());
+        }
+        return entities;
+    }
+
+    /**
+     * Remove all the entities.
+     */
+    public void clear() {
+        for (String name : names) {
+            entitiesByValue.get(name).clear();
+            sortedEntitiesByValue.get(name).clear();
+        }
+        indexedValues.clear();
+    }
+
+}
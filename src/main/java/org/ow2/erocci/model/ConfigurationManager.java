@@ -17,11 +17,19 @@ package org.ow2.erocci.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +49,8 @@ import org.occiware.clouddesigner.occi.Resource;
 import org.occiware.clouddesigner.occi.util.OcciHelper;
 import org.occiware.mart.MART;
 import org.ow2.erocci.backend.impl.Utils;
+import org.ow2.erocci.model.persistence.MappedModelSnapshot;
+import org.ow2.erocci.model.persistence.ModelJournal;
 
 /**
  * Manage configurations (OCCI Model).
@@ -105,17 +115,18 @@ public class ConfigurationManager {
     public static final String DEFAULT_OWNER = "anonymous";
 
     /**
-     * This map reference all occi configurations by users. The first ref string
+     * This map reference all occi configurations by users, each one in his
+     * own shard with the owner's entity index and lock. The first ref string
      * is the user uuid. To be updated for multiusers and multiconfigs.
      */
-    protected static Map<String, Configuration> configurations = new HashMap<>();
+    protected static Map<String, OwnerShard> shards = new ConcurrentHashMap<>();
 
     /**
      * References location for a user mixin. this is used by find method to find
      * the collection of user mixin. Key : Mixin sheme + term, must be unique
      * Value : Location with form of : http://localhost:8080/mymixincollection/
      */
-    protected static Map<String, String> userMixinLocationMap = new HashMap<String, String>();
+    protected static Map<String, String> userMixinLocationMap = new ConcurrentHashMap<String, String>();
 
     /**
      * Obtain the factory to create OCCI objects.
@@ -123,10 +134,64 @@ public class ConfigurationManager {
     protected static OCCIFactory occiFactory = OCCIFactory.eINSTANCE;
 
     /**
-     * Used only to create an eTag when object are updated. Key : owner+objectId
-     * Value : version number. First version is 1.
+     * Directory of entity owners. Key : entity id, Value : owners having an
+     * entity with this id. Used to resolve an entity without owner (like on
+     * dbus load method) without searching all owner's configurations.
      */
-    private static Map<String, Integer> versionObjectMap = new HashMap<>();
+    protected static Map<String, Set<String>> entityOwners = new ConcurrentHashMap<>();
+
+    /**
+     * Mapped snapshot the model was opened from, his entities are built on
+     * first access. Null when there is no entity left to build.
+     */
+    private static volatile MappedModelSnapshot mappedSnapshot = null;
+
+    /**
+     * Last index version of the owners whose configuration was reset. Key :
+     * owner, Value : version. A new shard of the owner starts after it, so an
+     * etag is never reused in this process.
+     */
+    private static final Map<String, Long> versionFloors = new ConcurrentHashMap<>();
+
+    /**
+     * Get the shard of an owner, an empty configuration is created if the
+     * owner has none.
+     *
+     * @param owner
+     * @return the owner's shard, never null.
+     */
+    public static OwnerShard getShardForOwner(final String owner) {
+        String key = owner == null ? DEFAULT_OWNER : owner;
+        OwnerShard shard = shards.get(key);
+        if (shard == null) {
+            // Dont take a lock here, the caller may hold a read lock.
+            OwnerShard newShard = new OwnerShard(key, occiFactory.createConfiguration());
+            Long versionFloor = versionFloors.get(key);
+            if (versionFloor != null) {
+                newShard.getIndex().advanceVersion(versionFloor);
+            }
+            shard = shards.putIfAbsent(key, newShard);
+            if (shard == null) {
+                shard = newShard;
+                logger.info("Configuration for user " + key + " created");
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Get the read/write lock guarding an owner's configuration. The owner's
+     * configuration (EMF lists) and entity index are read under the read lock
+     * and modified under the write lock, so dbus calls can be dispatched on
+     * several threads. Locks are reentrant, a write lock holder may take the
+     * read lock but a read lock holder must never ask for the write lock.
+     *
+     * @param owner
+     * @return a lock, never null.
+     */
+    public static ReentrantReadWriteLock getLockForOwner(final String owner) {
+        return getShardForOwner(owner).getLock();
+    }
 
     /**
      * Get a configuration from the configuration's map.
@@ -135,11 +200,7 @@ public class ConfigurationManager {
      * @return a configuration object for an owner.
      */
     public static Configuration getConfigurationForOwner(final String owner) {
-        if (configurations.get(owner) == null) {
-            createConfiguration(owner);
-        }
-
-        return configurations.get(owner);
+        return getShardForOwner(owner).getConfiguration();
     }
 
     /**
@@ -161,7 +222,7 @@ public class ConfigurationManager {
 //         configuration.getUse().add(extensionOcciInfra);
 //         configuration.getUse().add(extensionOcciCore);
         // Update reference configuration map.
-        configurations.put(owner, configuration);
+        updateConfiguration(owner, configuration);
 
         logger.info("Configuration for user " + owner + " created");
 
@@ -174,7 +235,16 @@ public class ConfigurationManager {
      * @param configuration
      */
     public static void removeConfiguration(final Configuration configuration) {
-        configurations.remove(configuration);
+        String ownerFound = null;
+        for (OwnerShard shard : shards.values()) {
+            if (shard.getConfiguration() == configuration) {
+                ownerFound = shard.getOwner();
+                break;
+            }
+        }
+        if (ownerFound != null) {
+            resetForOwner(ownerFound);
+        }
     }
 
     /**
@@ -185,7 +255,502 @@ public class ConfigurationManager {
      * @param configuration
      */
     public static void updateConfiguration(final String owner, final Configuration configuration) {
-        configurations.put(owner, configuration);
+        OwnerShard shard = getShardForOwner(owner);
+        Lock lock = shard.getLock().writeLock();
+        lock.lock();
+        try {
+            shard.setConfiguration(configuration);
+            refreshEntityIndex(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the entity index of an owner.
+     *
+     * @param owner
+     * @return the entity index for this owner, never null.
+     */
+    public static EntityIndex getEntityIndexForOwner(final String owner) {
+        return getShardForOwner(owner).getIndex();
+    }
+
+    /**
+     * Rebuild the entity index of an owner from his configuration. This must
+     * be called when the configuration has been modified outside this class
+     * (like a model import).
+     *
+     * @param owner
+     */
+    public static void refreshEntityIndex(final String owner) {
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            EntityIndex index = getEntityIndexForOwner(owner);
+            for (Entity entity : index.getEntities()) {
+                removeEntityOwner(owner, entity.getId());
+            }
+            index.rebuild(getConfigurationForOwner(owner));
+            for (Entity entity : index.getEntities()) {
+                addEntityOwner(owner, entity.getId());
+            }
+            // The configuration may use other extensions.
+            getShardForOwner(owner).getExtensions().rebuild(getConfigurationForOwner(owner));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reference an entity on the owner's index and on the owner directory.
+     *
+     * @param owner
+     * @param entity
+     */
+    private static void referenceEntity(final String owner, final Entity entity) {
+        getEntityIndexForOwner(owner).add(entity);
+        addEntityOwner(owner, entity.getId());
+    }
+
+    /**
+     * Remove an entity reference from the owner's index and from the owner
+     * directory.
+     *
+     * @param owner
+     * @param entity
+     */
+    private static void dereferenceEntity(final String owner, final Entity entity) {
+        EntityIndex index = getEntityIndexForOwner(owner);
+        index.remove(entity);
+        if (!index.contains(entity.getId())) {
+            removeEntityOwner(owner, entity.getId());
+        }
+    }
+
+    private static Set<String> getEntityOwners(final String entityId) {
+        if (entityId == null) {
+            return null;
+        }
+        return entityOwners.get(entityId);
+    }
+
+    private static void addEntityOwner(final String owner, final String entityId) {
+        // Owner sets are read without lock (copy on write), updates are
+        // atomic by entity id so owners of different entities dont contend.
+        entityOwners.compute(entityId, new BiFunction<String, Set<String>, Set<String>>() {
+            @Override
+            public Set<String> apply(String key, Set<String> owners) {
+                if (owners == null) {
+                    owners = new CopyOnWriteArraySet<>();
+                }
+                owners.add(owner);
+                return owners;
+            }
+        });
+    }
+
+    private static void removeEntityOwner(final String owner, final String entityId) {
+        entityOwners.computeIfPresent(entityId, new BiFunction<String, Set<String>, Set<String>>() {
+            @Override
+            public Set<String> apply(String key, Set<String> owners) {
+                owners.remove(owner);
+                return owners.isEmpty() ? null : owners;
+            }
+        });
+    }
+
+    /**
+     * Get the owners referencing an entity with this id.
+     *
+     * @param entityId
+     * @return a set of owners, empty if none found.
+     */
+    public static Set<String> findOwnersForEntityId(final String entityId) {
+        materializeMappedEntity(entityId);
+        Set<String> owners = getEntityOwners(entityId);
+        if (owners == null) {
+            return new LinkedHashSet<>();
+        }
+        return new LinkedHashSet<>(owners);
+    }
+
+    /**
+     * Read entities found by id on all owners. The entities of an owner are
+     * read under one acquisition of the owner's read lock, owners are read in
+     * parallel on their shards.
+     *
+     * @param ids
+     * @param reader called under the owner's read lock
+     * @return the values read, in ids order, null for an id not found or
+     * found on several owners.
+     */
+    public static <T> List<T> readEntitiesOnAllOwner(final List<String> ids, final EntityReader<T> reader) {
+        final Object[] values = new Object[ids.size()];
+        final Map<String, List<Integer>> positionsByOwner = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            materializeMappedEntity(id);
+            Set<String> owners = getEntityOwners(id);
+            if (owners == null || owners.size() != 1) {
+                continue;
+            }
+            String owner = owners.iterator().next();
+            List<Integer> positions = positionsByOwner.get(owner);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                positionsByOwner.put(owner, positions);
+            }
+            positions.add(i);
+        }
+        ShardExecutors.invokeAll(positionsByOwner.keySet(), new ShardExecutors.OwnerTask<Void>() {
+            @Override
+            public Void call(String owner) {
+                Lock lock = getLockForOwner(owner).readLock();
+                lock.lock();
+                try {
+                    EntityIndex index = getEntityIndexForOwner(owner);
+                    for (int position : positionsByOwner.get(owner)) {
+                        Entity entity = index.get(ids.get(position));
+                        if (entity != null) {
+                            values[position] = reader.read(owner, entity);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            }
+        });
+        List<T> results = new ArrayList<>(values.length);
+        for (Object value : values) {
+            @SuppressWarnings("unchecked")
+            T result = (T) value;
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Reader of an entity, called under the read lock of the entity's owner.
+     *
+     * @param <T> value type
+     */
+    public interface EntityReader<T> {
+
+        T read(String owner, Entity entity);
+    }
+
+    /**
+     * Find the owner of an entity object.
+     *
+     * @param entity
+     * @return the owner, null if this entity is not referenced.
+     */
+    public static String findOwnerForEntity(final Entity entity) {
+        if (entity == null) {
+            return null;
+        }
+        Set<String> owners = getEntityOwners(entity.getId());
+        if (owners == null) {
+            return null;
+        }
+        for (String owner : owners) {
+            if (findEntity(owner, entity.getId()) == entity) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Open the model on a mapped snapshot : the owners are created, their
+     * entities are built from the snapshot on first access.
+     *
+     * @param snapshot
+     */
+    public static void attachMappedSnapshot(final MappedModelSnapshot snapshot) {
+        for (String owner : snapshot.getOwners()) {
+            getShardForOwner(owner);
+        }
+        mappedSnapshot = snapshot.getRemaining() > 0 ? snapshot : null;
+    }
+
+    /**
+     *
+     * @return the mapped snapshot with entities not built yet, null if none.
+     */
+    public static MappedModelSnapshot getMappedSnapshot() {
+        return mappedSnapshot;
+    }
+
+    /**
+     * Build an owner's entity from the mapped snapshot, if it's there and not
+     * built yet. The caller must not hold only the owner's read lock (he
+     * can't take the write lock).
+     *
+     * @param owner
+     * @param id
+     * @throws IllegalStateException if the entity must be built and the
+     * caller holds only the owner's read lock.
+     */
+    private static void materializeMappedEntity(final String owner, final String id) {
+        MappedModelSnapshot snapshot = mappedSnapshot;
+        if (snapshot == null || id == null) {
+            return;
+        }
+        String key = owner == null ? DEFAULT_OWNER : owner;
+        MappedModelSnapshot.Entry entry = snapshot.find(key, id);
+        if (entry == null) {
+            return;
+        }
+        ReentrantReadWriteLock rwLock = getLockForOwner(key);
+        checkCanMaterialize(rwLock, key);
+        Lock lock = rwLock.writeLock();
+        lock.lock();
+        try {
+            materialize(snapshot, key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Build the entities with this id on all owners from the mapped snapshot.
+     *
+     * @param id
+     */
+    private static void materializeMappedEntity(final String id) {
+        MappedModelSnapshot snapshot = mappedSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        for (MappedModelSnapshot.Entry entry : snapshot.findAll(id)) {
+            materializeMappedEntity(entry.getOwner(), id);
+        }
+    }
+
+    /**
+     * Build the links from and to an owner's resource from the mapped
+     * snapshot, with the resource. The links targeting a resource are not
+     * built with it, this must be called before reading them in the owner's
+     * index (see EntityIndex.getLinksToTarget), without holding the owner's
+     * read lock.
+     *
+     * @param owner
+     * @param resourceId
+     * @throws IllegalStateException if links must be built and the caller
+     * holds only the owner's read lock.
+     */
+    public static void materializeMappedLinks(final String owner, final String resourceId) {
+        MappedModelSnapshot snapshot = mappedSnapshot;
+        if (snapshot == null || resourceId == null) {
+            return;
+        }
+        String key = owner == null ? DEFAULT_OWNER : owner;
+        materializeMappedEntity(key, resourceId);
+        List<MappedModelSnapshot.Entry> entries = snapshot.findLinks(key, resourceId);
+        if (entries.isEmpty()) {
+            return;
+        }
+        ReentrantReadWriteLock rwLock = getLockForOwner(key);
+        checkCanMaterialize(rwLock, key);
+        Lock lock = rwLock.writeLock();
+        lock.lock();
+        try {
+            for (MappedModelSnapshot.Entry entry : entries) {
+                materialize(snapshot, key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Build an owner's entities accepted by the filter from the mapped
+     * snapshot, used before reading a whole category or collection.
+     *
+     * @param owner
+     * @param filter (null for all the entities)
+     * @return true if records were accepted by the filter.
+     * @throws IllegalStateException if entities must be built and the caller
+     * holds only the owner's read lock.
+     */
+    private static boolean materializeMappedEntities(final String owner, final MappedModelSnapshot.Filter filter) {
+        MappedModelSnapshot snapshot = mappedSnapshot;
+        if (snapshot == null) {
+            return false;
+        }
+        String key = owner == null ? DEFAULT_OWNER : owner;
+        List<MappedModelSnapshot.Entry> entries = snapshot.entries(key, filter);
+        if (entries.isEmpty()) {
+            return false;
+        }
+        ReentrantReadWriteLock rwLock = getLockForOwner(key);
+        checkCanMaterialize(rwLock, key);
+        Lock lock = rwLock.writeLock();
+        lock.lock();
+        try {
+            for (MappedModelSnapshot.Entry entry : entries) {
+                materialize(snapshot, key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Build an owner's entities of a category from the mapped snapshot. Only
+     * the records of a kind or a mixin are built, all the records are built
+     * for an action id (actions are not known from the records).
+     *
+     * @param owner
+     * @param categoryId
+     */
+    private static void materializeMappedCategory(final String owner, final String categoryId) {
+        MappedModelSnapshot snapshot = mappedSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        if (materializeMappedEntities(owner, categoryFilter(categoryId))) {
+            // A kind or a mixin of the records, it's not an action id.
+            return;
+        }
+        if (isActionId(owner, snapshot, categoryId)) {
+            materializeMappedEntities(owner, null);
+        }
+    }
+
+    /**
+     * Check if a category id is an action of a kind or a mixin, the
+     * extensions of the kinds not built from the mapped snapshot are used
+     * first. The caller must not hold the owner's read lock.
+     *
+     * @param owner
+     * @param snapshot
+     * @param categoryId
+     * @return true if categoryId is an action id.
+     */
+    private static boolean isActionId(final String owner, final MappedModelSnapshot snapshot,
+            final String categoryId) {
+        for (String kindId : snapshot.getKinds(owner)) {
+            findKindFromExtension(owner, kindId);
+        }
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            for (Extension ext : getConfigurationForOwner(owner).getUse()) {
+                if (ExtensionRegistry.getActions(ext).containsKey(categoryId)) {
+                    return true;
+                }
+                for (Mixin mixin : ext.getMixins()) {
+                    for (Action action : mixin.getActions()) {
+                        if (categoryId.equals(action.getScheme() + action.getTerm())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check that the caller can take the owner's write lock to build mapped
+     * entities : a read lock holder can't, he must build them before taking
+     * the read lock.
+     *
+     * @param rwLock
+     * @param owner
+     */
+    private static void checkCanMaterialize(final ReentrantReadWriteLock rwLock, final String owner) {
+        if (rwLock.getReadHoldCount() > 0 && !rwLock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("Mapped entities of owner " + owner
+                    + " must be built before taking his read lock");
+        }
+    }
+
+    /**
+     * Build an entity from a mapped snapshot entry, the caller holds the
+     * owner's write lock. Links sources and targets are built first, the
+     * links of a resource are built with it (they are contained by the
+     * resource).
+     *
+     * @param snapshot
+     * @param owner
+     * @param entry
+     */
+    private static void materialize(final MappedModelSnapshot snapshot, final String owner,
+            final MappedModelSnapshot.Entry entry) {
+        if (!snapshot.markMaterialized(entry)) {
+            return;
+        }
+        MappedModelSnapshot.Entry fullEntry = snapshot.load(entry);
+        if (fullEntry.isLink()) {
+            materializeMappedEntity(owner, fullEntry.getSource());
+            materializeMappedEntity(owner, fullEntry.getTarget());
+            createOrUpdateLink(fullEntry.getId(), fullEntry.getKind(), fullEntry.getMixins(),
+                    fullEntry.getSource(), fullEntry.getTarget(), fullEntry.getAttributes(), owner);
+        } else {
+            createOrUpdateResource(getConfigurationForOwner(owner), fullEntry.getId(), fullEntry.getKind(),
+                    fullEntry.getMixins(), fullEntry.getAttributes(), owner);
+        }
+        snapshot.setMaterializedVersion(entry, getEntityIndexForOwner(owner).getVersion());
+        if (!fullEntry.isLink()) {
+            for (MappedModelSnapshot.Entry link : snapshot.findLinks(owner, fullEntry.getId())) {
+                if (fullEntry.getId().equals(link.getSource())) {
+                    materialize(snapshot, owner, link);
+                }
+            }
+        }
+        if (snapshot.getRemaining() == 0 && mappedSnapshot == snapshot) {
+            mappedSnapshot = null;
+            logger.info("All entities of the mapped snapshot are built");
+        }
+    }
+
+    /**
+     * Filter of mapped entities on a kind or a mixin.
+     *
+     * @param categoryId
+     * @return a filter.
+     */
+    private static MappedModelSnapshot.Filter categoryFilter(final String categoryId) {
+        return new MappedModelSnapshot.Filter() {
+            @Override
+            public boolean accept(MappedModelSnapshot.Entry entry) {
+                return entry.hasCategory(categoryId);
+            }
+        };
+    }
+
+    /**
+     * Filter of mapped entities on a kind or a mixin and on a List filter,
+     * the attributes are decoded only if the filter reads them.
+     *
+     * @param snapshot
+     * @param categoryId
+     * @param filter (may be null)
+     * @return a filter.
+     */
+    private static MappedModelSnapshot.Filter recordFilter(final MappedModelSnapshot snapshot,
+            final String categoryId, final EntityFilter filter) {
+        if (filter == null) {
+            return categoryFilter(categoryId);
+        }
+        return new MappedModelSnapshot.Filter() {
+            @Override
+            public boolean accept(MappedModelSnapshot.Entry entry) {
+                if (!entry.hasCategory(categoryId) || !filter.acceptCategories(entry.getKind(), entry.getMixins())) {
+                    return false;
+                }
+                return !filter.hasAttributeCriteria()
+                        || filter.acceptAttributes(snapshot.load(entry).getAttributes());
+            }
+        };
     }
 
     /**
@@ -209,7 +774,19 @@ public class ConfigurationManager {
             owner = DEFAULT_OWNER;
         }
 
-        Configuration configuration = getConfigurationForOwner(owner);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            createOrUpdateResource(getConfigurationForOwner(owner), id, kind, mixins, attributes, owner);
+            ModelJournal.getInstance().logSaveResource(owner, id, kind, mixins, attributes);
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private static void createOrUpdateResource(final Configuration configuration, final String id,
+            final String kind, final List<String> mixins, final Map<String, String> attributes, final String owner) {
 
         // Assign a new resource to configuration, if configuration has resource
         // existed, inform by logger but overwrite existing one.
@@ -257,6 +834,7 @@ public class ConfigurationManager {
             logger.info("resource updated " + resource.getId() + " on OCCI configuration");
         } else {
             configuration.getResources().add(resource);
+            referenceEntity(owner, resource);
             logger.info("Added Resource " + resource.getId() + " to configuration object.");
 
         }
@@ -265,6 +843,68 @@ public class ConfigurationManager {
 
     }
 
+    /**
+     * Save many resources and links of an owner with one write lock
+     * acquisition and one journal write. Resources are saved before links,
+     * so links of the batch may use resources of the batch. An existing
+     * entity is overwritten, occi.core.id is set on the new ones.
+     *
+     * @param owner
+     * @param inputs
+     * @return the saved entities, in inputs order, null for a link not saved
+     * (unknown source or target).
+     */
+    public static List<Entity> saveEntities(String owner, final List<EntityInput> inputs) {
+        if (owner == null || owner.isEmpty()) {
+            owner = DEFAULT_OWNER;
+        }
+        List<Entity> entities = new ArrayList<>(Collections.nCopies(inputs.size(), (Entity) null));
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        ModelJournal.getInstance().startBatch();
+        try {
+            Configuration configuration = getConfigurationForOwner(owner);
+            EntityIndex index = getEntityIndexForOwner(owner);
+            for (int i = 0; i < inputs.size(); i++) {
+                EntityInput input = inputs.get(i);
+                if (input.isLink()) {
+                    continue;
+                }
+                // The input is not modified, the caller may reuse it.
+                Map<String, String> attributes = new HashMap<>(input.getAttributes());
+                // A mapped resource is built to be overwritten.
+                if (findResource(owner, input.getId()) == null) {
+                    attributes.put("occi.core.id", input.getId());
+                }
+                createOrUpdateResource(configuration, input.getId(), input.getKind(), input.getMixins(),
+                        attributes, owner);
+                ModelJournal.getInstance().logSaveResource(owner, input.getId(), input.getKind(),
+                        input.getMixins(), attributes);
+                entities.set(i, index.get(input.getId()));
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                EntityInput input = inputs.get(i);
+                if (!input.isLink()) {
+                    continue;
+                }
+                Map<String, String> attributes = new HashMap<>(input.getAttributes());
+                if (findLink(owner, input.getId()) == null) {
+                    attributes.put("occi.core.id", input.getId());
+                }
+                if (createOrUpdateLink(input.getId(), input.getKind(), input.getMixins(), input.getSource(),
+                        input.getTarget(), attributes, owner)) {
+                    ModelJournal.getInstance().logSaveLink(owner, input.getId(), input.getKind(),
+                            input.getMixins(), input.getSource(), input.getTarget(), attributes);
+                    entities.set(i, index.get(input.getId()));
+                }
+            }
+        } finally {
+            ModelJournal.getInstance().endBatch();
+            lock.unlock();
+        }
+        return entities;
+    }
+
     /**
      * Add a new link entity to a configuration and update the configuration's
      * map accordingly.
@@ -276,9 +916,10 @@ public class ConfigurationManager {
      * @param target
      * @param attributes
      * @param owner
-     * @return a configuration updated.
+     * @return true if the link is saved, false if his source or his target is
+     * not found.
      */
-    public static void addLinkToConfiguration(String id, String kind, java.util.List<String> mixins, String src,
+    public static boolean addLinkToConfiguration(String id, String kind, java.util.List<String> mixins, String src,
             String target, Map<String, String> attributes, String owner) {
 
         if (owner == null || owner.isEmpty()) {
@@ -286,17 +927,40 @@ public class ConfigurationManager {
             owner = DEFAULT_OWNER;
         }
 
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            if (!createOrUpdateLink(id, kind, mixins, src, target, attributes, owner)) {
+                return false;
+            }
+            ModelJournal.getInstance().logSaveLink(owner, id, kind, mixins, src, target, attributes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Create or overwrite a link, the caller holds the owner's write lock.
+     *
+     * @return false if the source or the target is not found (nothing is
+     * done).
+     */
+    private static boolean createOrUpdateLink(final String id, final String kind, final List<String> mixins,
+            final String src, final String target, final Map<String, String> attributes, final String owner) {
+
         boolean overwrite = false;
         Resource resourceSrc = findResource(owner, src);
         Resource resourceDest = findResource(owner, target);
 
         if (resourceSrc == null) {
             // TODO : Throw an exception, source must be set.
-            return;
+            return false;
         }
         if (resourceDest == null) {
             // TODO : Throw an exception, target must be set.
-            return;
+            return false;
         }
 
         Link link = findLink(owner, id);
@@ -345,19 +1009,43 @@ public class ConfigurationManager {
 
         // Assign link to resource source.
         resourceSrc.getLinks().add(link);
+        referenceEntity(owner, link);
 
         updateVersion(owner, id);
 
         if (overwrite) {
-            logger.info("Link " + id + " updated ! Version: " + versionObjectMap.get(owner + id));
+            logger.info("Link " + id + " updated ! Version: " + getEntityIndexForOwner(owner).getEntityVersion(id));
         } else {
             logger.info("link " + id + " added to configuration !");
         }
+        return true;
+    }
 
+    /**
+     * Update / add attributes to an owner's entity, under the owner's lock.
+     *
+     * @param owner
+     * @param entity
+     * @param attributes
+     * @return Updated entity object.
+     */
+    public static Entity updateAttributesToEntity(final String owner, Entity entity,
+            Map<String, String> attributes) {
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            updateAttributesToEntity(entity, attributes);
+            updateVersion(owner, entity.getId());
+            ModelJournal.getInstance().logUpdate(owner, entity.getId(), attributes);
+            return entity;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Update / add attributes to entity.
+     * Update / add attributes to entity. The caller must hold the write lock
+     * of the entity's owner.
      *
      * @param entity
      * @param attributes
@@ -391,11 +1079,41 @@ public class ConfigurationManager {
      * url part: unbounded collection or entity
      */
     public static void removeOrDissociate(final String id) {
-        // get the owners
-        Set<String> owners = configurations.keySet();
-        for (String owner : owners) {
-            removeOrDissociateFromConfiguration(owner, id);
-        }
+        // Owners are processed in parallel on their shards.
+        ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<Void>() {
+            @Override
+            public Void call(String owner) {
+                removeOrDissociateFromConfiguration(owner, id);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Remove many entities (or kind entities, or mixin associations) from the
+     * configurations on overall owners, each owner is processed once with one
+     * journal write.
+     *
+     * @param ids
+     */
+    public static void removeOrDissociate(final Collection<String> ids) {
+        ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<Void>() {
+            @Override
+            public Void call(String owner) {
+                Lock lock = getLockForOwner(owner).writeLock();
+                lock.lock();
+                ModelJournal.getInstance().startBatch();
+                try {
+                    for (String id : ids) {
+                        removeOrDissociateFromConfiguration(owner, id);
+                    }
+                } finally {
+                    ModelJournal.getInstance().endBatch();
+                    lock.unlock();
+                }
+                return null;
+            }
+        });
     }
 
     /**
@@ -407,60 +1125,70 @@ public class ConfigurationManager {
      * @param id (kind id or mixin id or entity Id!)
      */
     public static void removeOrDissociateFromConfiguration(final String owner, final String id) {
-        // Find if this is an entity id or a mixin id or a kind id.
-        boolean found = false;
-        boolean resourceToDelete = false;
-        boolean kindEntitiesToDelete = false;
-        boolean linkToDelete = false;
-        boolean mixinToDissociate = false;
-
-        Kind kind = null;
-        Resource resource;
-        Link link = null;
-        Mixin mixin = null;
-
-        // searching in resources.
-        resource = findResource(owner, id);
-        if (resource != null) {
-            found = true;
-            resourceToDelete = true;
-        }
-        if (!found) {
-            link = findLink(owner, id);
-            if (link != null) {
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            // Find if this is an entity id or a mixin id or a kind id.
+            boolean found = false;
+            boolean resourceToDelete = false;
+            boolean kindEntitiesToDelete = false;
+            boolean linkToDelete = false;
+            boolean mixinToDissociate = false;
+
+            Kind kind = null;
+            Resource resource;
+            Link link = null;
+            Mixin mixin = null;
+
+            // searching in resources.
+            resource = findResource(owner, id);
+            if (resource != null) {
                 found = true;
-                linkToDelete = true;
+                resourceToDelete = true;
             }
-        }
-        if (!found) {
-            // check if this is a kind id.
-            kind = findKindFromEntities(owner, id);
-            if (kind != null) {
-                kindEntitiesToDelete = true;
-                found = true;
+            if (!found) {
+                link = findLink(owner, id);
+                if (link != null) {
+                    found = true;
+                    linkToDelete = true;
+                }
             }
-        }
-        if (!found) {
-            mixin = findMixinOnEntities(owner, id);
-            if (mixin != null) {
-                found = true;
-                mixinToDissociate = true;
+            if (!found) {
+                // Entities of a kind or mixin may still be in the mapped snapshot.
+                materializeMappedEntities(owner, categoryFilter(id));
+                // check if this is a kind id.
+                kind = findKindFromEntities(owner, id);
+                if (kind != null) {
+                    kindEntitiesToDelete = true;
+                    found = true;
+                }
+            }
+            if (!found) {
+                mixin = findMixinOnEntities(owner, id);
+                if (mixin != null) {
+                    found = true;
+                    mixinToDissociate = true;
+                }
             }
-        }
 
-        if (resourceToDelete) {
-            removeResource(owner, resource);
-        }
-        if (linkToDelete) {
-            removeLink(owner, link);
-        }
-        if (kindEntitiesToDelete) {
-            removeEntitiesForKind(owner, kind);
-        }
-        if (mixinToDissociate) {
-            dissociateMixinFromEntities(owner, mixin);
+            if (resourceToDelete) {
+                removeResource(owner, resource);
+            }
+            if (linkToDelete) {
+                removeLink(owner, link);
+            }
+            if (kindEntitiesToDelete) {
+                removeEntitiesForKind(owner, kind);
+            }
+            if (mixinToDissociate) {
+                dissociateMixinFromEntities(owner, mixin);
+            }
+            if (found) {
+                ModelJournal.getInstance().logDelete(owner, id);
+            }
+        } finally {
+            lock.unlock();
         }
-
     }
 
     /**
@@ -469,29 +1197,25 @@ public class ConfigurationManager {
      * @param resource
      */
     public static void removeResource(final String owner, final Resource resource) {
-        Configuration config = getConfigurationForOwner(owner);
-        EList<Link> resLink = resource.getLinks();
-        if (resLink != null) {
-
-            for (Link link : resLink) {
-                removeLink(owner, link);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            Configuration config = getConfigurationForOwner(owner);
+            EList<Link> resLink = resource.getLinks();
+            if (resLink != null) {
+                // removeLink removes the link from this list.
+                for (Link link : new ArrayList<>(resLink)) {
+                    removeLink(owner, link);
+                }
             }
-        }
-        resource.getLinks().clear(); // Remove all links on that resource.
-
-        Kind kind = resource.getKind();
-        if (kind.getEntities().contains(resource)) {
-            kind.getEntities().remove(resource);
-        }
+            resource.getLinks().clear(); // Remove all links on that resource.
 
-        if (resource.getMixins() != null) {
-            for (Mixin mixin : resource.getMixins()) {
-                mixin.getEntities().remove(resource);
-            }
+            // Kind and mixin entities are derived, they are not changeable.
+            config.getResources().remove(resource);
+            dereferenceEntity(owner, resource);
+        } finally {
+            lock.unlock();
         }
-
-        config.getResources().remove(resource);
-
     }
 
     /**
@@ -501,20 +1225,21 @@ public class ConfigurationManager {
      * @param link
      */
     public static void removeLink(final String owner, final Link link) {
-        Resource resourceSrc = link.getSource();
-        Resource resourceTarget = link.getTarget();
-        resourceSrc.getLinks().remove(link);
-        resourceTarget.getLinks().remove(link);
-        Kind linkKind = link.getKind();
-        if (linkKind.getEntities().contains(link)) {
-            linkKind.getEntities().remove(link);
-        }
-        if (link.getMixins() != null) {
-            for (Mixin mixin : link.getMixins()) {
-                mixin.getEntities().remove(link);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            Resource resourceSrc = link.getSource();
+            Resource resourceTarget = link.getTarget();
+            resourceSrc.getLinks().remove(link);
+            // Only a link on himself is contained by his target.
+            if (resourceTarget != null && resourceTarget.getLinks().contains(link)) {
+                resourceTarget.getLinks().remove(link);
             }
+            // Kind and mixin entities are derived, they are not changeable.
+            dereferenceEntity(owner, link);
+        } finally {
+            lock.unlock();
         }
-
     }
 
     /**
@@ -524,21 +1249,27 @@ public class ConfigurationManager {
      * @param kind
      */
     public static void removeEntitiesForKind(final String owner, final Kind kind) {
-        // Configuration config = configurations.get(owner);
-        if (kind == null) {
-            return;
-        }
-        List<Entity> entities = findAllEntitiesForKind(owner, kind.getScheme() + kind.getTerm());
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            // Configuration config = configurations.get(owner);
+            if (kind == null) {
+                return;
+            }
+            List<Entity> entities = findAllEntitiesForKind(owner, kind.getScheme() + kind.getTerm());
 
-        for (Entity entity : entities) {
-            if (entity instanceof Resource) {
-                removeResource(owner, (Resource) entity);
-            } else if (entity instanceof Link) {
-                removeLink(owner, (Link) entity);
+            for (Entity entity : entities) {
+                if (entity instanceof Resource) {
+                    removeResource(owner, (Resource) entity);
+                } else if (entity instanceof Link) {
+                    removeLink(owner, (Link) entity);
+                }
             }
+            entities.clear();
+            // kind.getEntities().clear();
+        } finally {
+            lock.unlock();
         }
-        entities.clear();
-        // kind.getEntities().clear();
     }
 
     /**
@@ -548,17 +1279,24 @@ public class ConfigurationManager {
      * @param mixin
      */
     public static void dissociateMixinFromEntities(final String owner, final Mixin mixin) {
-        if (mixin == null) {
-            return;
-        }
-        List<Entity> entities = findAllEntitiesForMixin(owner, mixin.getScheme() + mixin.getTerm());
-        for (Entity entity : entities) {
-            entity.getMixins().remove(mixin);
-            updateVersion(owner, entity.getId());
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            if (mixin == null) {
+                return;
+            }
+            List<Entity> entities = findAllEntitiesForMixin(owner, mixin.getScheme() + mixin.getTerm());
+            EntityIndex index = getEntityIndexForOwner(owner);
+            for (Entity entity : entities) {
+                entity.getMixins().remove(mixin);
+                index.reindexCategories(entity);
+                updateVersion(owner, entity.getId());
+            }
+            entities.clear();
+            // mixin.getEntities().clear();
+        } finally {
+            lock.unlock();
         }
-        entities.clear();
-        // mixin.getEntities().clear();
-
     }
 
     /**
@@ -569,17 +1307,14 @@ public class ConfigurationManager {
      * @return an OCCI resource.
      */
     public static Resource findResource(final String owner, final String id) {
-        Resource resFound = null;
-        Configuration configuration = getConfigurationForOwner(owner);
-
-        for (Resource resource : configuration.getResources()) {
-            if (resource.getId().equals(id)) {
-                resFound = resource;
-                // Resource found.
-                break;
-            }
+        materializeMappedEntity(owner, id);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return getEntityIndexForOwner(owner).getResource(id);
+        } finally {
+            lock.unlock();
         }
-        return resFound;
     }
 
     /**
@@ -592,22 +1327,28 @@ public class ConfigurationManager {
      * anymore.
      */
     public static Link findLink(final String owner, final String id, final String srcResourceId) {
-        Link linkFound = null;
+        materializeMappedEntity(owner, srcResourceId);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            Link linkFound = null;
+
+            Resource resourceSrc = findResource(owner, srcResourceId);
+            if (resourceSrc == null) {
+                return linkFound;
+            }
+            for (Link link : resourceSrc.getLinks()) {
+                if (link.getId().equals(id)) {
+                    linkFound = link;
+                    // link has been found.
+                    break;
+                }
+            }
 
-        Resource resourceSrc = findResource(owner, srcResourceId);
-        if (resourceSrc == null) {
             return linkFound;
+        } finally {
+            lock.unlock();
         }
-        for (Link link : resourceSrc.getLinks()) {
-            if (link.getId().equals(id)) {
-                linkFound = link;
-                // link has been found.
-                break;
-            }
-        }
-
-        return linkFound;
-
     }
 
     /**
@@ -616,27 +1357,14 @@ public class ConfigurationManager {
      * @return
      */
     public static Link findLink(final String owner, final String id) {
-        Configuration configuration = getConfigurationForOwner(owner);
-
-        Link link = null;
-        EList<Link> links;
-        for (Resource resource : configuration.getResources()) {
-            links = resource.getLinks();
-            if (!links.isEmpty()) {
-                for (Link lnk : links) {
-                    if (lnk.getId().equals(id)) {
-                        link = lnk;
-                        break;
-
-                    }
-                }
-                if (link != null) {
-                    break;
-                }
-            }
-
+        materializeMappedEntity(owner, id);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return getEntityIndexForOwner(owner).getLink(id);
+        } finally {
+            lock.unlock();
         }
-        return link;
     }
 
     /**
@@ -654,16 +1382,13 @@ public class ConfigurationManager {
             return entity;
         }
 
-        Resource resource = findResource(owner, id);
-
-        Link link = null;
-        if (resource == null) {
-            link = findLink(owner, id);
-            if (link != null) {
-                entity = link;
-            }
-        } else {
-            entity = resource;
+        materializeMappedEntity(owner, id);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            entity = getEntityIndexForOwner(owner).get(id);
+        } finally {
+            lock.unlock();
         }
         return entity;
     }
@@ -674,7 +1399,7 @@ public class ConfigurationManager {
      * @return
      */
     public static Set<String> getAllOwner() {
-        return configurations.keySet();
+        return shards.keySet();
     }
 
     /**
@@ -718,23 +1443,13 @@ public class ConfigurationManager {
      * @return
      */
     public static Entity findEntityOnAllOwner(String ownerFound, final String id) {
-        if (configurations.isEmpty()) {
+        materializeMappedEntity(id);
+        Set<String> owners = getEntityOwners(id);
+        if (owners == null || owners.isEmpty()) {
             return null;
         }
-
-        Set<String> owners = configurations.keySet();
-        Entity entity = null;
-        for (String owner : owners) {
-            entity = findEntity(owner, id);
-            ownerFound = owner;
-            if (entity != null) {
-                break;
-            }
-        }
-        if (ownerFound == null) {
-            ownerFound = DEFAULT_OWNER;
-        }
-        return entity;
+        ownerFound = owners.iterator().next();
+        return findEntity(ownerFound, id);
     }
 
     /**
@@ -745,32 +1460,19 @@ public class ConfigurationManager {
      * @return
      */
     public static Kind findKindFromEntities(final String owner, final String id) {
-        Configuration configuration = getConfigurationForOwner(owner);
-        Kind kind = null;
-        EList<Link> links;
-
-        EList<Resource> resources = configuration.getResources();
-        for (Resource resource : resources) {
-            if ((resource.getKind().getScheme() + resource.getKind().getTerm()).equals(id)) {
-                kind = resource.getKind();
-            } else {
-                // On check les links de la resource.
-                links = resource.getLinks();
-                for (Link link : links) {
-                    if ((link.getKind().getScheme() + link.getKind().getTerm()).equals(id)) {
-                        kind = link.getKind();
-                        break;
-                    }
-                }
-            }
-            if (kind != null) {
-                break;
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            Kind kind = null;
+            Set<Entity> entities = getEntityIndexForOwner(owner).getEntitiesForKind(id);
+            if (!entities.isEmpty()) {
+                kind = entities.iterator().next().getKind();
             }
 
+            return kind;
+        } finally {
+            lock.unlock();
         }
-
-        return kind;
-
     }
 
     /**
@@ -781,58 +1483,64 @@ public class ConfigurationManager {
      * @return
      */
     public static Kind findKindFromExtension(final String owner, final String kindId) {
-        Configuration config = getConfigurationForOwner(owner);
-        Kind kindToReturn = null;
-        EList<Kind> kinds;
-        List<String> extUsed = new ArrayList<>();
-        EList<Extension> exts = config.getUse();
-        for (Extension ext : exts) {
-            extUsed.add(ext.getScheme());
-            kinds = ext.getKinds();
-            for (Kind kind : kinds) {
-                if (((kind.getScheme() + kind.getTerm()).equals(kindId))) {
-                    kindToReturn = kind;
-                    break;
-                }
-            }
-
-            if (kindToReturn != null) {
-                break;
-            }
-
-        }
-
-        if (kindToReturn == null) {
-
-            // Search kind in unreferenced extensions, if found reference the
-            // new extension to this configuration.
-            Collection<String> extReg = OCCIRegistry.getInstance().getRegisteredExtensions();
-
-            extReg.removeAll(extUsed);
-            Extension ext;
-            for (String extScheme : extReg) {
-                // ext = OcciHelper.loadExtension(OCCIRegistry.getInstance().getExtensionURI(extScheme));
-                ext = OcciHelper.loadExtension(extScheme);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            Configuration config = getConfigurationForOwner(owner);
+            Kind kindToReturn = null;
+            EList<Kind> kinds;
+            List<String> extUsed = new ArrayList<>();
+            EList<Extension> exts = config.getUse();
+            for (Extension ext : exts) {
+                extUsed.add(ext.getScheme());
                 kinds = ext.getKinds();
                 for (Kind kind : kinds) {
                     if (((kind.getScheme() + kind.getTerm()).equals(kindId))) {
                         kindToReturn = kind;
-                        // Assign connector factory to EMF Factory of the
-                        // corresponding OCCI Package.
-                        // assignConnectorFactoryToEMFPackage(ext);
-                        config.getUse().add(ext);
-                        logger.log(Level.INFO, "New extension: {0} --< added to configuration owner: {1}", new Object[]{ext.getName(), owner});
                         break;
                     }
                 }
+
                 if (kindToReturn != null) {
                     break;
                 }
+
             }
-        }
 
-        return kindToReturn;
+            if (kindToReturn == null) {
+
+                // Search kind in unreferenced extensions, if found reference the
+                // new extension to this configuration.
+                Collection<String> extReg = OCCIRegistry.getInstance().getRegisteredExtensions();
+
+                extReg.removeAll(extUsed);
+                Extension ext;
+                for (String extScheme : extReg) {
+                    // ext = OcciHelper.loadExtension(OCCIRegistry.getInstance().getExtensionURI(extScheme));
+                    ext = OcciHelper.loadExtension(extScheme);
+                    kinds = ext.getKinds();
+                    for (Kind kind : kinds) {
+                        if (((kind.getScheme() + kind.getTerm()).equals(kindId))) {
+                            kindToReturn = kind;
+                            // Assign connector factory to EMF Factory of the
+                            // corresponding OCCI Package.
+                            // assignConnectorFactoryToEMFPackage(ext);
+                            config.getUse().add(ext);
+                            getShardForOwner(owner).getExtensions().rebuild(config);
+                            logger.log(Level.INFO, "New extension: {0} --< added to configuration owner: {1}", new Object[]{ext.getName(), owner});
+                            break;
+                        }
+                    }
+                    if (kindToReturn != null) {
+                        break;
+                    }
+                }
+            }
 
+            return kindToReturn;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -844,29 +1552,124 @@ public class ConfigurationManager {
      */
     public static Map<String, List<Entity>> findAllEntitiesForCategoryId(final String categoryId) {
         Map<String, List<Entity>> entitiesMap = new HashMap<>();
-        if (configurations.isEmpty()) {
+        if (shards.isEmpty()) {
             return entitiesMap;
         }
-        Set<String> owners = configurations.keySet();
-        List<Entity> entities = new ArrayList<>();
+        entitiesMap.putAll(ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<List<Entity>>() {
+            @Override
+            public List<Entity> call(String owner) {
+                List<Entity> entities = new ArrayList<>();
+                materializeMappedCategory(owner, categoryId);
+                Lock lock = getLockForOwner(owner).readLock();
+                lock.lock();
+                try {
+                    EntityIndex index = getEntityIndexForOwner(owner);
+                    entities.addAll(index.getEntitiesForKind(categoryId));
+                    entities.addAll(index.getEntitiesForMixin(categoryId));
+                    entities.addAll(index.getEntitiesForAction(categoryId));
+                } finally {
+                    lock.unlock();
+                }
+                return entities;
+            }
+        }));
+        return entitiesMap;
 
-        for (String owner : owners) {
-            entities.clear();
+    }
 
-            entities.addAll(findAllEntitiesForKind(owner, categoryId));
-            entities.addAll(findAllEntitiesForMixin(owner, categoryId));
-            entities.addAll(findAllEntitiesForAction(owner, categoryId));
+    /**
+     * Take a snapshot of the entity ids for a categoryId (kind, mixin or
+     * action) on all owners. The snapshots are iterated later without lock
+     * and are not affected by next modifications. Entities of a kind or mixin
+     * not built from the mapped snapshot are read from it, they are not
+     * built.
+     *
+     * @param categoryId
+     * @return an hmap (key: owner, value : snapshots of entity ids).
+     */
+    public static Map<String, List<Iterable<String>>> snapshotAllEntityIdsForCategoryId(final String categoryId) {
+        return snapshotAllEntityIdsForCategoryId(categoryId, null);
+    }
 
-            if (entities != null && !entities.isEmpty()) {
-                entitiesMap.put(owner, entities);
-            } else {
-                entities = new ArrayList<>();
-                entitiesMap.put(owner, entities);
+    /**
+     * Take a snapshot of the entity ids for a categoryId (kind, mixin or
+     * action) on all owners, keeping only the entities accepted by a filter.
+     * Built entities are filtered under the owner's read lock, so only the
+     * matching ids are kept : when a criterion is on an indexed attribute,
+     * only the entities of the attribute index are checked. Entities not
+     * built from the mapped snapshot are filtered on iteration from their
+     * records.
+     *
+     * @param categoryId
+     * @param filter (may be null)
+     * @return an hmap (key: owner, value : snapshots of entity ids).
+     */
+    public static Map<String, List<Iterable<String>>> snapshotAllEntityIdsForCategoryId(final String categoryId,
+            final EntityFilter entityFilter) {
+        final EntityFilter filter = entityFilter == null || entityFilter.isEmpty() ? null : entityFilter;
+        return ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<List<Iterable<String>>>() {
+            @Override
+            public List<Iterable<String>> call(String owner) {
+                List<Iterable<String>> snapshots = new ArrayList<>();
+                MappedModelSnapshot snapshot = mappedSnapshot;
+                Lock lock = getLockForOwner(owner).readLock();
+                lock.lock();
+                try {
+                    EntityIndex index = getEntityIndexForOwner(owner);
+                    Collection<Entity> candidates = filter == null ? null : index.findAttributeCandidates(filter);
+                    if (candidates != null) {
+                        // Indexed attribute criteria, only the candidates are checked.
+                        List<String> ids = new ArrayList<>();
+                        for (Entity entity : candidates) {
+                            if (index.hasCategory(entity, categoryId) && filter.accept(entity)) {
+                                ids.add(entity.getId());
+                            }
+                        }
+                        snapshots.add(ids);
+                    } else {
+                        for (EntitySnapshot entitySnapshot : index.snapshotForCategory(categoryId)) {
+                            if (filter == null) {
+                                snapshots.add(entitySnapshot.ids());
+                                continue;
+                            }
+                            // Attributes may change after the lock is released, filter now.
+                            List<String> ids = new ArrayList<>();
+                            for (Entity entity : entitySnapshot) {
+                                if (filter.accept(entity)) {
+                                    ids.add(entity.getId());
+                                }
+                            }
+                            snapshots.add(ids);
+                        }
+                    }
+                    if (snapshot != null) {
+                        // Mapped entities built after this version are still read from the mapped snapshot.
+                        snapshots.add(snapshot.snapshotIds(owner, recordFilter(snapshot, categoryId, filter),
+                                index.getVersion()));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return snapshots;
             }
+        });
+    }
 
+    /**
+     * Take a snapshot of all the entities of an owner.
+     *
+     * @param owner
+     * @return a snapshot at the current version of the owner's model.
+     */
+    public static EntitySnapshot snapshotEntitiesOwner(final String owner) {
+        materializeMappedEntities(owner, null);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return getEntityIndexForOwner(owner).snapshot();
+        } finally {
+            lock.unlock();
         }
-        return entitiesMap;
-
     }
 
     /**
@@ -876,17 +1679,37 @@ public class ConfigurationManager {
      */
     public static List<String> getUsedCollectionTypes() {
         List<String> collectionTypes = new ArrayList<>();
-        Map<String, List<Entity>> entitiesMap = getAllEntities();
         String collection = "collections/";
-        List<Entity> entities;
         String result;
-        for (Map.Entry<String, List<Entity>> entry : entitiesMap.entrySet()) {
-            entities = entry.getValue();
-            for (Entity entity : entities) {
-                String kindTerm = entity.getKind().getTerm();
+        Map<String, List<String>> kindTermsByOwner = ShardExecutors.invokeAll(shards.keySet(),
+                new ShardExecutors.OwnerTask<List<String>>() {
+            @Override
+            public List<String> call(String owner) {
+                List<String> kindTerms = new ArrayList<>();
+                Lock lock = getLockForOwner(owner).readLock();
+                lock.lock();
+                try {
+                    EntityIndex index = getEntityIndexForOwner(owner);
+                    for (String kindId : index.getUsedKinds()) {
+                        kindTerms.add(index.getEntitiesForKind(kindId).iterator().next().getKind().getTerm());
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                MappedModelSnapshot snapshot = mappedSnapshot;
+                if (snapshot != null) {
+                    for (String kindId : snapshot.getKinds(owner)) {
+                        kindTerms.add(kindId.substring(kindId.indexOf('#') + 1));
+                    }
+                }
+                return kindTerms;
+            }
+        });
+        for (List<String> kindTerms : kindTermsByOwner.values()) {
+            for (String kindTerm : kindTerms) {
                 result = collection + kindTerm;
                 if (!collectionTypes.contains(result)) {
-                    collectionTypes.add(collection + kindTerm);
+                    collectionTypes.add(result);
                 }
             }
         }
@@ -902,19 +1725,30 @@ public class ConfigurationManager {
      */
     public static List<String> getAllUsedKind() {
         List<String> usedKinds = new ArrayList<>();
-        Map<String, List<Entity>> entitiesMap = getAllEntities();
-        List<Entity> entities;
-        String result;
-
-        for (Map.Entry<String, List<Entity>> entry : entitiesMap.entrySet()) {
-            entities = entry.getValue();
-            for (Entity entity : entities) {
-                String kindTerm = entity.getKind().getTerm();
-                String scheme = entity.getKind().getScheme();
 
-                result = scheme + kindTerm;
-                if (!usedKinds.contains(result)) {
-                    usedKinds.add(result);
+        Map<String, List<String>> usedKindsByOwner = ShardExecutors.invokeAll(shards.keySet(),
+                new ShardExecutors.OwnerTask<List<String>>() {
+            @Override
+            public List<String> call(String owner) {
+                List<String> kinds;
+                Lock lock = getLockForOwner(owner).readLock();
+                lock.lock();
+                try {
+                    kinds = new ArrayList<>(getEntityIndexForOwner(owner).getUsedKinds());
+                } finally {
+                    lock.unlock();
+                }
+                MappedModelSnapshot snapshot = mappedSnapshot;
+                if (snapshot != null) {
+                    kinds.addAll(snapshot.getKinds(owner));
+                }
+                return kinds;
+            }
+        });
+        for (List<String> ownerKinds : usedKindsByOwner.values()) {
+            for (String kindId : ownerKinds) {
+                if (!usedKinds.contains(kindId)) {
+                    usedKinds.add(kindId);
                 }
             }
 
@@ -942,22 +1776,28 @@ public class ConfigurationManager {
         List<String> mixinKinds;
         Map<String, List<String>> mixinKindsByOwner = new HashMap<>();
         // Recherche sur tous les users mixin kinds.
-        Set<String> owners = configurations.keySet();
+        Set<String> owners = shards.keySet();
         Configuration config;
         EList<Mixin> mixins;
         String mixinId;
         String locationTmp;
         for (String owner : owners) {
             mixinKinds = new ArrayList<>();
-            config = getConfigurationForOwner(owner);
-            mixins = config.getMixins();
-            for (Mixin mixin : mixins) {
-                mixinId = mixin.getScheme() + mixin.getTerm();
-                locationTmp = userMixinLocationMap.get(mixinId);
-                if (locationTmp != null && locationTmp.contains(location)) {
-                    // Location found for this mixin.
-                    mixinKinds.add(mixinId);
+            Lock lock = getLockForOwner(owner).readLock();
+            lock.lock();
+            try {
+                config = getConfigurationForOwner(owner);
+                mixins = config.getMixins();
+                for (Mixin mixin : mixins) {
+                    mixinId = mixin.getScheme() + mixin.getTerm();
+                    locationTmp = userMixinLocationMap.get(mixinId);
+                    if (locationTmp != null && locationTmp.contains(location)) {
+                        // Location found for this mixin.
+                        mixinKinds.add(mixinId);
+                    }
                 }
+            } finally {
+                lock.unlock();
             }
             if (!mixinKinds.isEmpty()) {
                 mixinKindsByOwner.put(owner, mixinKinds);
@@ -974,22 +1814,15 @@ public class ConfigurationManager {
      */
     public static Map<String, List<Entity>> getAllEntities() {
         Map<String, List<Entity>> entitiesMap = new HashMap<>();
-        Set<String> owners = configurations.keySet();
-        if (configurations.isEmpty()) {
+        if (shards.isEmpty()) {
             return entitiesMap;
         }
-        List<Entity> entities = new ArrayList<>();
-        for (String owner : owners) {
-            entities.clear();
-            entities.addAll(findAllEntitiesOwner(owner));
-
-            if (entities != null && !entities.isEmpty()) {
-                entitiesMap.put(owner, entities);
-            } else {
-                entities = new ArrayList<>();
-                entitiesMap.put(owner, entities);
+        entitiesMap.putAll(ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<List<Entity>>() {
+            @Override
+            public List<Entity> call(String owner) {
+                return findAllEntitiesOwner(owner);
             }
-        }
+        }));
         return entitiesMap;
     }
 
@@ -1000,23 +1833,14 @@ public class ConfigurationManager {
      * @return
      */
     public static List<Entity> findAllEntitiesOwner(final String owner) {
-        List<Entity> entities = new ArrayList<>();
-        Configuration configuration = getConfigurationForOwner(owner);
-        EList<Resource> resources = configuration.getResources();
-        EList<Link> links;
-        for (Resource resource : resources) {
-            entities.add(resource);
-            links = resource.getLinks();
-            if (!links.isEmpty()) {
-                for (Link link : links) {
-                    if (!entities.contains(link)) {
-                        entities.add(link);
-                    }
-                }
-            }
+        materializeMappedEntities(owner, null);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(getEntityIndexForOwner(owner).getEntities());
+        } finally {
+            lock.unlock();
         }
-
-        return entities;
     }
 
     /**
@@ -1065,12 +1889,35 @@ public class ConfigurationManager {
      * @return entities
      */
     public static Map<String, Entity> findEntitiesOnAllOwner(final String entityId) {
+        return findEntitiesOnAllOwner(entityId, null);
+    }
+
+    /**
+     * Search the entities with this id on all owners, keeping only the
+     * entities accepted by a filter.
+     *
+     * @param entityId
+     * @param filter (may be null)
+     * @return a map (key: owner, value: entity).
+     */
+    public static Map<String, Entity> findEntitiesOnAllOwner(final String entityId, final EntityFilter filter) {
         Entity entity;
         Map<String, Entity> entitiesMap = new HashMap<>();
-        for (String owner : configurations.keySet()) {
-            entity = findEntity(owner, entityId);
-            if (entity != null) {
-                entitiesMap.put(owner, entity);
+        materializeMappedEntity(entityId);
+        Set<String> owners = getEntityOwners(entityId);
+        if (owners == null) {
+            return entitiesMap;
+        }
+        for (String owner : owners) {
+            Lock lock = getLockForOwner(owner).readLock();
+            lock.lock();
+            try {
+                entity = getEntityIndexForOwner(owner).get(entityId);
+                if (entity != null && (filter == null || filter.accept(entity))) {
+                    entitiesMap.put(owner, entity);
+                }
+            } finally {
+                lock.unlock();
             }
         }
         return entitiesMap;
@@ -1084,20 +1931,14 @@ public class ConfigurationManager {
      * @return
      */
     public static List<Entity> findAllEntitiesForKind(final String owner, final String categoryId) {
-        List<Entity> entities = new ArrayList<>();
-        for (Resource res : getConfigurationForOwner(owner).getResources()) {
-            if ((res.getKind().getScheme() + res.getKind().getTerm()).equals(categoryId)) {
-                entities.add(res);
-            }
-            for (Link link : res.getLinks()) {
-                if ((link.getKind().getScheme() + link.getKind().getTerm()).equals(categoryId)) {
-                    entities.add(link);
-                }
-            }
-
+        materializeMappedEntities(owner, categoryFilter(categoryId));
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(getEntityIndexForOwner(owner).getEntitiesForKind(categoryId));
+        } finally {
+            lock.unlock();
         }
-        return entities;
-
     }
 
     /**
@@ -1109,24 +1950,14 @@ public class ConfigurationManager {
      * @return
      */
     public static List<Entity> findAllEntitiesForMixin(final String owner, final String categoryId) {
-        List<Entity> entities = new ArrayList<>();
-        for (Resource res : getConfigurationForOwner(owner).getResources()) {
-            for (Mixin mix : res.getMixins()) {
-                if ((mix.getScheme() + mix.getTerm()).equals(categoryId)) {
-                    entities.add(res);
-                }
-            }
-            for (Link link : res.getLinks()) {
-                for (Mixin mix : link.getMixins()) {
-                    if ((mix.getScheme() + mix.getTerm()).equals(categoryId)) {
-                        entities.add(link);
-                    }
-                }
-
-            }
-
+        materializeMappedEntities(owner, categoryFilter(categoryId));
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(getEntityIndexForOwner(owner).getEntitiesForMixin(categoryId));
+        } finally {
+            lock.unlock();
         }
-        return entities;
     }
 
     /**
@@ -1138,76 +1969,76 @@ public class ConfigurationManager {
      * @return
      */
     public static List<Entity> findAllEntitiesForAction(final String owner, final String categoryId) {
-        List<Entity> entities = new ArrayList<>();
-        for (Resource res : getConfigurationForOwner(owner).getResources()) {
-
-            for (Action act : res.getKind().getActions()) {
-                if ((act.getScheme() + act.getTerm()).equals(categoryId)) {
-                    entities.add(res);
-                }
-
-            }
-            // Search in mixins.
-            for (Mixin mixin : res.getMixins()) {
-                for (Action act : mixin.getActions()) {
-
-                    if ((act.getScheme() + act.getTerm()).equals(categoryId)) {
-                        entities.add(res);
-                    }
-                }
-            }
-
-            for (Link link : res.getLinks()) {
-                for (Action act : link.getKind().getActions()) {
-                    if ((act.getScheme() + act.getTerm()).equals(categoryId)) {
-                        entities.add(link);
-                    }
-                }
-                for (Mixin mixin : link.getMixins()) {
-                    for (Action act : mixin.getActions()) {
-
-                        if ((act.getScheme() + act.getTerm()).equals(categoryId)) {
-                            entities.add(link);
-                        }
-                    }
-                }
-            }
-
+        materializeMappedEntities(owner, null);
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(getEntityIndexForOwner(owner).getEntitiesForAction(categoryId));
+        } finally {
+            lock.unlock();
         }
-        return entities;
     }
 
     /**
-     * Return all entity based on a partial Id (like request).
+     * Return all entity based on a partial Id, the partial id is a path
+     * prefix on id segments (compute/vm1 gives compute/vm1/uuid, not
+     * compute/vm10/uuid).
      *
      * @param owner
      * @param partialId
      * @return
      */
     public static List<Entity> findAllEntitiesLikePartialId(final String owner, final String partialId) {
-        List<Entity> entities = new ArrayList<>();
+        if (partialId != null) {
+            materializeMappedEntities(owner, new MappedModelSnapshot.Filter() {
+                @Override
+                public boolean accept(MappedModelSnapshot.Entry entry) {
+                    return EntityPathIndex.isPathPrefix(partialId, entry.getId());
+                }
+            });
+        }
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            if (partialId == null) {
+                return new ArrayList<>();
+            }
 
-        Configuration configuration = getConfigurationForOwner(owner);
+            return getEntityIndexForOwner(owner).findByPathPrefix(partialId);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * Return all entities based on a partial Id for all owners, an exact id
+     * is first searched with the owner directory.
+     *
+     * @param partialId
+     * @return a map of entities by owner, owners without entity are not in
+     * the map.
+     */
+    public static Map<String, List<Entity>> findAllEntitiesLikePartialIdOnAllOwner(final String partialId) {
+        Map<String, List<Entity>> entitiesMap = new LinkedHashMap<>();
         if (partialId == null) {
-            return entities;
+            return entitiesMap;
         }
-
-        List<Resource> resources = configuration.getResources();
-        for (Resource resource : resources) {
-            if (resource.getId().contains(partialId)) {
-                entities.add(resource);
+        Map<String, Entity> exactMatches = findEntitiesOnAllOwner(partialId);
+        if (!exactMatches.isEmpty()) {
+            for (Map.Entry<String, Entity> entry : exactMatches.entrySet()) {
+                List<Entity> entities = new ArrayList<>();
+                entities.add(entry.getValue());
+                entitiesMap.put(entry.getKey(), entities);
             }
-            if (!resource.getLinks().isEmpty()) {
-                for (Link link : resource.getLinks()) {
-                    if (link.getId().contains(partialId)) {
-                        entities.add(link);
-                    }
-                }
+            return entitiesMap;
+        }
+        for (String owner : shards.keySet()) {
+            List<Entity> entities = findAllEntitiesLikePartialId(owner, partialId);
+            if (!entities.isEmpty()) {
+                entitiesMap.put(owner, entities);
             }
         }
-
-        return entities;
+        return entitiesMap;
     }
 
     /**
@@ -1216,17 +2047,37 @@ public class ConfigurationManager {
      * @param owner
      */
     public static void resetForOwner(final String owner) {
-        Configuration configuration = getConfigurationForOwner(owner);
-        removeConfiguration(configuration);
-
+        OwnerShard shard = shards.get(owner);
+        if (shard == null) {
+            return;
+        }
+        Lock lock = shard.getLock().writeLock();
+        lock.lock();
+        try {
+            MappedModelSnapshot snapshot = mappedSnapshot;
+            if (snapshot != null) {
+                snapshot.discard(owner);
+            }
+            for (Entity entity : shard.getIndex().getEntities()) {
+                removeEntityOwner(owner, entity.getId());
+            }
+            versionFloors.put(owner, shard.getIndex().getVersion());
+            shards.remove(owner, shard);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Destroy all configurations for all owners.
+     * Destroy all configurations for all owners. Each owner is reset under
+     * his write lock (see resetForOwner), a configuration saved meanwhile on
+     * a new shard is kept.
      */
     public static void resetAll() {
-        configurations.clear();
-        versionObjectMap.clear();
+        for (String owner : new ArrayList<>(shards.keySet())) {
+            resetForOwner(owner);
+        }
+        mappedSnapshot = null;
     }
 
     /**
@@ -1240,48 +2091,131 @@ public class ConfigurationManager {
      * new ones)
      */
     public static void addMixinsToEntity(Entity entity, final List<String> mixins, final String owner, final boolean updateMode) {
-        if (updateMode) {
-            entity.getMixins().clear();
-        }
-        if (mixins != null && !mixins.isEmpty()) {
-
-            for (String mixinStr : mixins) {
-                // Check if this mixin exist in realm extensions.
-                Mixin mixin = findMixinOnExtension(owner, mixinStr);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            if (updateMode) {
+                entity.getMixins().clear();
+            }
+            if (mixins != null && !mixins.isEmpty()) {
 
-                if (mixin == null) {
-                    // Search the mixin on entities.
-                    mixin = findMixinOnEntities(owner, mixinStr);
+                for (String mixinStr : mixins) {
+                    // Check if this mixin exist in realm extensions.
+                    Mixin mixin = findMixinOnExtension(owner, mixinStr);
 
                     if (mixin == null) {
-                        mixin = createMixin(mixinStr);
+                        // Search the mixin on entities.
+                        mixin = findMixinOnEntities(owner, mixinStr);
+
+                        if (mixin == null) {
+                            mixin = createMixin(mixinStr);
+                        }
+
                     }
+                    entity.getMixins().add(mixin);
+                    // mixin.getEntities().add(entity);
+                    logger.info("Mixin --> Term : " + mixin.getTerm() + " --< Scheme : " + mixin.getScheme());
 
                 }
-                entity.getMixins().add(mixin);
-                // mixin.getEntities().add(entity);
-                logger.info("Mixin --> Term : " + mixin.getTerm() + " --< Scheme : " + mixin.getScheme());
-
             }
+            // Only referenced entities are reindexed, new ones are indexed when added to configuration.
+            getEntityIndexForOwner(owner).reindexCategories(entity);
+        } finally {
+            lock.unlock();
         }
-
     }
 
     /**
-     * Increment a version of an object (resource or link << entity)
+     * Increment a version of an object (resource or link << entity), the
+     * version is kept by the owner's entity index.
      *
      * @param owner
      * @param id
      */
     public static void updateVersion(final String owner, final String id) {
-        String key = owner + id;
-        Integer version = versionObjectMap.get(key);
-        if (version == null) {
-            version = 1;
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            getEntityIndexForOwner(owner).touch(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the monitor serializing the executor calls on an entity (post
+     * create, post update, pre delete, actions). The executors run on the
+     * model entity without the owner's lock : the caller captures the entity
+     * state and commits the changes made by the executor while holding the
+     * monitor.
+     *
+     * @param owner
+     * @param id
+     * @return the monitor of this entity.
+     */
+    public static Object getEntityMonitor(final String owner, final String id) {
+        return getShardForOwner(owner).getEntityMonitor(id);
+    }
+
+    /**
+     * Capture the attributes of an entity before an executor call (or an
+     * action), under the owner's read lock.
+     *
+     * @param owner
+     * @param entity
+     * @return the entity state, to give to commitEntityChanges after the call.
+     */
+    public static EntityState captureEntityState(final String owner, final Entity entity) {
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return new EntityState(owner, entity);
+        } finally {
+            lock.unlock();
         }
-        version++;
-        versionObjectMap.put(key, version);
+    }
+
+    /**
+     * Record the changes made to an entity outside of the configuration
+     * manager (by an executor or an action) since his state was captured :
+     * if the entity has changed, his version is incremented and his current
+     * attributes are journaled, under the owner's write lock. Nothing is
+     * recorded if the entity is no more in the owner's configuration.
+     *
+     * @param state
+     */
+    public static void commitEntityChanges(final EntityState state) {
+        commitEntityChanges(state.getOwner(), Collections.singletonList(state));
+    }
 
+    /**
+     * Record the changes made to an owner's entities since their states were
+     * captured, with one acquisition of the owner's write lock and one
+     * journal write.
+     *
+     * @param owner
+     * @param states
+     */
+    public static void commitEntityChanges(final String owner, final List<EntityState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        ModelJournal.getInstance().startBatch();
+        try {
+            EntityIndex index = getEntityIndexForOwner(owner);
+            for (EntityState state : states) {
+                Entity entity = state.getEntity();
+                if (index.get(entity.getId()) == entity && state.hasChanged()) {
+                    index.touch(entity.getId());
+                    ModelJournal.getInstance().logUpdate(owner, entity);
+                }
+            }
+        } finally {
+            ModelJournal.getInstance().endBatch();
+            lock.unlock();
+        }
     }
 
     /**
@@ -1292,44 +2226,25 @@ public class ConfigurationManager {
      * @return a mixin found or null if not found
      */
     public static Mixin findMixinOnEntities(final String owner, final String mixinId) {
-        Configuration configuration = getConfigurationForOwner(owner);
-        Mixin mixinToReturn = null;
-        boolean mixinOk;
-
-        for (Resource res : configuration.getResources()) {
-            mixinOk = false;
-            for (Mixin mixin : res.getMixins()) {
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            Mixin mixinToReturn = null;
+            Set<Entity> entities = getEntityIndexForOwner(owner).getEntitiesForMixin(mixinId);
+            if (entities.isEmpty()) {
+                return mixinToReturn;
+            }
+            for (Mixin mixin : entities.iterator().next().getMixins()) {
                 if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
                     mixinToReturn = mixin;
-                    mixinOk = true;
                     break;
                 }
             }
 
-            if (mixinOk) {
-                break;
-            } else {
-                // Recherche dans les links.
-                for (Link link : res.getLinks()) {
-                    for (Mixin mixin : link.getMixins()) {
-                        if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
-                            mixinToReturn = mixin;
-                            mixinOk = true;
-                            break;
-                        }
-                    }
-                    if (mixinOk) {
-                        break;
-                    }
-                }
-            }
-            if (mixinOk) {
-                break;
-            }
-
+            return mixinToReturn;
+        } finally {
+            lock.unlock();
         }
-
-        return mixinToReturn;
     }
 
     /**
@@ -1339,22 +2254,28 @@ public class ConfigurationManager {
      * @param mixinId
      */
     public static Mixin findMixinOnExtension(final String owner, final String mixinId) {
-        Configuration config = getConfigurationForOwner(owner);
-        Mixin mixinToReturn = null;
-        for (Extension ext : config.getUse()) {
-            for (Mixin mixin : ext.getMixins()) {
-                if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
-                    mixinToReturn = mixin;
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            Configuration config = getConfigurationForOwner(owner);
+            Mixin mixinToReturn = null;
+            for (Extension ext : config.getUse()) {
+                for (Mixin mixin : ext.getMixins()) {
+                    if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
+                        mixinToReturn = mixin;
+                        break;
+                    }
+
+                }
+                if (mixinToReturn != null) {
                     break;
                 }
-
-            }
-            if (mixinToReturn != null) {
-                break;
             }
-        }
 
-        return mixinToReturn;
+            return mixinToReturn;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -1368,9 +2289,13 @@ public class ConfigurationManager {
     public static void saveMixinForEntities(final String mixinId, final List<String> entityIds,
             final boolean updateMode) {
         // TODO : Pass owner on coreImpl saveMixin and UpdateMixin method.
-        for (String owner : configurations.keySet()) {
-            saveMixinForEntities(owner, mixinId, entityIds, updateMode);
-        }
+        ShardExecutors.invokeAll(shards.keySet(), new ShardExecutors.OwnerTask<Void>() {
+            @Override
+            public Void call(String owner) {
+                saveMixinForEntities(owner, mixinId, entityIds, updateMode);
+                return null;
+            }
+        });
 
     }
 
@@ -1383,56 +2308,65 @@ public class ConfigurationManager {
      */
     public static void saveMixinForEntities(final String owner, final String mixinId, final List<String> entityIds,
             final boolean updateMode) {
-
-        // searching for the mixin to register.
-        Mixin mixin = findMixinOnExtension(owner, mixinId);
-
-        if (mixin == null) {
-            mixin = findMixinOnEntities(owner, mixinId);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            // searching for the mixin to register.
+            Mixin mixin = findMixinOnExtension(owner, mixinId);
 
             if (mixin == null) {
-                // TODO : Check this : User mixin tag ?
-                mixin = createMixin(mixinId);
+                mixin = findMixinOnEntities(owner, mixinId);
+
+                if (mixin == null) {
+                    // TODO : Check this : User mixin tag ?
+                    mixin = createMixin(mixinId);
+                }
             }
-        }
-        logger.info("Mixin --> Term : " + mixin.getTerm() + " --< Scheme : " + mixin.getScheme());
+            logger.info("Mixin --> Term : " + mixin.getTerm() + " --< Scheme : " + mixin.getScheme());
+            EntityIndex index = getEntityIndexForOwner(owner);
 
-        for (String entityId : entityIds) {
-            Entity entity = findEntity(owner, entityId);
+            for (String entityId : entityIds) {
+                Entity entity = findEntity(owner, entityId);
 
-            if (entity != null && !mixin.getEntities().contains(entity)) {
-                // mixin.getEntities().add(entity);
-                entity.getMixins().add(mixin);
+                if (entity != null && !entity.getMixins().contains(mixin)) {
+                    // mixin.getEntities().add(entity);
+                    entity.getMixins().add(mixin);
+                    index.reindexCategories(entity);
 
-                updateVersion(owner, entityId);
+                    updateVersion(owner, entityId);
+                }
             }
-        }
 
-        if (!updateMode) {
-            boolean found;
-            // Remove entities those are not in the list.
-            Iterator<Entity> it = mixin.getEntities().iterator();
-            while (it.hasNext()) {
-                found = false;
-                Entity entityMixin = it.next();
-                for (String entityId : entityIds) {
-                    if (entityMixin.getId().equals(entityId)) {
-                        found = true;
-                        break;
+            if (!updateMode) {
+                boolean found;
+                // Remove entities those are not in the list.
+                Iterator<Entity> it = findAllEntitiesForMixin(owner, mixinId).iterator();
+                while (it.hasNext()) {
+                    found = false;
+                    Entity entityMixin = it.next();
+                    for (String entityId : entityIds) {
+                        if (entityMixin.getId().equals(entityId)) {
+                            found = true;
+                            break;
+                        }
                     }
-                }
 
-                if (!found) {
-                    // Remove reference mixin of the entity.
-                    entityMixin.getMixins().remove(mixin);
+                    if (!found) {
+                        // Remove reference mixin of the entity.
+                        entityMixin.getMixins().remove(mixin);
+                        index.reindexCategories(entityMixin);
+                        updateVersion(owner, entityMixin.getId());
 
-                    // Remove the entity from mixin.
-                    // it.remove();
-                }
+                        // Remove the entity from mixin.
+                        // it.remove();
+                    }
 
+                }
             }
+            ModelJournal.getInstance().logSaveMixin(owner, mixinId, entityIds, updateMode);
+        } finally {
+            lock.unlock();
         }
-
     }
 
     /**
@@ -1447,14 +2381,33 @@ public class ConfigurationManager {
             return;
         }
 
-        Configuration configuration = getConfigurationForOwner(owner);
         Mixin mixin = createMixin(id);
 
         // We add the mixin location to the userMixin map.
         userMixinLocationMap.put(id, location);
 
-        configuration.getMixins().add(mixin);
+        Lock lock = getLockForOwner(owner).writeLock();
+        lock.lock();
+        try {
+            getConfigurationForOwner(owner).getMixins().add(mixin);
+            ModelJournal.getInstance().logAddUserMixin(owner, id, location);
+        } finally {
+            lock.unlock();
+        }
+
+    }
 
+    /**
+     * Get the location of a user mixin.
+     *
+     * @param mixinId (scheme + term)
+     * @return the location, null if this mixin is not a user mixin.
+     */
+    public static String getUserMixinLocation(final String mixinId) {
+        if (mixinId == null) {
+            return null;
+        }
+        return userMixinLocationMap.get(mixinId);
     }
 
     /**
@@ -1465,17 +2418,23 @@ public class ConfigurationManager {
      */
     public static Mixin findUserMixinOnConfigurations(final String mixinId) {
         Mixin mixinToReturn = null;
-        Set<String> owners = configurations.keySet();
+        Set<String> owners = shards.keySet();
         Configuration config;
         EList<Mixin> mixins;
         for (String owner : owners) {
-            config = getConfigurationForOwner(owner);
-            mixins = config.getMixins();
-            for (Mixin mixin : mixins) {
-                if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
-                    mixinToReturn = mixin;
-                    break;
+            Lock lock = getLockForOwner(owner).readLock();
+            lock.lock();
+            try {
+                config = getConfigurationForOwner(owner);
+                mixins = config.getMixins();
+                for (Mixin mixin : mixins) {
+                    if ((mixin.getScheme() + mixin.getTerm()).equals(mixinId)) {
+                        mixinToReturn = mixin;
+                        break;
+                    }
                 }
+            } finally {
+                lock.unlock();
             }
 
             if (mixinToReturn != null) {
@@ -1509,13 +2468,20 @@ public class ConfigurationManager {
 
         // We remove the mixin location from the userMixin map.
         userMixinLocationMap.remove(mixinId);
+        ModelJournal.getInstance().logRemoveUserMixin(mixinId);
 
         // Delete from configuration.
-        Set<String> owners = configurations.keySet();
+        Set<String> owners = shards.keySet();
         Configuration config;
         for (String owner : owners) {
-            config = getConfigurationForOwner(owner);
-            config.getMixins().remove(mixin);
+            Lock lock = getLockForOwner(owner).writeLock();
+            lock.lock();
+            try {
+                config = getConfigurationForOwner(owner);
+                config.getMixins().remove(mixin);
+            } finally {
+                lock.unlock();
+            }
         }
 
     }
@@ -1552,14 +2518,14 @@ public class ConfigurationManager {
      * @param attributes , attributes to update
      */
     public static void updateAttributesForEntity(final String entityId, Map<String, String> attributes) {
-        String ownerFound = null;
-        Entity entity = findEntityOnAllOwner(ownerFound, entityId);
+        Set<String> owners = findOwnersForEntityId(entityId);
+        String ownerFound = owners.isEmpty() ? null : owners.iterator().next();
+        Entity entity = ownerFound == null ? null : findEntity(ownerFound, entityId);
 
         if (entity != null) {
             // update the attributes.
-            updateAttributesToEntity(entity, attributes);
+            updateAttributesToEntity(ownerFound, entity, attributes);
             logger.info("owner : " + ownerFound + " --< entity id : " + entityId);
-            updateVersion(ownerFound, entityId);
             // printEntity(entity);
 
         } else {
@@ -1572,19 +2538,33 @@ public class ConfigurationManager {
     }
 
     /**
-     * Generate eTag number from version map.
+     * Generate eTag number from the entity version.
      *
      * @param owner
      * @param id
      * @return
      */
     public static UInt32 getEtagNumber(final String owner, final String id) {
-        Integer version = versionObjectMap.get(owner + id);
-        if (version == null) {
-            version = 1;
-        }
         // Generate eTag.
-        return Utils.createEtagNumber(id, owner, version);
+        return Utils.createEtagNumber(id, getEntityVersion(owner, id));
+    }
+
+    /**
+     * Get the version of an entity, it changes on each update of the entity
+     * and is never reused for this owner.
+     *
+     * @param owner
+     * @param id
+     * @return the version, 0 if the entity is not referenced.
+     */
+    public static long getEntityVersion(final String owner, final String id) {
+        Lock lock = getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            return getEntityIndexForOwner(owner).getEntityVersion(id);
+        } finally {
+            lock.unlock();
+        }
     }
 
 //    /**
@@ -1636,33 +2616,14 @@ public class ConfigurationManager {
      * configuration.
      */
     public static Extension getExtensionForAction(String owner, String action_id) {
-        Configuration config = getConfigurationForOwner(owner);
-        EList<Extension> exts = config.getUse();
-        Extension extRet = null;
-        // Ext kinds.
-        EList<Kind> kinds;
-        EList<Action> actionKinds;
-        for (Extension ext : exts) {
-            kinds = ext.getKinds();
-            for (Kind kind : kinds) {
-                actionKinds = kind.getActions();
-                for (Action action : actionKinds) {
-                    if ((action.getScheme() + action.getTerm()).equals(action_id)) {
-                        extRet = ext;
-                        break;
-                    }
-                }
-                if (extRet != null) {
-                    break;
-                }
-
-            }
-            if (extRet != null) {
-                break;
-            }
+        OwnerShard shard = getShardForOwner(owner);
+        Lock lock = shard.getLock().readLock();
+        lock.lock();
+        try {
+            return shard.getExtensions().getExtensionForAction(shard.getConfiguration(), action_id);
+        } finally {
+            lock.unlock();
         }
-
-        return extRet;
     }
 
     /**
@@ -1672,51 +2633,28 @@ public class ConfigurationManager {
      * @return Action, may return null if not found on extension.
      */
     public static Action getActionKindFromExtension(final Extension ext, final String actionId) {
-        EList<Kind> kinds = ext.getKinds();
-        EList<Action> actionKinds;
-        Action actionKind = null;
-        for (Kind kind : kinds) {
-            actionKinds = kind.getActions();
-            for (Action action : actionKinds) {
-                if ((action.getScheme() + action.getTerm()).equals(actionId)) {
-                    actionKind = action;
-                    break;
-                }
-            }
-            if (actionKind != null) {
-                break;
-            }
+        if (ext == null || actionId == null) {
+            return null;
         }
-
-        return actionKind;
+        return ExtensionRegistry.getActions(ext).get(actionId);
     }
 
     /**
-     * Get used extension with this kind.
+     * Get used extension with this kind, from the owner's extension registry.
      *
      * @param owner owner of the configuration
      * @param kind (represent a Kind Scheme+term)
-     * @return
+     * @return the extension, null if no used extension has this kind.
      */
     public static Extension getExtensionForKind(String owner, String kind) {
-        Extension extRet = null;
-        Configuration configuration = getConfigurationForOwner(owner);
-        EList<Extension> exts = configuration.getUse();
-        EList<Kind> kinds;
-        for (Extension ext : exts) {
-            kinds = ext.getKinds();
-            for (Kind kindObj : kinds) {
-                if ((kindObj.getScheme() + kindObj.getTerm()).equals(kind)) {
-                    extRet = ext;
-                    break;
-                }
-            }
-            if (extRet != null) {
-                break;
-            }
+        OwnerShard shard = getShardForOwner(owner);
+        Lock lock = shard.getLock().readLock();
+        lock.lock();
+        try {
+            return shard.getExtensions().getExtensionForKind(shard.getConfiguration(), kind);
+        } finally {
+            lock.unlock();
         }
-
-        return extRet;
     }
 
     /**
@@ -1726,39 +2664,24 @@ public class ConfigurationManager {
      * @return an extension or null if not found
      */
     public static Extension getExtensionFromEntity(Entity entity) {
-        Extension extRet = null;
         // Search owner of the entity.
-        Set<String> owners = configurations.keySet();
-        Configuration configuration;
-        EList<Resource> resources;
-        EList<Extension> exts;
-        for (String owner : owners) {
-            configuration = getConfigurationForOwner(owner);
-
-            resources = configuration.getResources();
-            for (Resource resource : resources) {
-                if (resource.getId().equals(entity.getId())) {
-                    // We found the configuration and owner of the entity.
-                    // Now we get the extension from entity kind.
-                    Kind entityKind = entity.getKind();
-                    exts = configuration.getUse();
-                    for (Extension ext : exts) {
-                        if (ext.getKinds().contains(entityKind)) {
-                            extRet = ext;
-                            break;
-                        }
-                    }
-                }
-                if (extRet != null) {
-                    break;
-                }
-            }
-            if (extRet != null) {
-                break;
+        String owner = findOwnerForEntity(entity);
+        if (owner == null || entity.getKind() == null) {
+            return null;
+        }
+        // Now we get the extension from entity kind.
+        Kind entityKind = entity.getKind();
+        Extension ext = getExtensionForKind(owner, entityKind.getScheme() + entityKind.getTerm());
+        if (ext != null && ext.getKinds().contains(entityKind)) {
+            return ext;
+        }
+        // The kind id is defined by several extensions.
+        for (Extension usedExt : getConfigurationForOwner(owner).getUse()) {
+            if (usedExt.getKinds().contains(entityKind)) {
+                return usedExt;
             }
         }
-
-        return extRet;
+        return null;
     }
 
 //    /**
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Mixin;
+
+/**
+ * Filter of a List request. Keys of the filters map :
+ * <ul>
+ * <li>kind : the kind id (scheme + term) of the entities,</li>
+ * <li>mixin : a mixin id (scheme + term) the entities must have,</li>
+ * <li>any other key is an attribute name, the attribute value must be equal
+ * to the filter value, or start with it if the filter value ends with
+ * '*'.</li>
+ * </ul>
+ * All the criteria must match.
+ *
+ */
+public class EntityFilter {
+
+    public static final String KIND_KEY = "kind";
+    public static final String MIXIN_KEY = "mixin";
+    public static final char WILDCARD = '*';
+
+    private String kindId = null;
+    private String mixinId = null;
+
+    /**
+     * Key : attribute name, Value : expected value.
+     */
+    private final Map<String, String> attributeValues = new LinkedHashMap<>();
+
+    /**
+     * Key : attribute name, Value : expected value prefix.
+     */
+    private final Map<String, String> attributePrefixes = new LinkedHashMap<>();
+
+    /**
+     * Build a filter from List filters.
+     *
+     * @param filters (may be null)
+     * @return a filter, empty if there is no filter.
+     */
+    public static EntityFilter fromMap(final Map<String, String> filters) {
+        EntityFilter filter = new EntityFilter();
+        if (filters == null) {
+            return filter;
+        }
+        for (Map.Entry<String, String> entry : filters.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (key == null || key.isEmpty() || value == null) {
+                continue;
+            }
+            if (KIND_KEY.equals(key)) {
+                filter.kindId = value;
+            } else if (MIXIN_KEY.equals(key)) {
+                filter.mixinId = value;
+            } else if (!value.isEmpty() && value.charAt(value.length() - 1) == WILDCARD) {
+                filter.attributePrefixes.put(key, value.substring(0, value.length() - 1));
+            } else {
+                filter.attributeValues.put(key, value);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     *
+     * @return true if every entity is accepted.
+     */
+    public boolean isEmpty() {
+        return kindId == null && mixinId == null && !hasAttributeCriteria();
+    }
+
+    /**
+     *
+     * @return true if the filter reads attributes.
+     */
+    public boolean hasAttributeCriteria() {
+        return !attributeValues.isEmpty() || !attributePrefixes.isEmpty();
+    }
+
+    /**
+     *
+     * @return the kind id criterion, null if none.
+     */
+    public String getKindId() {
+        return kindId;
+    }
+
+    /**
+     *
+     * @return the mixin id criterion, null if none.
+     */
+    public String getMixinId() {
+        return mixinId;
+    }
+
+    /**
+     *
+     * @return the attribute equality criteria, read only.
+     */
+    public Map<String, String> getAttributeValues() {
+        return Collections.unmodifiableMap(attributeValues);
+    }
+
+    /**
+     *
+     * @return the attribute prefix criteria, read only.
+     */
+    public Map<String, String> getAttributePrefixes() {
+        return Collections.unmodifiableMap(attributePrefixes);
+    }
+
+    /**
+     * Check an entity, the caller must hold the read lock of the entity's
+     * owner.
+     *
+     * @param entity
+     * @return true if the entity matches all the criteria.
+     */
+    public boolean accept(final Entity entity) {
+        if (entity == null) {
+            return false;
+        }
+        if (kindId != null && (entity.getKind() == null
+                || !kindId.equals(entity.getKind().getScheme() + entity.getKind().getTerm()))) {
+            return false;
+        }
+        if (mixinId != null) {
+            boolean found = false;
+            for (Mixin mixin : entity.getMixins()) {
+                if (mixinId.equals(mixin.getScheme() + mixin.getTerm())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> criterion : attributeValues.entrySet()) {
+            if (!criterion.getValue().equals(getAttributeValue(entity, criterion.getKey()))) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> criterion : attributePrefixes.entrySet()) {
+            String value = getAttributeValue(entity, criterion.getKey());
+            if (value == null || !value.startsWith(criterion.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check an entity not built as an EMF object.
+     *
+     * @param kind kind id
+     * @param mixins mixin ids
+     * @param attributes (may be null if the filter has no attribute criteria)
+     * @return true if the entity matches all the criteria.
+     */
+    public boolean accept(final String kind, final Collection<String> mixins, final Map<String, String> attributes) {
+        return acceptCategories(kind, mixins) && acceptAttributes(attributes);
+    }
+
+    /**
+     *
+     * @param kind kind id
+     * @param mixins mixin ids
+     * @return true if the kind and mixin criteria match.
+     */
+    public boolean acceptCategories(final String kind, final Collection<String> mixins) {
+        if (kindId != null && !kindId.equals(kind)) {
+            return false;
+        }
+        return mixinId == null || mixins != null && mixins.contains(mixinId);
+    }
+
+    /**
+     *
+     * @param attributes (may be null)
+     * @return true if the attribute criteria match.
+     */
+    public boolean acceptAttributes(final Map<String, String> attributes) {
+        for (Map.Entry<String, String> criterion : attributeValues.entrySet()) {
+            if (attributes == null || !criterion.getValue().equals(attributes.get(criterion.getKey()))) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> criterion : attributePrefixes.entrySet()) {
+            String value = attributes == null ? null : attributes.get(criterion.getKey());
+            if (value == null || !value.startsWith(criterion.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep the accepted entities, the caller must hold the read lock of the
+     * entities owner.
+     *
+     * @param entities
+     * @return the accepted entities.
+     */
+    public List<Entity> filter(final Collection<Entity> entities) {
+        List<Entity> accepted = new ArrayList<>();
+        for (Entity entity : entities) {
+            if (accept(entity)) {
+                accepted.add(entity);
+            }
+        }
+        return accepted;
+    }
+
+    private static String getAttributeValue(final Entity entity, final String name) {
+        for (AttributeState attribute : entity.getAttributes()) {
+            if (name.equals(attribute.getName())) {
+                return attribute.getValue();
+            }
+        }
+        return null;
+    }
+
+}
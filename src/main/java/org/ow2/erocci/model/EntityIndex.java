@@ -0,0 +1,632 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.occiware.clouddesigner.occi.Action;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Kind;
+import org.occiware.clouddesigner.occi.Link;
+import org.occiware.clouddesigner.occi.Mixin;
+import org.occiware.clouddesigner.occi.Resource;
+
+/**
+ * Index of the entities (resources and links) of one owner's configuration.
+ * Key : entity id, Value : the entity object. It is maintained by
+ * ConfigurationManager each time an entity is added or removed, so lookups
+ * by id don't have to walk the configuration's resources and links.
+ *
+ * Entities are also indexed by category id (scheme + term) of their kind,
+ * their mixins and the actions of their kind and mixins, and by the segments
+ * of their id for partial id lookups (see EntityPathIndex). Links are also
+ * indexed by target resource id.
+ *
+ * Each modification increments the index version, entities and category
+ * members are kept in VersionedEntitySet so a snapshot taken at a version
+ * can be iterated later without copy (see EntitySnapshot). The index version
+ * of the last modification of an entity is kept as the entity version (used
+ * for etags), it is never reused for this owner.
+ *
+ * The attributes listed in the erocci.index.attributes property (comma
+ * separated names) are indexed by value (see AttributeIndex), they are
+ * reindexed each time an entity is touched.
+ *
+ */
+public class EntityIndex {
+
+    public static final String INDEXED_ATTRIBUTES_PROPERTY = "erocci.index.attributes";
+    public static final String DEFAULT_INDEXED_ATTRIBUTES = "occi.core.title,occi.compute.state,occi.network.vlan";
+
+    /**
+     * Entities by id, in insertion order.
+     */
+    private final Map<String, Entity> entitiesById = new LinkedHashMap<>();
+
+    /**
+     * All the entities, with their versions.
+     */
+    private final VersionedEntitySet allEntities = new VersionedEntitySet();
+
+    /**
+     * Version of the index, incremented on each modification.
+     */
+    private long version = 0;
+
+    /**
+     * Entity versions by id : the index version of the last modification.
+     */
+    private final Map<String, Long> entityVersions = new HashMap<>();
+
+    /**
+     * Entities by kind id.
+     */
+    private final Map<String, VersionedEntitySet> entitiesByKind = new HashMap<>();
+
+    /**
+     * Entities by mixin id.
+     */
+    private final Map<String, VersionedEntitySet> entitiesByMixin = new HashMap<>();
+
+    /**
+     * Entities by action id.
+     */
+    private final Map<String, VersionedEntitySet> entitiesByAction = new HashMap<>();
+
+    /**
+     * Category ids used when an entity has been indexed, this is used to
+     * remove the entity from the category indexes even if his mixins have
+     * changed since.
+     */
+    private final Map<Entity, IndexedCategories> indexedCategories = new HashMap<>();
+
+    /**
+     * Links by target resource id, with the target id used when each link
+     * has been indexed.
+     */
+    private final Map<String, Set<Link>> linksByTarget = new HashMap<>();
+    private final Map<Link, String> indexedTargets = new HashMap<>();
+
+    /**
+     * Entities by id path segments.
+     */
+    private final EntityPathIndex pathIndex = new EntityPathIndex();
+
+    /**
+     * Entities by indexed attribute values.
+     */
+    private final AttributeIndex attributeIndex;
+
+    public EntityIndex() {
+        this(getIndexedAttributeNames());
+    }
+
+    /**
+     *
+     * @param indexedAttributes the attribute names to index by value.
+     */
+    public EntityIndex(final Set<String> indexedAttributes) {
+        this.attributeIndex = new AttributeIndex(indexedAttributes);
+    }
+
+    /**
+     *
+     * @return the attribute names of the erocci.index.attributes property.
+     */
+    public static Set<String> getIndexedAttributeNames() {
+        Set<String> names = new LinkedHashSet<>();
+        String property = System.getProperty(INDEXED_ATTRIBUTES_PROPERTY, DEFAULT_INDEXED_ATTRIBUTES);
+        for (String name : property.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get an entity (resource or link).
+     *
+     * @param id
+     * @return the entity, null if not referenced.
+     */
+    public Entity get(final String id) {
+        if (id == null) {
+            return null;
+        }
+        return entitiesById.get(id);
+    }
+
+    /**
+     * Get a resource.
+     *
+     * @param id
+     * @return the resource, null if not referenced or if id is a link id.
+     */
+    public Resource getResource(final String id) {
+        Entity entity = get(id);
+        if (entity instanceof Resource) {
+            return (Resource) entity;
+        }
+        return null;
+    }
+
+    /**
+     * Get a link.
+     *
+     * @param id
+     * @return the link, null if not referenced or if id is a resource id.
+     */
+    public Link getLink(final String id) {
+        Entity entity = get(id);
+        if (entity instanceof Link) {
+            return (Link) entity;
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param id
+     * @return true if an entity is referenced with this id.
+     */
+    public boolean contains(final String id) {
+        return id != null && entitiesById.containsKey(id);
+    }
+
+    /**
+     * Reference an entity, overwrite the previous one with the same id if
+     * any.
+     *
+     * @param entity
+     */
+    public void add(final Entity entity) {
+        if (entity == null || entity.getId() == null) {
+            return;
+        }
+        version++;
+        Entity previous = entitiesById.put(entity.getId(), entity);
+        if (previous != null && previous != entity) {
+            unindexCategories(previous);
+            attributeIndex.remove(previous);
+            allEntities.remove(previous, version);
+            pathIndex.remove(previous);
+        }
+        indexCategories(entity);
+        attributeIndex.reindex(entity);
+        allEntities.add(entity, version);
+        pathIndex.add(entity);
+        entityVersions.put(entity.getId(), version);
+        if (previous instanceof Link && previous != entity) {
+            unindexTarget((Link) previous);
+        }
+        if (entity instanceof Link) {
+            // The target of an overwritten link may have changed.
+            unindexTarget((Link) entity);
+            indexTarget((Link) entity);
+        }
+    }
+
+    /**
+     * Remove an entity reference, only if the referenced object for this id
+     * is the given entity.
+     *
+     * @param entity
+     */
+    public void remove(final Entity entity) {
+        if (entity == null || entity.getId() == null) {
+            return;
+        }
+        if (entitiesById.get(entity.getId()) == entity) {
+            version++;
+            entitiesById.remove(entity.getId());
+            unindexCategories(entity);
+            attributeIndex.remove(entity);
+            allEntities.remove(entity, version);
+            pathIndex.remove(entity);
+            entityVersions.remove(entity.getId());
+            if (entity instanceof Link) {
+                unindexTarget((Link) entity);
+            }
+        }
+    }
+
+    /**
+     * Update the category indexes of a referenced entity, this must be called
+     * after the mixins of an entity have changed.
+     *
+     * @param entity
+     */
+    public void reindexCategories(final Entity entity) {
+        if (entity == null || entitiesById.get(entity.getId()) != entity) {
+            return;
+        }
+        version++;
+        unindexCategories(entity);
+        indexCategories(entity);
+        entityVersions.put(entity.getId(), version);
+    }
+
+    /**
+     * Give a new version to a referenced entity and update his indexed
+     * attribute values (his attributes have changed).
+     *
+     * @param id
+     */
+    public void touch(final String id) {
+        if (!contains(id)) {
+            return;
+        }
+        version++;
+        entityVersions.put(id, version);
+        attributeIndex.reindex(entitiesById.get(id));
+    }
+
+    /**
+     *
+     * @param id
+     * @return the version of the entity, 0 if not referenced.
+     */
+    public long getEntityVersion(final String id) {
+        Long entityVersion = id == null ? null : entityVersions.get(id);
+        return entityVersion == null ? 0 : entityVersion;
+    }
+
+    /**
+     *
+     * @param entity
+     * @param categoryId (scheme + term)
+     * @return true if the entity is indexed with this kind, mixin or action.
+     */
+    public boolean hasCategory(final Entity entity, final String categoryId) {
+        IndexedCategories categories = indexedCategories.get(entity);
+        return categories != null && (categoryId.equals(categories.kindId)
+                || categories.mixinIds.contains(categoryId) || categories.actionIds.contains(categoryId));
+    }
+
+    /**
+     *
+     * @return the index of entities by attribute values.
+     */
+    public AttributeIndex getAttributeIndex() {
+        return attributeIndex;
+    }
+
+    /**
+     * Get the entities that may match the attribute criteria of a filter,
+     * from the attribute index. The smallest candidate collection of the
+     * indexed criteria is returned, the caller must still check the
+     * candidates with the filter.
+     *
+     * @param filter
+     * @return the candidates, null if no criterion is on an indexed
+     * attribute.
+     */
+    public Collection<Entity> findAttributeCandidates(final EntityFilter filter) {
+        Collection<Entity> candidates = null;
+        for (Map.Entry<String, String> criterion : filter.getAttributeValues().entrySet()) {
+            Collection<Entity> entities = attributeIndex.findByValue(criterion.getKey(), criterion.getValue());
+            if (entities != null && (candidates == null || entities.size() < candidates.size())) {
+                candidates = entities;
+            }
+        }
+        for (Map.Entry<String, String> criterion : filter.getAttributePrefixes().entrySet()) {
+            if (candidates != null && candidates.isEmpty()) {
+                break;
+            }
+            Collection<Entity> entities = attributeIndex.findByPrefix(criterion.getKey(), criterion.getValue());
+            if (entities != null && (candidates == null || entities.size() < candidates.size())) {
+                candidates = entities;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the entities with a kind.
+     *
+     * @param kindId (scheme + term)
+     * @return a read only set of entities, empty if none.
+     */
+    public Set<Entity> getEntitiesForKind(final String kindId) {
+        return getCategoryEntities(entitiesByKind, kindId);
+    }
+
+    /**
+     * Get the entities associated with a mixin.
+     *
+     * @param mixinId (scheme + term)
+     * @return a read only set of entities, empty if none.
+     */
+    public Set<Entity> getEntitiesForMixin(final String mixinId) {
+        return getCategoryEntities(entitiesByMixin, mixinId);
+    }
+
+    /**
+     * Get the entities having an action from their kind or from their
+     * mixins.
+     *
+     * @param actionId (scheme + term)
+     * @return a read only set of entities, empty if none.
+     */
+    public Set<Entity> getEntitiesForAction(final String actionId) {
+        return getCategoryEntities(entitiesByAction, actionId);
+    }
+
+    /**
+     * Get the entities with this relative path or below it (ex: compute/vm1
+     * gives compute/vm1/uuid).
+     *
+     * @param pathPrefix
+     * @return a list of entities, empty if none.
+     */
+    public List<Entity> findByPathPrefix(final String pathPrefix) {
+        return pathIndex.findByPrefix(pathPrefix);
+    }
+
+    /**
+     * Get the links targeting a resource. Only the links built in the model
+     * are indexed, the caller builds the mapped ones first (see
+     * ConfigurationManager.materializeMappedLinks).
+     *
+     * @param resourceId
+     * @return the links, read only, empty if none.
+     */
+    public Set<Link> getLinksToTarget(final String resourceId) {
+        Set<Link> links = resourceId == null ? null : linksByTarget.get(resourceId);
+        if (links == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(links);
+    }
+
+    /**
+     *
+     * @return the current version of the index.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Move the version of the index forward, the next changes get versions
+     * greater than this one (a new index replacing an older one).
+     *
+     * @param minimum
+     */
+    public void advanceVersion(final long minimum) {
+        if (version < minimum) {
+            version = minimum;
+        }
+    }
+
+    /**
+     * Get a snapshot of all the entities.
+     *
+     * @return a snapshot at the current version.
+     */
+    public EntitySnapshot snapshot() {
+        return allEntities.snapshot(version);
+    }
+
+    /**
+     * Get snapshots of the entities with a kind, a mixin or an action with
+     * this category id.
+     *
+     * @param categoryId (scheme + term)
+     * @return the snapshots of kind, mixin and action entities, at the
+     * current version.
+     */
+    public List<EntitySnapshot> snapshotForCategory(final String categoryId) {
+        List<EntitySnapshot> snapshots = new ArrayList<>();
+        addCategorySnapshot(snapshots, entitiesByKind, categoryId);
+        addCategorySnapshot(snapshots, entitiesByMixin, categoryId);
+        addCategorySnapshot(snapshots, entitiesByAction, categoryId);
+        return snapshots;
+    }
+
+    /**
+     *
+     * @return the kind ids used by the referenced entities.
+     */
+    public Set<String> getUsedKinds() {
+        return Collections.unmodifiableSet(entitiesByKind.keySet());
+    }
+
+    /**
+     * Remove all references.
+     */
+    public void clear() {
+        // Snapshots taken before keep the previous category sets.
+        version++;
+        for (Entity entity : entitiesById.values()) {
+            allEntities.remove(entity, version);
+        }
+        entitiesById.clear();
+        entityVersions.clear();
+        entitiesByKind.clear();
+        entitiesByMixin.clear();
+        entitiesByAction.clear();
+        indexedCategories.clear();
+        attributeIndex.clear();
+        pathIndex.clear();
+        linksByTarget.clear();
+        indexedTargets.clear();
+    }
+
+    /**
+     *
+     * @return the number of referenced entities.
+     */
+    public int size() {
+        return entitiesById.size();
+    }
+
+    /**
+     *
+     * @return a read only view of referenced entities.
+     */
+    public Collection<Entity> getEntities() {
+        return Collections.unmodifiableCollection(entitiesById.values());
+    }
+
+    /**
+     * Rebuild the index from a configuration object (used when a
+     * configuration is replaced or loaded from outside this backend).
+     *
+     * @param configuration
+     */
+    public void rebuild(final Configuration configuration) {
+        clear();
+        if (configuration == null) {
+            return;
+        }
+        List<Link> links = new ArrayList<>();
+        for (Resource resource : configuration.getResources()) {
+            add(resource);
+            links.addAll(resource.getLinks());
+        }
+        for (Link link : links) {
+            add(link);
+        }
+    }
+
+    private void indexCategories(final Entity entity) {
+        IndexedCategories categories = new IndexedCategories();
+        Kind kind = entity.getKind();
+        if (kind != null) {
+            categories.kindId = kind.getScheme() + kind.getTerm();
+            addToCategory(entitiesByKind, categories.kindId, entity);
+            for (Action action : kind.getActions()) {
+                categories.actionIds.add(action.getScheme() + action.getTerm());
+            }
+        }
+        for (Mixin mixin : entity.getMixins()) {
+            String mixinId = mixin.getScheme() + mixin.getTerm();
+            categories.mixinIds.add(mixinId);
+            addToCategory(entitiesByMixin, mixinId, entity);
+            for (Action action : mixin.getActions()) {
+                categories.actionIds.add(action.getScheme() + action.getTerm());
+            }
+        }
+        for (String actionId : categories.actionIds) {
+            addToCategory(entitiesByAction, actionId, entity);
+        }
+        indexedCategories.put(entity, categories);
+    }
+
+    private void indexTarget(final Link link) {
+        if (link.getTarget() == null || link.getTarget().getId() == null) {
+            return;
+        }
+        String targetId = link.getTarget().getId();
+        Set<Link> links = linksByTarget.get(targetId);
+        if (links == null) {
+            links = new LinkedHashSet<>();
+            linksByTarget.put(targetId, links);
+        }
+        links.add(link);
+        indexedTargets.put(link, targetId);
+    }
+
+    private void unindexTarget(final Link link) {
+        String targetId = indexedTargets.remove(link);
+        if (targetId == null) {
+            return;
+        }
+        Set<Link> links = linksByTarget.get(targetId);
+        if (links != null) {
+            links.remove(link);
+            if (links.isEmpty()) {
+                linksByTarget.remove(targetId);
+            }
+        }
+    }
+
+    private void unindexCategories(final Entity entity) {
+        IndexedCategories categories = indexedCategories.remove(entity);
+        if (categories == null) {
+            return;
+        }
+        if (categories.kindId != null) {
+            removeFromCategory(entitiesByKind, categories.kindId, entity);
+        }
+        for (String mixinId : categories.mixinIds) {
+            removeFromCategory(entitiesByMixin, mixinId, entity);
+        }
+        for (String actionId : categories.actionIds) {
+            removeFromCategory(entitiesByAction, actionId, entity);
+        }
+    }
+
+    private void addToCategory(final Map<String, VersionedEntitySet> categoryIndex, final String categoryId,
+            final Entity entity) {
+        VersionedEntitySet entities = categoryIndex.get(categoryId);
+        if (entities == null) {
+            entities = new VersionedEntitySet();
+            categoryIndex.put(categoryId, entities);
+        }
+        entities.add(entity, version);
+    }
+
+    private void removeFromCategory(final Map<String, VersionedEntitySet> categoryIndex, final String categoryId,
+            final Entity entity) {
+        VersionedEntitySet entities = categoryIndex.get(categoryId);
+        if (entities != null) {
+            entities.remove(entity, version);
+            if (entities.isEmpty()) {
+                categoryIndex.remove(categoryId);
+            }
+        }
+    }
+
+    private static Set<Entity> getCategoryEntities(final Map<String, VersionedEntitySet> categoryIndex,
+            final String categoryId) {
+        VersionedEntitySet entities = categoryIndex.get(categoryId);
+        if (entities == null) {
+            return Collections.emptySet();
+        }
+        return entities.getEntities();
+    }
+
+    private void addCategorySnapshot(final List<EntitySnapshot> snapshots,
+            final Map<String, VersionedEntitySet> categoryIndex, final String categoryId) {
+        VersionedEntitySet entities = categoryIndex.get(categoryId);
+        if (entities != null) {
+            snapshots.add(entities.snapshot(version));
+        }
+    }
+
+    /**
+     * Category ids of an indexed entity.
+     */
+    private static class IndexedCategories {
+
+        private String kindId;
+        private final List<String> mixinIds = new ArrayList<>();
+        private final Set<String> actionIds = new LinkedHashSet<>();
+    }
+
+}
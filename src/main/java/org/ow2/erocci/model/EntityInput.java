@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A resource or a link to save in a batch (see
+ * ConfigurationManager.saveEntities).
+ *
+ */
+public class EntityInput {
+
+    private final String id;
+    private final String kind;
+    private final List<String> mixins;
+    private final String source;
+    private final String target;
+    private final Map<String, String> attributes;
+
+    /**
+     * Resource input.
+     *
+     * @param id entity id
+     * @param kind (scheme + term)
+     * @param mixins (may be null)
+     * @param attributes (may be null)
+     */
+    public EntityInput(final String id, final String kind, final List<String> mixins,
+            final Map<String, String> attributes) {
+        this(id, kind, mixins, null, null, attributes);
+    }
+
+    /**
+     * Link input.
+     *
+     * @param id entity id
+     * @param kind (scheme + term)
+     * @param mixins (may be null)
+     * @param source source resource id
+     * @param target target resource id
+     * @param attributes (may be null)
+     */
+    public EntityInput(final String id, final String kind, final List<String> mixins, final String source,
+            final String target, final Map<String, String> attributes) {
+        this.id = id;
+        this.kind = kind;
+        this.mixins = mixins == null ? new ArrayList<String>() : mixins;
+        this.source = source;
+        this.target = target;
+        this.attributes = attributes == null ? new HashMap<String, String>() : attributes;
+    }
+
+    /**
+     *
+     * @return true if this input is a link (it has a source).
+     */
+    public boolean isLink() {
+        return source != null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public List<String> getMixins() {
+        return mixins;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     *
+     * @return the attributes, modifiable.
+     */
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+/**
+ * Prefix tree of entities by the segments of their relative path id (ex:
+ * compute/vm1/f88486b7-0632-482d-a184-a9195733ddd0 is stored under compute,
+ * vm1 and the uuid). Leading, trailing and repeated slashes are ignored, so
+ * ids like /compute/vm1 and compute/vm1 share a node, which keeps each of
+ * them.
+ *
+ * A prefix lookup on compute/vm1 finds compute/vm1/uuid but not
+ * compute/vm10/uuid.
+ *
+ */
+public class EntityPathIndex {
+
+    private final Node root = new Node(null, null);
+
+    /**
+     * Reference an entity under his id path.
+     *
+     * @param entity
+     */
+    public void add(final Entity entity) {
+        String[] segments = toSegments(entity.getId());
+        if (segments.length == 0) {
+            return;
+        }
+        Node node = root;
+        for (String segment : segments) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node(node, segment);
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        if (!node.contains(entity)) {
+            node.entities.add(entity);
+        }
+    }
+
+    /**
+     * Remove an entity, only if this entity is referenced under his path.
+     * Empty nodes are pruned.
+     *
+     * @param entity
+     */
+    public void remove(final Entity entity) {
+        Node node = findNode(entity.getId());
+        if (node == null || node == root || !node.remove(entity)) {
+            return;
+        }
+        while (node != root && node.entities.isEmpty() && node.children.isEmpty()) {
+            node.parent.children.remove(node.segment);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Remove all references.
+     */
+    public void clear() {
+        root.children.clear();
+        root.entities.clear();
+    }
+
+    /**
+     * Get the entity with this exact id.
+     *
+     * @param path
+     * @return the entity, null if none.
+     */
+    public Entity get(final String path) {
+        Node node = findNode(path);
+        if (node == null) {
+            return null;
+        }
+        for (Entity entity : node.entities) {
+            if (entity.getId().equals(path)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the entity with this path and all the entities below it.
+     *
+     * @param pathPrefix a relative path, ex: compute/vm1
+     * @return a list of entities, empty if none.
+     */
+    public List<Entity> findByPrefix(final String pathPrefix) {
+        List<Entity> entities = new ArrayList<>();
+        Node node = findNode(pathPrefix);
+        if (node == null || node == root) {
+            return entities;
+        }
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            Node current = nodes.pop();
+            entities.addAll(current.entities);
+            // Push in reverse order to keep insertion order on result.
+            List<Node> children = new ArrayList<>(current.children.values());
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes.push(children.get(i));
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Check a path against a prefix, with the same rule as findByPrefix.
+     *
+     * @param pathPrefix a relative path, ex: compute/vm1
+     * @param path
+     * @return true if path is pathPrefix or is below it.
+     */
+    public static boolean isPathPrefix(final String pathPrefix, final String path) {
+        String[] prefixSegments = toSegments(pathPrefix);
+        String[] segments = toSegments(path);
+        if (prefixSegments.length == 0 || prefixSegments.length > segments.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixSegments.length; i++) {
+            if (!prefixSegments[i].equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Node findNode(final String path) {
+        Node node = root;
+        for (String segment : toSegments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Split a path on '/', ignoring empty segments.
+     *
+     * @param path
+     * @return segments, an empty array if path is null or has no segments.
+     */
+    private static String[] toSegments(final String path) {
+        if (path == null) {
+            return new String[0];
+        }
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int length = path.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || path.charAt(i) == '/') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private static class Node {
+
+        private final Node parent;
+        private final String segment;
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        /**
+         * Entities with this path, usually one (ids may differ by their
+         * slashes).
+         */
+        private final List<Entity> entities = new ArrayList<>(1);
+
+        private Node(final Node parent, final String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        private boolean contains(final Entity entity) {
+            for (Entity current : entities) {
+                if (current == entity) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean remove(final Entity entity) {
+            for (int i = 0; i < entities.size(); i++) {
+                if (entities.get(i) == entity) {
+                    entities.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
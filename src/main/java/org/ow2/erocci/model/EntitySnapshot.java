@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+/**
+ * Read only view of a VersionedEntitySet at a version. The entities are
+ * filtered on iteration, nothing is copied when the snapshot is taken.
+ *
+ */
+public class EntitySnapshot implements Iterable<Entity> {
+
+    private final VersionedEntitySet.Entry[] entries;
+    private final int size;
+    private final long version;
+
+    EntitySnapshot(final VersionedEntitySet.Entry[] entries, final int size, final long version) {
+        this.entries = entries;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     *
+     * @return the model version of this snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     *
+     * @return a view of the entity ids of this snapshot.
+     */
+    public Iterable<String> ids() {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Entity> it = EntitySnapshot.this.iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return it.next().getId();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("snapshots are read only");
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Entity> iterator() {
+        return new Iterator<Entity>() {
+
+            private int index = 0;
+            private Entity next = advance();
+
+            private Entity advance() {
+                while (index < size) {
+                    VersionedEntitySet.Entry entry = entries[index++];
+                    if (entry.isVisibleAt(version)) {
+                        return entry.entity;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entity next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Entity entity = next;
+                next = advance();
+                return entity;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("snapshots are read only");
+            }
+        };
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.OCCIPackage;
+
+/**
+ * Attributes of an entity captured before an executor call (post create,
+ * post update, action), to find if the executor has changed the entity. Only
+ * a changed entity is touched and journaled (see
+ * ConfigurationManager.captureEntityState and commitEntityChanges).
+ *
+ */
+public class EntityState {
+
+    private final String owner;
+    private final Entity entity;
+
+    /**
+     * Key : attribute name, Value : attribute value.
+     */
+    private final Map<String, String> attributes = new HashMap<>();
+
+    /**
+     * Values of the entity object attributes (ex: compute state).
+     */
+    private final Map<EAttribute, Object> features = new HashMap<>();
+
+    /**
+     * Capture the attributes of an entity, the caller holds the owner's lock.
+     *
+     * @param owner
+     * @param entity
+     */
+    EntityState(final String owner, final Entity entity) {
+        this.owner = owner;
+        this.entity = entity;
+        for (AttributeState attribute : entity.getAttributes()) {
+            attributes.put(attribute.getName(), attribute.getValue());
+        }
+        for (EAttribute attribute : entity.eClass().getEAllAttributes()) {
+            if (isCaptured(attribute)) {
+                features.put(attribute, copyValue(entity.eGet(attribute)));
+            }
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Check if the entity has changed since the capture, the caller holds the
+     * owner's lock.
+     *
+     * @return true if an attribute has been added, removed or changed.
+     */
+    boolean hasChanged() {
+        if (entity.getAttributes().size() != attributes.size()) {
+            return true;
+        }
+        for (AttributeState attribute : entity.getAttributes()) {
+            if (!attributes.containsKey(attribute.getName())
+                    || !Objects.equals(attribute.getValue(), attributes.get(attribute.getName()))) {
+                return true;
+            }
+        }
+        for (Map.Entry<EAttribute, Object> feature : features.entrySet()) {
+            if (!Objects.equals(entity.eGet(feature.getKey()), feature.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCaptured(final EAttribute attribute) {
+        return attribute.isChangeable() && !attribute.isDerived() && attribute != OCCIPackage.Literals.ENTITY__ID;
+    }
+
+    private static Object copyValue(final Object value) {
+        return value instanceof List ? new ArrayList<>((List<?>) value) : value;
+    }
+
+}
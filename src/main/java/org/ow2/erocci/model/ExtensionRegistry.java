@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.occiware.clouddesigner.occi.Action;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.Extension;
+import org.occiware.clouddesigner.occi.Kind;
+
+/**
+ * Extensions used by a configuration, by kind id (scheme + term), and actions
+ * of the extensions by action id. When two used extensions define the same
+ * kind, the first one in the configuration is kept (as a search in the used
+ * extensions would do).
+ *
+ * The registry is rebuilt when the configuration is replaced or when an
+ * extension is added to it, a registry built from another configuration or
+ * from less extensions is rebuilt on the next lookup.
+ *
+ */
+public class ExtensionRegistry {
+
+    /**
+     * Actions of the loaded extensions, by action id. Extensions are not
+     * modified once loaded.
+     */
+    private static final Map<Extension, Map<String, Action>> actionsByExtension = Collections
+            .synchronizedMap(new WeakHashMap<Extension, Map<String, Action>>());
+
+    private volatile Registry registry = new Registry(null);
+
+    /**
+     * Rebuild the registry from the extensions used by a configuration.
+     *
+     * @param configuration
+     */
+    public void rebuild(final Configuration configuration) {
+        registry = new Registry(configuration);
+    }
+
+    /**
+     * Get the used extension defining a kind, the caller must hold the read
+     * lock of the configuration's owner.
+     *
+     * @param configuration
+     * @param kindId (scheme + term)
+     * @return the extension, null if no used extension has this kind.
+     */
+    public Extension getExtensionForKind(final Configuration configuration, final String kindId) {
+        Registry current = registry;
+        if (current.configuration != configuration
+                || current.extensionCount != configuration.getUse().size()) {
+            current = new Registry(configuration);
+            registry = current;
+        }
+        return current.extensionsByKind.get(kindId);
+    }
+
+    /**
+     * Get the used extension defining an action, the caller must hold the
+     * read lock of the configuration's owner.
+     *
+     * @param configuration
+     * @param actionId (scheme + term)
+     * @return the extension, null if no used extension has this action.
+     */
+    public Extension getExtensionForAction(final Configuration configuration, final String actionId) {
+        for (Extension ext : configuration.getUse()) {
+            if (getActions(ext).containsKey(actionId)) {
+                return ext;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the actions of the kinds of an extension.
+     *
+     * @param ext
+     * @return the actions by action id (scheme + term), read only.
+     */
+    public static Map<String, Action> getActions(final Extension ext) {
+        Map<String, Action> actions = actionsByExtension.get(ext);
+        if (actions == null) {
+            actions = new HashMap<>();
+            for (Kind kind : ext.getKinds()) {
+                for (Action action : kind.getActions()) {
+                    String actionId = action.getScheme() + action.getTerm();
+                    if (!actions.containsKey(actionId)) {
+                        actions.put(actionId, action);
+                    }
+                }
+            }
+            actions = Collections.unmodifiableMap(actions);
+            actionsByExtension.put(ext, actions);
+        }
+        return actions;
+    }
+
+    /**
+     * Immutable state, replaced as a whole.
+     */
+    private static class Registry {
+
+        private final Configuration configuration;
+        private final int extensionCount;
+        private final Map<String, Extension> extensionsByKind = new HashMap<>();
+
+        Registry(final Configuration configuration) {
+            this.configuration = configuration;
+            if (configuration == null) {
+                this.extensionCount = -1;
+                return;
+            }
+            this.extensionCount = configuration.getUse().size();
+            for (Extension ext : configuration.getUse()) {
+                for (Kind kind : ext.getKinds()) {
+                    String kindId = kind.getScheme() + kind.getTerm();
+                    if (!extensionsByKind.containsKey(kindId)) {
+                        extensionsByKind.put(kindId, ext);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.occiware.clouddesigner.occi.Configuration;
+
+/**
+ * Partition of the model for one owner : his configuration, the index of his
+ * entities and of his used extensions, and the lock guarding them. Owners dont share any state, so a
+ * heavy owner doesnt contend with the others. Cross owner operations are run
+ * on the shard executors (see ShardExecutors).
+ *
+ */
+public class OwnerShard {
+
+    private static final int ENTITY_MONITORS = 256;
+
+    private final String owner;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final EntityIndex index = new EntityIndex();
+
+    private final ExtensionRegistry extensions = new ExtensionRegistry();
+
+    /**
+     * Monitors serializing the executor calls on an entity, by entity id
+     * hash.
+     */
+    private final Object[] entityMonitors = new Object[ENTITY_MONITORS];
+
+    private volatile Configuration configuration;
+
+    public OwnerShard(final String owner, final Configuration configuration) {
+        this.owner = owner;
+        for (int i = 0; i < ENTITY_MONITORS; i++) {
+            entityMonitors[i] = new Object();
+        }
+        this.configuration = configuration;
+        index.rebuild(configuration);
+        extensions.rebuild(configuration);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * The configuration and the index are read under the read lock and
+     * modified under the write lock.
+     *
+     * @return the lock of this shard.
+     */
+    public ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    public EntityIndex getIndex() {
+        return index;
+    }
+
+    /**
+     *
+     * @return the extensions used by the configuration, by kind id.
+     */
+    public ExtensionRegistry getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * The executor calls on an entity (post create, post update, pre delete,
+     * actions) are synchronized on his monitor, entities may share a monitor.
+     *
+     * @param id
+     * @return the monitor of this entity.
+     */
+    public Object getEntityMonitor(final String id) {
+        return entityMonitors[(id.hashCode() & Integer.MAX_VALUE) % ENTITY_MONITORS];
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Replace the configuration, the caller must hold the write lock and
+     * rebuild the index.
+     *
+     * @param configuration
+     */
+    void setConfiguration(final Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors used to run an operation on several owner shards in parallel.
+ * Owners are spread by hash on a fixed number of buckets, each bucket has his
+ * own single thread executor, so the tasks of one owner are run in order.
+ *
+ * The number of buckets is given by the system property erocci.shards,
+ * default to the number of available processors.
+ *
+ */
+public final class ShardExecutors {
+
+    public static final String SHARD_COUNT_PROPERTY = "erocci.shards";
+
+    private static final ExecutorService[] executors;
+
+    /**
+     * Set on shard threads, a task running on a shard must not wait for
+     * another shard task (it may be queued behind it).
+     */
+    private static final ThreadLocal<Boolean> onShardThread = new ThreadLocal<>();
+
+    static {
+        int count = Integer.getInteger(SHARD_COUNT_PROPERTY, Runtime.getRuntime().availableProcessors());
+        if (count < 1) {
+            count = 1;
+        }
+        executors = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            final String threadName = "erocci-shard-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private ShardExecutors() {
+    }
+
+    /**
+     * Task to run for an owner.
+     *
+     * @param <T> result type
+     */
+    public interface OwnerTask<T> {
+
+        T call(String owner);
+    }
+
+    /**
+     *
+     * @return the number of shard buckets.
+     */
+    public static int getShardCount() {
+        return executors.length;
+    }
+
+    /**
+     *
+     * @param owner
+     * @return the bucket of this owner.
+     */
+    public static int getShardIndex(final String owner) {
+        return (owner.hashCode() & Integer.MAX_VALUE) % executors.length;
+    }
+
+    /**
+     * Run a task for each owner, on the executor of the owner's bucket, and
+     * wait for all the results. Tasks are run in the calling thread if there
+     * is only one owner or if the caller is itself a shard task. The caller
+     * must not hold an owner lock, the tasks usually need it.
+     *
+     * @param owners
+     * @param task
+     * @return the results by owner, in owners order.
+     */
+    public static <T> Map<String, T> invokeAll(final Collection<String> owners, final OwnerTask<T> task) {
+        Map<String, T> results = new LinkedHashMap<>();
+        if (owners.size() <= 1 || Boolean.TRUE.equals(onShardThread.get())) {
+            for (String owner : owners) {
+                results.put(owner, task.call(owner));
+            }
+            return results;
+        }
+        List<String> submittedOwners = new ArrayList<>();
+        List<Future<T>> futures = new ArrayList<>();
+        for (final String owner : owners) {
+            submittedOwners.add(owner);
+            futures.add(executors[getShardIndex(owner)].submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    onShardThread.set(Boolean.TRUE);
+                    try {
+                        return task.call(owner);
+                    } finally {
+                        onShardThread.remove();
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            results.put(submittedOwners.get(i), getResult(futures.get(i)));
+        }
+        return results;
+    }
+
+    private static <T> T getResult(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard task", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+}
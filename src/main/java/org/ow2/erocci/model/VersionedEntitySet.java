@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+/**
+ * Set of entities keeping the version at which each entity has been added
+ * and removed, so a snapshot of the set at a version can be iterated later
+ * without copy while the set is modified.
+ *
+ * Entries are appended to an array, a removal only stamps the entry. A
+ * snapshot keeps the array and the size at his version, when the array is
+ * grown or compacted a new array is allocated so the snapshots are never
+ * altered. Modifications must be serialized by the caller (owner's write
+ * lock), snapshots may be iterated by any thread.
+ *
+ */
+public class VersionedEntitySet {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Minimal number of removed entries before a compaction.
+     */
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+    private int size = 0;
+    private int removedCount = 0;
+
+    /**
+     * Current entries. Key : entity, Value : entry of this entity.
+     */
+    private final Map<Entity, Entry> liveEntries = new LinkedHashMap<>();
+
+    /**
+     * Add an entity at a version, no-op if the entity is already in the set.
+     *
+     * @param entity
+     * @param version
+     */
+    public void add(final Entity entity, final long version) {
+        if (liveEntries.containsKey(entity)) {
+            return;
+        }
+        if (size == entries.length) {
+            if (removedCount >= COMPACT_THRESHOLD && removedCount >= size / 2) {
+                compact();
+            } else {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+        }
+        Entry entry = new Entry(entity, version);
+        entries[size++] = entry;
+        liveEntries.put(entity, entry);
+    }
+
+    /**
+     * Remove an entity at a version.
+     *
+     * @param entity
+     * @param version
+     */
+    public void remove(final Entity entity, final long version) {
+        Entry entry = liveEntries.remove(entity);
+        if (entry != null) {
+            entry.removedAt = version;
+            removedCount++;
+        }
+    }
+
+    /**
+     *
+     * @return true if there's no entity in the set.
+     */
+    public boolean isEmpty() {
+        return liveEntries.isEmpty();
+    }
+
+    /**
+     *
+     * @return a read only view of the current entities.
+     */
+    public Set<Entity> getEntities() {
+        return Collections.unmodifiableSet(liveEntries.keySet());
+    }
+
+    /**
+     * Get a snapshot of the set, the version must be the current version of
+     * the caller's model.
+     *
+     * @param version
+     * @return a snapshot, its content doesnt change with next modifications.
+     */
+    public EntitySnapshot snapshot(final long version) {
+        return new EntitySnapshot(entries, size, version);
+    }
+
+    /**
+     * Copy the current entries in a new array, removed entries are dropped.
+     * Older snapshots keep the previous array.
+     */
+    private void compact() {
+        Entry[] compacted = new Entry[Math.max(INITIAL_CAPACITY, liveEntries.size() * 2)];
+        int i = 0;
+        for (Entry entry : liveEntries.values()) {
+            compacted[i++] = entry;
+        }
+        entries = compacted;
+        size = i;
+        removedCount = 0;
+    }
+
+    /**
+     * An entity with its added and removed versions.
+     */
+    static class Entry {
+
+        final Entity entity;
+        final long addedAt;
+        /**
+         * 0 while the entity is in the set.
+         */
+        volatile long removedAt = 0;
+
+        Entry(final Entity entity, final long addedAt) {
+            this.entity = entity;
+            this.addedAt = addedAt;
+        }
+
+        boolean isVisibleAt(final long version) {
+            long removed = removedAt;
+            return addedAt <= version && (removed == 0 || removed > version);
+        }
+    }
+
+}
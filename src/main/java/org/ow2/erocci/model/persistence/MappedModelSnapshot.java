@@ -0,0 +1,826 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of the model in a memory mapped file. Entity records stay in the
+ * file and are decoded only when they are read, so a large model is opened
+ * without reading it : the entities are materialized in the model on first
+ * access (see ConfigurationManager).
+ *
+ * Layout : a header, the entity records of each owner (contiguous, framed
+ * like the journal records), the id index (id hash, record offset) sorted by
+ * hash, the link index (source or target id hash, link record offset) sorted
+ * by hash, then the owner ranges and the user mixin records ended by an end
+ * record.
+ *
+ * A record is materialized at most once, the model owns the entity after
+ * that and the record is ignored. Records not materialized are copied as
+ * they are to the next snapshot. The model version of the owner at
+ * materialization is kept, so a reader holding an older model snapshot still
+ * sees the record.
+ *
+ */
+public class MappedModelSnapshot {
+
+    static final int FORMAT_VERSION = 3;
+
+    /**
+     * Magic, version, covered segment, entity count, owner count, index
+     * offset, link index offset, tail offset, link index size (and 4 unused
+     * bytes).
+     */
+    private static final int HEADER_SIZE = 56;
+    private static final int INDEX_SLOT_SIZE = 16;
+
+    /**
+     * Version recorded for records of discarded owners, never visible.
+     */
+    private static final long DISCARDED = Long.MIN_VALUE;
+
+    /**
+     * Version recorded while a record is materialized.
+     */
+    private static final long MATERIALIZING = Long.MAX_VALUE;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final long coveredSegment;
+    private final int entityCount;
+    private final int indexOffset;
+    private final int linkIndexOffset;
+    private final int linkIndexSize;
+
+    /**
+     * Record range by owner : start and end offsets.
+     */
+    private final Map<String, int[]> ownerRanges = new LinkedHashMap<>();
+    private final List<byte[]> userMixinRecords = new ArrayList<>();
+
+    /**
+     * Key : record offset, Value : owner's model version at materialization.
+     */
+    private final ConcurrentHashMap<Integer, Long> materialized = new ConcurrentHashMap<>();
+    private final AtomicInteger remaining;
+
+    private MappedModelSnapshot(final File file, final ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != ModelJournal.SNAPSHOT_MAGIC
+                || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unknown snapshot format : " + file);
+        }
+        coveredSegment = buffer.getLong(8);
+        entityCount = buffer.getInt(16);
+        int ownerCount = buffer.getInt(20);
+        long index = buffer.getLong(24);
+        long linkIndex = buffer.getLong(32);
+        long tail = buffer.getLong(40);
+        linkIndexSize = buffer.getInt(48);
+        if (index < HEADER_SIZE || linkIndex != index + (long) entityCount * INDEX_SLOT_SIZE || linkIndexSize < 0
+                || tail != linkIndex + (long) linkIndexSize * INDEX_SLOT_SIZE || tail > buffer.limit()) {
+            throw new IOException("Corrupted snapshot header : " + file);
+        }
+        indexOffset = (int) index;
+        linkIndexOffset = (int) linkIndex;
+        remaining = new AtomicInteger(entityCount);
+
+        byte[] tailBytes = new byte[buffer.limit() - (int) tail];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) tail);
+        view.get(tailBytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(tailBytes));
+        for (int i = 0; i < ownerCount; i++) {
+            String owner = ModelJournal.readString(in);
+            ownerRanges.put(owner, new int[]{in.readInt(), in.readInt()});
+        }
+        byte[] payload;
+        while ((payload = ModelJournal.readRecord(in)) != null && payload[0] != ModelJournal.OP_END) {
+            userMixinRecords.add(payload);
+        }
+        if (payload == null) {
+            throw new IOException("Truncated snapshot : " + file);
+        }
+    }
+
+    /**
+     * Map a snapshot file. The mapping stays valid when the file is replaced
+     * by a newer snapshot.
+     *
+     * @param file
+     * @return the mapped snapshot.
+     * @throws IOException if the file is not a mapped snapshot or is larger
+     * than 2GB.
+     */
+    public static MappedModelSnapshot map(final File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to be mapped : " + file);
+            }
+            return new MappedModelSnapshot(file, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     *
+     * @return the last journal segment included in this snapshot.
+     */
+    public long getCoveredSegment() {
+        return coveredSegment;
+    }
+
+    /**
+     *
+     * @return the owners having entities in this snapshot.
+     */
+    public Set<String> getOwners() {
+        return Collections.unmodifiableSet(ownerRanges.keySet());
+    }
+
+    /**
+     *
+     * @return the user mixin records, applied when the snapshot is opened.
+     */
+    List<byte[]> getUserMixinRecords() {
+        return userMixinRecords;
+    }
+
+    /**
+     *
+     * @return the number of records not materialized.
+     */
+    public int getRemaining() {
+        return remaining.get();
+    }
+
+    /**
+     * Find a record not materialized.
+     *
+     * @param owner
+     * @param id
+     * @return the entry with attributes, null if none.
+     */
+    public Entry find(final String owner, final String id) {
+        long hash = hash(id);
+        for (int slot = firstSlot(indexOffset, entityCount, hash); slot < entityCount
+                && slotHash(indexOffset, slot) == hash; slot++) {
+            int offset = slotOffset(indexOffset, slot);
+            if (materialized.containsKey(offset)) {
+                continue;
+            }
+            Entry entry = decode(offset, true);
+            if (entry.id.equals(id) && entry.owner.equals(owner)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the records not materialized with this id, on all owners.
+     *
+     * @param id
+     * @return entries without attributes, empty list if none.
+     */
+    public List<Entry> findAll(final String id) {
+        List<Entry> entries = new ArrayList<>();
+        if (id == null) {
+            return entries;
+        }
+        long hash = hash(id);
+        for (int slot = firstSlot(indexOffset, entityCount, hash); slot < entityCount
+                && slotHash(indexOffset, slot) == hash; slot++) {
+            int offset = slotOffset(indexOffset, slot);
+            if (materialized.containsKey(offset)) {
+                continue;
+            }
+            Entry entry = decode(offset, false);
+            if (entry.id.equals(id)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Find the link records not materialized with this resource as source or
+     * target.
+     *
+     * @param owner
+     * @param resourceId
+     * @return entries without attributes, empty list if none.
+     */
+    public List<Entry> findLinks(final String owner, final String resourceId) {
+        List<Entry> entries = new ArrayList<>();
+        if (resourceId == null) {
+            return entries;
+        }
+        long hash = hash(resourceId);
+        int offset = -1;
+        for (int slot = firstSlot(linkIndexOffset, linkIndexSize, hash); slot < linkIndexSize
+                && slotHash(linkIndexOffset, slot) == hash; slot++) {
+            int previous = offset;
+            offset = slotOffset(linkIndexOffset, slot);
+            if (offset == previous || materialized.containsKey(offset)) {
+                // Source and target ids of a link may have the same hash.
+                continue;
+            }
+            Entry entry = decode(offset, false);
+            if (entry.owner.equals(owner)
+                    && (resourceId.equals(entry.source) || resourceId.equals(entry.target))) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Get the records of an owner not materialized.
+     *
+     * @param owner
+     * @param filter (may be null)
+     * @return entries without attributes, in snapshot order.
+     */
+    public List<Entry> entries(final String owner, final Filter filter) {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : entriesAt(owner, MATERIALIZING)) {
+            if (filter == null || filter.accept(entry)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Get the ids of an owner's records with this kind or mixin, as seen by
+     * a reader of the owner's model at a version : records materialized
+     * after this version are still returned. The records are decoded on
+     * iteration.
+     *
+     * @param owner
+     * @param categoryId
+     * @param version
+     * @return entity ids.
+     */
+    public Iterable<String> snapshotIdsForCategory(final String owner, final String categoryId,
+            final long version) {
+        return snapshotIds(owner, new Filter() {
+            @Override
+            public boolean accept(Entry entry) {
+                return entry.hasCategory(categoryId);
+            }
+        }, version);
+    }
+
+    /**
+     * Get the ids of an owner's records accepted by a filter, as seen by a
+     * reader of the owner's model at a version. The records are decoded and
+     * filtered on iteration.
+     *
+     * @param owner
+     * @param filter
+     * @param version
+     * @return entity ids.
+     */
+    public Iterable<String> snapshotIds(final String owner, final Filter filter, final long version) {
+        final Iterable<Entry> entries = entriesAt(owner, version);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Entry> it = entries.iterator();
+                return new Iterator<String>() {
+
+                    private String next = advance();
+
+                    private String advance() {
+                        while (it.hasNext()) {
+                            Entry entry = it.next();
+                            if (filter.accept(entry)) {
+                                return entry.id;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        String id = next;
+                        next = advance();
+                        return id;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("snapshots are read only");
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     *
+     * @param owner
+     * @return the kind ids of the owner's records not materialized.
+     */
+    public Set<String> getKinds(final String owner) {
+        Set<String> kinds = new HashSet<>();
+        for (Entry entry : entriesAt(owner, MATERIALIZING)) {
+            if (entry.kind != null) {
+                kinds.add(entry.kind);
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Copy the owner's resource or link records not materialized to a new
+     * snapshot, without decoding them. The caller holds the owner's read
+     * lock.
+     *
+     * @param owner
+     * @param links true to copy the link records, false for the resources.
+     * @param writer
+     * @return the number of records copied.
+     * @throws IOException
+     */
+    int copyEntries(final String owner, final boolean links, final Writer writer) throws IOException {
+        int count = 0;
+        for (Entry entry : entriesAt(owner, MATERIALIZING)) {
+            if (entry.link == links) {
+                ByteBuffer view = buffer.duplicate();
+                view.position(entry.offset);
+                view.limit(entry.offset + 8 + buffer.getInt(entry.offset));
+                writer.writeFramedRecord(entry, view);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode a record with its attributes.
+     *
+     * @param entry
+     * @return the full entry.
+     */
+    public Entry load(final Entry entry) {
+        return entry.attributes != null ? entry : decode(entry.offset, true);
+    }
+
+    /**
+     * Mark a record as being materialized, the caller holds the owner's write
+     * lock and must call setMaterializedVersion when the entity is built.
+     *
+     * @param entry
+     * @return false if the record is already materialized.
+     */
+    public boolean markMaterialized(final Entry entry) {
+        if (materialized.putIfAbsent(entry.offset, MATERIALIZING) != null) {
+            return false;
+        }
+        remaining.decrementAndGet();
+        return true;
+    }
+
+    /**
+     *
+     * @param entry
+     * @param version the owner's model version once the entity is built.
+     */
+    public void setMaterializedVersion(final Entry entry, final long version) {
+        materialized.put(entry.offset, version);
+    }
+
+    /**
+     * Drop the records of an owner without materializing them (owner's
+     * configuration reset).
+     *
+     * @param owner
+     */
+    public void discard(final String owner) {
+        for (Entry entry : entriesAt(owner, MATERIALIZING)) {
+            if (markMaterialized(entry)) {
+                materialized.put(entry.offset, DISCARDED);
+            }
+        }
+    }
+
+    /**
+     * Iterate the owner's records visible at a version, MATERIALIZING gives
+     * only the records not materialized.
+     */
+    private Iterable<Entry> entriesAt(final String owner, final long version) {
+        final int[] range = ownerRanges.get(owner);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+        return new Iterable<Entry>() {
+            @Override
+            public Iterator<Entry> iterator() {
+                return new Iterator<Entry>() {
+
+                    private int offset = range[0];
+                    private Entry next = advance();
+
+                    private Entry advance() {
+                        while (offset < range[1]) {
+                            int current = offset;
+                            offset += 8 + buffer.getInt(current);
+                            Long materializedAt = materialized.get(current);
+                            if (materializedAt == null || materializedAt > version) {
+                                return decode(current, false);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry entry = next;
+                        next = advance();
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("snapshots are read only");
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     *
+     * @return the first slot of an index with this hash or a greater one.
+     */
+    private int firstSlot(final int index, final int size, final long hash) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (slotHash(index, middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long slotHash(final int index, final int slot) {
+        return buffer.getLong(index + slot * INDEX_SLOT_SIZE);
+    }
+
+    private int slotOffset(final int index, final int slot) {
+        return (int) buffer.getLong(index + slot * INDEX_SLOT_SIZE + 8);
+    }
+
+    private Entry decode(final int offset, final boolean withAttributes) {
+        int length = buffer.getInt(offset);
+        int crcValue = buffer.getInt(offset + 4);
+        byte[] payload = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 8);
+        view.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != crcValue) {
+            throw new IllegalStateException("Corrupted record at offset " + offset + " of " + file);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte op = in.readByte();
+            String owner = ModelJournal.readString(in);
+            String id = ModelJournal.readString(in);
+            String kind = ModelJournal.readString(in);
+            List<String> mixins = ModelJournal.readStrings(in);
+            String source = null;
+            String target = null;
+            if (op == ModelJournal.OP_SAVE_LINK) {
+                source = ModelJournal.readString(in);
+                target = ModelJournal.readString(in);
+            }
+            Map<String, String> attributes = withAttributes ? ModelJournal.readMap(in) : null;
+            return new Entry(offset, op == ModelJournal.OP_SAVE_LINK, owner, id, kind, mixins, source, target,
+                    attributes);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Corrupted record at offset " + offset + " of " + file, ex);
+        }
+    }
+
+    /**
+     * FNV-1a hash of an entity id.
+     */
+    static long hash(final String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Filter on records.
+     */
+    public interface Filter {
+
+        boolean accept(Entry entry);
+    }
+
+    /**
+     * A resource or link record.
+     */
+    public static class Entry {
+
+        private final int offset;
+        private final boolean link;
+        private final String owner;
+        private final String id;
+        private final String kind;
+        private final List<String> mixins;
+        private final String source;
+        private final String target;
+        private final Map<String, String> attributes;
+
+        Entry(final int offset, final boolean link, final String owner, final String id, final String kind,
+                final List<String> mixins, final String source, final String target,
+                final Map<String, String> attributes) {
+            this.offset = offset;
+            this.link = link;
+            this.owner = owner;
+            this.id = id;
+            this.kind = kind;
+            this.mixins = mixins;
+            this.source = source;
+            this.target = target;
+            this.attributes = attributes;
+        }
+
+        public boolean isLink() {
+            return link;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public List<String> getMixins() {
+            return mixins;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         *
+         * @return the attributes, null if the entry was decoded without them.
+         */
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         *
+         * @param categoryId
+         * @return true if this categoryId is the kind or a mixin of the entry.
+         */
+        public boolean hasCategory(final String categoryId) {
+            return categoryId.equals(kind) || mixins.contains(categoryId);
+        }
+    }
+
+    /**
+     * Writer of a mapped snapshot. Owners are written one after the other,
+     * the indexes and the owner ranges are written on finish.
+     */
+    static class Writer {
+
+        private final File file;
+        private final FileOutputStream fileOut;
+        private final DataOutputStream out;
+        private final long coveredSegment;
+        private long position = HEADER_SIZE;
+
+        private final List<IndexSlot> slots = new ArrayList<>();
+        private final List<IndexSlot> linkSlots = new ArrayList<>();
+        private final Map<String, long[]> ranges = new LinkedHashMap<>();
+        private final List<ModelJournal.RecordWriter> userMixins = new ArrayList<>();
+        private long[] currentRange = null;
+
+        Writer(final File file, final long coveredSegment) throws IOException {
+            this.file = file;
+            this.coveredSegment = coveredSegment;
+            fileOut = new FileOutputStream(file);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+            // Header is written on finish.
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        void startOwner(final String owner) {
+            endOwner();
+            currentRange = new long[]{position, position};
+            ranges.put(owner, currentRange);
+        }
+
+        void writeEntity(final String id, final ModelJournal.RecordWriter record) throws IOException {
+            slots.add(new IndexSlot(hash(id), position));
+            position += ModelJournal.writeRecord(out, record);
+        }
+
+        void writeLink(final String id, final String source, final String target,
+                final ModelJournal.RecordWriter record) throws IOException {
+            indexLink(source, target);
+            writeEntity(id, record);
+        }
+
+        /**
+         * Write a record already framed (copied from another snapshot).
+         */
+        void writeFramedRecord(final Entry entry, final ByteBuffer framed) throws IOException {
+            if (entry.link) {
+                indexLink(entry.source, entry.target);
+            }
+            slots.add(new IndexSlot(hash(entry.id), position));
+            byte[] bytes = new byte[framed.remaining()];
+            framed.get(bytes);
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        private void indexLink(final String source, final String target) {
+            if (source != null) {
+                linkSlots.add(new IndexSlot(hash(source), position));
+            }
+            if (target != null && !target.equals(source)) {
+                linkSlots.add(new IndexSlot(hash(target), position));
+            }
+        }
+
+        void writeUserMixin(final ModelJournal.RecordWriter record) {
+            userMixins.add(record);
+        }
+
+        private void endOwner() {
+            if (currentRange != null) {
+                currentRange[1] = position;
+                currentRange = null;
+            }
+        }
+
+        /**
+         * Write the indexes, the owner ranges and the header, sync and close
+         * the file.
+         *
+         * @return the number of entity records.
+         */
+        int finish() throws IOException {
+            try {
+                endOwner();
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot too large to be mapped : " + file);
+                }
+                long indexStart = position;
+                Collections.sort(slots);
+                for (IndexSlot slot : slots) {
+                    out.writeLong(slot.hash);
+                    out.writeLong(slot.offset);
+                }
+                long linkIndexStart = indexStart + (long) slots.size() * INDEX_SLOT_SIZE;
+                Collections.sort(linkSlots);
+                for (IndexSlot slot : linkSlots) {
+                    out.writeLong(slot.hash);
+                    out.writeLong(slot.offset);
+                }
+                long tailStart = linkIndexStart + (long) linkSlots.size() * INDEX_SLOT_SIZE;
+                for (Map.Entry<String, long[]> range : ranges.entrySet()) {
+                    byte[] owner = range.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(owner.length);
+                    out.write(owner);
+                    out.writeInt((int) range.getValue()[0]);
+                    out.writeInt((int) range.getValue()[1]);
+                }
+                for (ModelJournal.RecordWriter record : userMixins) {
+                    ModelJournal.writeRecord(out, record);
+                }
+                ModelJournal.writeRecord(out, new ModelJournal.RecordWriter(ModelJournal.OP_END));
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(ModelJournal.SNAPSHOT_MAGIC);
+                header.putInt(FORMAT_VERSION);
+                header.putLong(coveredSegment);
+                header.putInt(slots.size());
+                header.putInt(ranges.size());
+                header.putLong(indexStart);
+                header.putLong(linkIndexStart);
+                header.putLong(tailStart);
+                header.putInt(linkSlots.size());
+                header.putInt(0);
+                header.flip();
+                FileChannel channel = fileOut.getChannel();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                fileOut.getFD().sync();
+                return slots.size();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class IndexSlot implements Comparable<IndexSlot> {
+
+        private final long hash;
+        private final long offset;
+
+        IndexSlot(final long hash, final long offset) {
+            this.hash = hash;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(final IndexSlot other) {
+            int result = Long.compare(hash, other.hash);
+            return result != 0 ? result : Long.compare(offset, other.offset);
+        }
+    }
+
+}
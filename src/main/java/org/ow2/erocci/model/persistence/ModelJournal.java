@@ -0,0 +1,881 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.model.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Link;
+import org.occiware.clouddesigner.occi.Mixin;
+import org.occiware.clouddesigner.occi.Resource;
+import org.ow2.erocci.model.ConfigurationManager;
+
+/**
+ * Persistence of the OCCI model : an append only write ahead log of the
+ * model operations plus periodic snapshots of all owner's configurations.
+ *
+ * The journal is disabled unless the system property erocci.data.dir gives
+ * the data directory. On open, the last snapshot is mapped in memory (see
+ * MappedModelSnapshot, its entities are built on first access) and the log
+ * segments written after it are replayed through ConfigurationManager (no
+ * action executor is called). Snapshots of the first format are still read
+ * by replaying them.
+ *
+ * A snapshot is taken every erocci.snapshot.interval logged operations
+ * (default 100000) and when the journal is closed if the model has changed.
+ * The records left in the mapped snapshot are copied to the new snapshot
+ * without building their entities. Taking a snapshot starts
+ * a new log segment first, so operations logged while the snapshot is written
+ * may be replayed on a model that already contains them : all the logged
+ * operations overwrite the previous state and can be replayed twice.
+ *
+ * Records are framed by their length and CRC32, a torn record at the end of
+ * the last segment (crash while writing) is dropped on recovery.
+ *
+ */
+public class ModelJournal {
+
+    public static final String DATA_DIR_PROPERTY = "erocci.data.dir";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "erocci.snapshot.interval";
+    public static final String SYNC_PROPERTY = "erocci.journal.sync";
+
+    static final int SNAPSHOT_MAGIC = 0x45524f53; // EROS
+    private static final int LOG_FORMAT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    static final byte OP_END = 0;
+    static final byte OP_SAVE_RESOURCE = 1;
+    static final byte OP_SAVE_LINK = 2;
+    static final byte OP_UPDATE = 3;
+    static final byte OP_DELETE = 4;
+    static final byte OP_SAVE_MIXIN = 5;
+    static final byte OP_ADD_USER_MIXIN = 6;
+    static final byte OP_REMOVE_USER_MIXIN = 7;
+
+    private static final Logger logger = Logger.getLogger("ModelJournal");
+
+    private File dataDir;
+    private long snapshotInterval = 100000;
+    private boolean syncEachRecord = false;
+
+    /**
+     * Guards the current segment stream.
+     */
+    private final Object segmentMonitor = new Object();
+    private DataOutputStream segmentOut;
+    private FileOutputStream segmentFileOut;
+    private long segmentNumber = 0;
+    private long recordsSinceSnapshot = 0;
+
+    /**
+     * True when the snapshot on disk is mapped and contains all the logged
+     * operations.
+     */
+    private boolean snapshotUpToDate = false;
+
+    private volatile boolean opened = false;
+    private volatile boolean recovering = false;
+
+    /**
+     * Records of the current batch of the thread, written together by
+     * endBatch.
+     */
+    private final ThreadLocal<List<RecordWriter>> batchRecords = new ThreadLocal<>();
+
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean(false);
+    private final Object snapshotMonitor = new Object();
+    private ExecutorService snapshotExecutor;
+
+    private ModelJournal() {
+    }
+
+    private static class ModelJournalHolder {
+
+        private final static ModelJournal instance = new ModelJournal();
+    }
+
+    public static ModelJournal getInstance() {
+        return ModelJournalHolder.instance;
+    }
+
+    /**
+     *
+     * @return true if the operations are logged.
+     */
+    public boolean isEnabled() {
+        return opened && !recovering;
+    }
+
+    /**
+     * Open the journal if the data directory is configured : recover the
+     * model from the last snapshot and the log segments, then start a new log
+     * segment.
+     *
+     * @throws IOException
+     */
+    public void open() throws IOException {
+        String dir = System.getProperty(DATA_DIR_PROPERTY);
+        if (dir == null || dir.trim().isEmpty() || opened) {
+            return;
+        }
+        dataDir = new File(dir.trim());
+        if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IOException("Cannot create data directory : " + dataDir);
+        }
+        snapshotInterval = Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, snapshotInterval);
+        syncEachRecord = Boolean.getBoolean(SYNC_PROPERTY);
+
+        long lastSegment = recover();
+
+        synchronized (segmentMonitor) {
+            recordsSinceSnapshot = 0;
+            openSegment(lastSegment + 1);
+        }
+        snapshotExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "erocci-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        opened = true;
+        logger.info("Model journal opened on " + dataDir.getAbsolutePath());
+    }
+
+    /**
+     * Take a last snapshot if the model has changed and close the journal.
+     */
+    public void close() {
+        if (!opened) {
+            return;
+        }
+        boolean upToDate;
+        synchronized (segmentMonitor) {
+            upToDate = snapshotUpToDate;
+        }
+        try {
+            if (!upToDate) {
+                snapshot();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Snapshot on close failed : " + ex.getMessage(), ex);
+        }
+        opened = false;
+        snapshotExecutor.shutdown();
+        synchronized (segmentMonitor) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Start a batch on the calling thread : the next records are kept until
+     * endBatch, then written with one flush (and one sync if
+     * erocci.journal.sync is set). The caller must hold the write lock of the
+     * owners of the batch until endBatch, so the records stay in order.
+     */
+    public void startBatch() {
+        if (isEnabled() && batchRecords.get() == null) {
+            batchRecords.set(new ArrayList<RecordWriter>());
+        }
+    }
+
+    /**
+     * Write the records of the calling thread's batch.
+     */
+    public void endBatch() {
+        List<RecordWriter> records = batchRecords.get();
+        batchRecords.remove();
+        if (records != null && !records.isEmpty()) {
+            append(records);
+        }
+    }
+
+    public void logSaveResource(final String owner, final String id, final String kind, final List<String> mixins,
+            final Map<String, String> attributes) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_SAVE_RESOURCE);
+        record.writeString(owner);
+        record.writeString(id);
+        record.writeString(kind);
+        record.writeStrings(mixins);
+        record.writeMap(attributes);
+        append(record);
+    }
+
+    public void logSaveLink(final String owner, final String id, final String kind, final List<String> mixins,
+            final String src, final String target, final Map<String, String> attributes) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_SAVE_LINK);
+        record.writeString(owner);
+        record.writeString(id);
+        record.writeString(kind);
+        record.writeStrings(mixins);
+        record.writeString(src);
+        record.writeString(target);
+        record.writeMap(attributes);
+        append(record);
+    }
+
+    public void logUpdate(final String owner, final String id, final Map<String, String> attributes) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_UPDATE);
+        record.writeString(owner);
+        record.writeString(id);
+        record.writeMap(attributes);
+        append(record);
+    }
+
+    /**
+     * Log the current attributes of an entity, after a change made outside of
+     * the configuration manager (executor, action).
+     *
+     * @param owner
+     * @param entity
+     */
+    public void logUpdate(final String owner, final Entity entity) {
+        if (!isEnabled()) {
+            return;
+        }
+        logUpdate(owner, entity.getId(), getAttributes(entity));
+    }
+
+    public void logDelete(final String owner, final String id) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_DELETE);
+        record.writeString(owner);
+        record.writeString(id);
+        append(record);
+    }
+
+    public void logSaveMixin(final String owner, final String mixinId, final List<String> entityIds,
+            final boolean updateMode) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_SAVE_MIXIN);
+        record.writeString(owner);
+        record.writeString(mixinId);
+        record.writeStrings(entityIds);
+        record.writeBoolean(updateMode);
+        append(record);
+    }
+
+    public void logAddUserMixin(final String owner, final String mixinId, final String location) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_ADD_USER_MIXIN);
+        record.writeString(owner);
+        record.writeString(mixinId);
+        record.writeString(location);
+        append(record);
+    }
+
+    public void logRemoveUserMixin(final String mixinId) {
+        if (!isEnabled()) {
+            return;
+        }
+        RecordWriter record = new RecordWriter(OP_REMOVE_USER_MIXIN);
+        record.writeString(mixinId);
+        append(record);
+    }
+
+    /**
+     * Write a snapshot of all owner's configurations and delete the log
+     * segments it covers.
+     *
+     * @throws IOException
+     */
+    public void snapshot() throws IOException {
+        if (!opened) {
+            return;
+        }
+        synchronized (snapshotMonitor) {
+            long coveredSegment;
+            synchronized (segmentMonitor) {
+                coveredSegment = segmentNumber;
+                closeSegment();
+                openSegment(coveredSegment + 1);
+                recordsSinceSnapshot = 0;
+                snapshotUpToDate = true;
+            }
+            File tmpFile = new File(dataDir, SNAPSHOT_FILE + ".tmp");
+            try {
+                MappedModelSnapshot.Writer writer = new MappedModelSnapshot.Writer(tmpFile, coveredSegment);
+                int count = 0;
+                for (String owner : ConfigurationManager.getAllOwner()) {
+                    count += writeOwner(writer, owner);
+                }
+                int entityCount = writer.finish();
+                logger.info("Snapshot written with " + entityCount + " entities and " + (count - entityCount)
+                        + " user mixins, covering segment " + coveredSegment);
+                Files.move(tmpFile.toPath(), new File(dataDir, SNAPSHOT_FILE).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                synchronized (segmentMonitor) {
+                    snapshotUpToDate = false;
+                }
+                throw ex;
+            }
+            for (Long number : listSegments()) {
+                if (number <= coveredSegment) {
+                    Files.deleteIfExists(segmentFile(number).toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the records rebuilding an owner's configuration. The owner's read
+     * lock is held while his entities are read. The records of the mapped
+     * snapshot not built yet are copied as they are, without building the
+     * entities.
+     *
+     * @return the number of records written.
+     */
+    private int writeOwner(final MappedModelSnapshot.Writer writer, final String owner) throws IOException {
+        int count = 0;
+        Lock lock = ConfigurationManager.getLockForOwner(owner).readLock();
+        lock.lock();
+        try {
+            writer.startOwner(owner);
+            MappedModelSnapshot mapped = ConfigurationManager.getMappedSnapshot();
+            // The entities built in the model, the others are copied from the mapped snapshot.
+            List<Entity> entities = new ArrayList<>(ConfigurationManager.getEntityIndexForOwner(owner).getEntities());
+            // Resources first, links need their source and target.
+            for (Entity entity : entities) {
+                if (entity instanceof Resource) {
+                    RecordWriter record = new RecordWriter(OP_SAVE_RESOURCE);
+                    record.writeString(owner);
+                    record.writeString(entity.getId());
+                    record.writeString(getKindId(entity));
+                    record.writeStrings(getMixinIds(entity));
+                    record.writeMap(getAttributes(entity));
+                    writer.writeEntity(entity.getId(), record);
+                    count++;
+                }
+            }
+            if (mapped != null) {
+                count += mapped.copyEntries(owner, false, writer);
+            }
+            for (Entity entity : entities) {
+                if (entity instanceof Link) {
+                    Link link = (Link) entity;
+                    String source = link.getSource() == null ? null : link.getSource().getId();
+                    String target = link.getTarget() == null ? null : link.getTarget().getId();
+                    RecordWriter record = new RecordWriter(OP_SAVE_LINK);
+                    record.writeString(owner);
+                    record.writeString(link.getId());
+                    record.writeString(getKindId(link));
+                    record.writeStrings(getMixinIds(link));
+                    record.writeString(source);
+                    record.writeString(target);
+                    record.writeMap(getAttributes(link));
+                    writer.writeLink(link.getId(), source, target, record);
+                    count++;
+                }
+            }
+            if (mapped != null) {
+                count += mapped.copyEntries(owner, true, writer);
+            }
+            for (Mixin mixin : ConfigurationManager.getConfigurationForOwner(owner).getMixins()) {
+                String mixinId = mixin.getScheme() + mixin.getTerm();
+                String location = ConfigurationManager.getUserMixinLocation(mixinId);
+                if (location != null) {
+                    RecordWriter record = new RecordWriter(OP_ADD_USER_MIXIN);
+                    record.writeString(owner);
+                    record.writeString(mixinId);
+                    record.writeString(location);
+                    writer.writeUserMixin(record);
+                    count++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Load the snapshot and replay the log segments.
+     *
+     * @return the last segment number found.
+     */
+    private long recover() throws IOException {
+        recovering = true;
+        long lastSegment = 0;
+        int count = 0;
+        int mappedCount = 0;
+        boolean upToDate = false;
+        long start = System.currentTimeMillis();
+        try {
+            File snapshotFile = new File(dataDir, SNAPSHOT_FILE);
+            if (snapshotFile.exists()) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16));
+                try {
+                    if (in.readInt() != SNAPSHOT_MAGIC) {
+                        throw new IOException("Unknown snapshot format : " + snapshotFile);
+                    }
+                    int version = in.readInt();
+                    if (version == MappedModelSnapshot.FORMAT_VERSION) {
+                        in.close();
+                        MappedModelSnapshot mappedSnapshot = MappedModelSnapshot.map(snapshotFile);
+                        lastSegment = mappedSnapshot.getCoveredSegment();
+                        ConfigurationManager.attachMappedSnapshot(mappedSnapshot);
+                        for (byte[] payload : mappedSnapshot.getUserMixinRecords()) {
+                            apply(payload);
+                            count++;
+                        }
+                        mappedCount = mappedSnapshot.getRemaining();
+                        upToDate = true;
+                    } else if (version == LOG_FORMAT_VERSION) {
+                        lastSegment = in.readLong();
+                        byte[] payload;
+                        while ((payload = readRecord(in)) != null) {
+                            if (!apply(payload)) {
+                                break;
+                            }
+                            count++;
+                        }
+                    } else {
+                        throw new IOException("Unknown snapshot format : " + snapshotFile);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            for (Long number : listSegments()) {
+                if (number <= lastSegment) {
+                    continue;
+                }
+                int replayed = replaySegment(number);
+                count += replayed;
+                upToDate = upToDate && replayed == 0;
+                lastSegment = number;
+            }
+        } finally {
+            recovering = false;
+        }
+        synchronized (segmentMonitor) {
+            snapshotUpToDate = upToDate;
+        }
+        logger.info("Model recovered, " + mappedCount + " entities mapped and " + count + " records applied in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return lastSegment;
+    }
+
+    private int replaySegment(final long number) throws IOException {
+        File file = segmentFile(number);
+        int count = 0;
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                apply(payload);
+                count++;
+                validLength += 8 + payload.length;
+            }
+        } finally {
+            in.close();
+        }
+        if (validLength < file.length()) {
+            logger.warning("Dropping torn records at the end of " + file.getName());
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(validLength);
+            } finally {
+                raf.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply a record on the model.
+     *
+     * @param payload
+     * @return false on end record.
+     */
+    private boolean apply(final byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String owner;
+        String id;
+        switch (op) {
+            case OP_END:
+                return false;
+            case OP_SAVE_RESOURCE:
+                owner = readString(in);
+                id = readString(in);
+                String kind = readString(in);
+                List<String> mixins = readStrings(in);
+                ConfigurationManager.addResourceToConfiguration(id, kind, mixins, readMap(in), owner);
+                break;
+            case OP_SAVE_LINK:
+                owner = readString(in);
+                id = readString(in);
+                String linkKind = readString(in);
+                List<String> linkMixins = readStrings(in);
+                String src = readString(in);
+                String target = readString(in);
+                ConfigurationManager.addLinkToConfiguration(id, linkKind, linkMixins, src, target, readMap(in),
+                        owner);
+                break;
+            case OP_UPDATE:
+                owner = readString(in);
+                id = readString(in);
+                Entity entity = ConfigurationManager.findEntity(owner, id);
+                if (entity != null) {
+                    ConfigurationManager.updateAttributesToEntity(owner, entity, readMap(in));
+                }
+                break;
+            case OP_DELETE:
+                owner = readString(in);
+                ConfigurationManager.removeOrDissociateFromConfiguration(owner, readString(in));
+                break;
+            case OP_SAVE_MIXIN:
+                owner = readString(in);
+                String mixinId = readString(in);
+                List<String> entityIds = readStrings(in);
+                ConfigurationManager.saveMixinForEntities(owner, mixinId, entityIds, in.readBoolean());
+                break;
+            case OP_ADD_USER_MIXIN:
+                owner = readString(in);
+                id = readString(in);
+                ConfigurationManager.addUserMixinOnConfiguration(id, readString(in), owner);
+                break;
+            case OP_REMOVE_USER_MIXIN:
+                ConfigurationManager.removeUserMixinFromConfiguration(readString(in));
+                break;
+            default:
+                throw new IOException("Unknown journal record type : " + op);
+        }
+        return true;
+    }
+
+    private void append(final RecordWriter record) {
+        List<RecordWriter> records = batchRecords.get();
+        if (records != null) {
+            records.add(record);
+            return;
+        }
+        append(Collections.singletonList(record));
+    }
+
+    private void append(final List<RecordWriter> records) {
+        boolean scheduleSnapshot = false;
+        synchronized (segmentMonitor) {
+            if (segmentOut == null) {
+                return;
+            }
+            try {
+                for (RecordWriter record : records) {
+                    writeRecord(segmentOut, record);
+                }
+                segmentOut.flush();
+                if (syncEachRecord) {
+                    segmentFileOut.getFD().sync();
+                }
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Cannot write journal record : " + ex.getMessage(), ex);
+                return;
+            }
+            recordsSinceSnapshot += records.size();
+            snapshotUpToDate = false;
+            scheduleSnapshot = recordsSinceSnapshot >= snapshotInterval;
+        }
+        if (scheduleSnapshot && snapshotScheduled.compareAndSet(false, true)) {
+            snapshotExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot();
+                    } catch (IOException ex) {
+                        logger.log(Level.SEVERE, "Snapshot failed : " + ex.getMessage(), ex);
+                    } finally {
+                        snapshotScheduled.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private void openSegment(final long number) throws IOException {
+        segmentNumber = number;
+        segmentFileOut = new FileOutputStream(segmentFile(number), true);
+        segmentOut = new DataOutputStream(new BufferedOutputStream(segmentFileOut, 1 << 16));
+    }
+
+    private void closeSegment() {
+        if (segmentOut == null) {
+            return;
+        }
+        try {
+            segmentOut.flush();
+            segmentFileOut.getFD().sync();
+            segmentOut.close();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Cannot close journal segment : " + ex.getMessage(), ex);
+        }
+        segmentOut = null;
+        segmentFileOut = null;
+    }
+
+    private File segmentFile(final long number) {
+        return new File(dataDir, SEGMENT_PREFIX + String.format("%020d", number) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     *
+     * @return the segment numbers found in data directory, sorted.
+     */
+    private List<Long> listSegments() {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = dataDir.list();
+        if (names == null) {
+            return numbers;
+        }
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    numbers.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    logger.warning("Ignoring file " + name + " in data directory");
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Write a framed record.
+     *
+     * @param out
+     * @param record
+     * @return the number of bytes written.
+     */
+    static int writeRecord(final DataOutputStream out, final RecordWriter record) throws IOException {
+        byte[] payload = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        return 8 + payload.length;
+    }
+
+    /**
+     * Read a record.
+     *
+     * @param in
+     * @return the record payload, null at the end of the stream or on a torn
+     * or corrupted record.
+     */
+    static byte[] readRecord(final DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crcValue = in.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != crcValue) {
+                logger.warning("Corrupted journal record found, stopping replay");
+                return null;
+            }
+            return payload;
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    static String readString(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static List<String> readStrings(final DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(Math.max(size, 0));
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    static Map<String, String> readMap(final DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            values.put(key, readString(in));
+        }
+        return values;
+    }
+
+    private static String getKindId(final Entity entity) {
+        if (entity.getKind() == null) {
+            return null;
+        }
+        return entity.getKind().getScheme() + entity.getKind().getTerm();
+    }
+
+    private static List<String> getMixinIds(final Entity entity) {
+        List<String> mixinIds = new ArrayList<>();
+        for (Mixin mixin : entity.getMixins()) {
+            mixinIds.add(mixin.getScheme() + mixin.getTerm());
+        }
+        return mixinIds;
+    }
+
+    private static Map<String, String> getAttributes(final Entity entity) {
+        Map<String, String> attributes = new HashMap<>();
+        for (AttributeState attribute : entity.getAttributes()) {
+            if (attribute.getValue() != null) {
+                attributes.put(attribute.getName(), attribute.getValue());
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Binary encoder of a record payload.
+     */
+    static class RecordWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        RecordWriter(final byte op) {
+            writeByte(op);
+        }
+
+        void writeByte(final byte value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException ex) {
+                // Never thrown by a ByteArrayOutputStream.
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void writeBoolean(final boolean value) {
+            writeByte(value ? (byte) 1 : (byte) 0);
+        }
+
+        void writeInt(final int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void writeString(final String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(data.length);
+            bytes.write(data, 0, data.length);
+        }
+
+        void writeStrings(final List<String> values) {
+            if (values == null) {
+                writeInt(0);
+                return;
+            }
+            writeInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        void writeMap(final Map<String, String> values) {
+            if (values == null) {
+                writeInt(0);
+                return;
+            }
+            writeInt(values.size());
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        byte[] toByteArray() {
+            try {
+                out.flush();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+}
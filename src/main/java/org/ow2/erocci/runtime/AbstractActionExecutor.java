@@ -20,6 +20,7 @@ import java.util.logging.Logger;
 
 import org.occiware.clouddesigner.occi.Entity;
 import org.occiware.clouddesigner.occi.Extension;
+import org.ow2.erocci.model.ConfigurationManager;
 import org.ow2.erocci.model.exception.ExecuteActionException;
 
 /**
@@ -79,6 +80,17 @@ public abstract class AbstractActionExecutor implements IActionExecutor {
     @Override
     public abstract void execute(String actionId, Map<String, String> actionAttributes, Entity entity, final String fromMethod) throws ExecuteActionException;
 
+    /**
+     * By default, the actions of the executor's extension are supported.
+     *
+     * @param actionId (scheme + term)
+     * @return true if the action is defined by the extension.
+     */
+    @Override
+    public boolean isActionSupported(String actionId) {
+        return ConfigurationManager.getActionKindFromExtension(extension, actionId) != null;
+    }
+
     @Override
     public void setExtension(Extension ext) {
         this.extension = ext;
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+
+/**
+ * Action handlers of an executor, registered when the executor is built. A
+ * handler is registered with a full action id (scheme + term), or with a
+ * term alone to handle this term for any scheme.
+ *
+ */
+public class ActionHandlerRegistry {
+
+	/**
+	 * Key : action id or term.
+	 */
+	private final Map<String, ActionHandler> handlers = new HashMap<>();
+
+	/**
+	 * Handler of an action.
+	 */
+	public interface ActionHandler {
+
+		void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException;
+	}
+
+	/**
+	 * Register a handler, to be called only while the executor is built.
+	 *
+	 * @param actionId
+	 *            action id (scheme + term) or term.
+	 * @param handler
+	 */
+	public void register(final String actionId, final ActionHandler handler) {
+		handlers.put(actionId.intern(), handler);
+	}
+
+	/**
+	 * Get the handler of an action, registered with the action id or else
+	 * with the action term.
+	 *
+	 * @param actionId
+	 *            (scheme + term)
+	 * @return the handler, null if the action is not supported.
+	 */
+	public ActionHandler getHandler(final String actionId) {
+		if (actionId == null) {
+			return null;
+		}
+		ActionHandler handler = handlers.get(actionId);
+		if (handler == null) {
+			int index = actionId.lastIndexOf('#');
+			if (index >= 0) {
+				handler = handlers.get(actionId.substring(index + 1));
+			}
+		}
+		return handler;
+	}
+
+	/**
+	 *
+	 * @param actionId
+	 * @return true if a handler is registered for this action.
+	 */
+	public boolean isSupported(final String actionId) {
+		return getHandler(actionId) != null;
+	}
+
+}
@@ -64,11 +64,24 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
     private static final String RESTART = "http://schemas.ogf.org/occi/infrastructure/compute/action#restart";
     private static final String SUSPEND = "http://schemas.ogf.org/occi/infrastructure/compute/action#suspend";
 
-    private Map<String,Machine> instances;
+    /**
+     * Provider machine handles, by entity id.
+     */
+    private final MachineHandleCache machines = new MachineHandleCache(new MachineHandleCache.MachineLoader() {
+        @Override
+        public Machine load(Entity entity) {
+            return attachMachine(entity);
+        }
+    });
+
+    /**
+     * Handlers of the machine actions, by action id.
+     */
+    private final ActionHandlerRegistry actionHandlers = new ActionHandlerRegistry();
 
 	private CloudActionExecutor() {
         super();
-        instances = new HashMap<>();
+        registerActionHandlers();
         //ExecutableCloudFactory.init();
         logger.info("default conctructor");
         entityTypeMap = new HashMap<>();
@@ -76,7 +89,7 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
     
     public CloudActionExecutor(Extension extension) {
 		super(extension);
-        instances = new HashMap<>();
+        registerActionHandlers();
         logger.info("extension constructor");
         entityTypeMap = new HashMap<>();
 	}
@@ -85,6 +98,20 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
 	public void occiPostCreate(Entity entity) throws ExecuteActionException {
 
         logger.info("post create");
+        Machine machine = attachMachine(entity);
+        if (machine != null) {
+            machines.put(entity.getId(), machine);
+            logger.info("machine attributes set");
+        }
+	}
+
+    /**
+     * Create the provider machine of an entity, from his attributes.
+     *
+     * @param entity
+     * @return the machine, null if the entity kind is not supported.
+     */
+    private Machine attachMachine(Entity entity) {
         ExecutableCloudFactory.init();
         logger.info("init works");
         CloudFactory factory = CloudPackage.eINSTANCE.getCloudFactory();
@@ -115,9 +142,7 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
                 try{
                     Machine_OpenStack machine = factory.eINSTANCE.createMachine_OpenStack();
                     logger.info("machine openstack created");
-                    machine = setOpenstackMachineAttributes(machine,entity);
-                    instances.put(entity.getId(),machine);
-                    logger.info("machine attributes set");
+                    return setOpenstackMachineAttributes(machine,entity);
                 }catch(Exception e){
                     logger.info("EXCEPTION");
                     logger.info(e.toString());
@@ -126,15 +151,13 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
             default:
                 logger.info("no matching term found");
         }
+        return null;
 	}
 
 	@Override
 	public void occiPreDelete(Entity entity) throws ExecuteActionException {
 		logger.info("pre delete");
-        if(instances.keySet().contains(entity.getId())){
-            instances.remove(entity.getId());
-        }
-        else{
+        if(machines.remove(entity.getId()) == null){
             logger.info("The instance"+entity.getId()+"was not found");
         }
 	}
@@ -142,7 +165,8 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
 	@Override
 	public void occiPostUpdate(Entity entity) throws ExecuteActionException {
 		logger.info("post update");
-        if(instances.keySet().contains(entity.getId())){
+        Machine cached = machines.peek(entity.getId());
+        if(cached != null){
             try{
                 switch (entity.getKind().getTerm()) {
                     case EC2_TERM:
@@ -167,9 +191,9 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
                         logger.info("gce is not implemented yet");
                         break;
                     case OPENSTACK_TERM:
-                            Machine_OpenStack machine = (Machine_OpenStack) instances.get(entity.getId());
+                            Machine_OpenStack machine = (Machine_OpenStack) cached;
                             Machine updated_machine = setOpenstackMachineAttributes(machine,entity);
-                            instances.put(entity.getId(),updated_machine);
+                            machines.put(entity.getId(),updated_machine);
                             logger.info("machine attributes updated");
                         break;
                     default:
@@ -181,6 +205,7 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
             }
         }
         else{
+            // Attached with the new attributes on the next action.
             logger.info("The instance"+entity.getId()+"was not found");
         }
 	}
@@ -214,7 +239,6 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
 	public void execute(String actionId, Map<String, String> actionAttributes, Entity entity, String fromMethod)
 			throws ExecuteActionException {
 
-        Machine machine = instances.get(entity.getId());
         logger.info("execute with attributes");
 
         logger.info("displaying of the action attributes");
@@ -224,48 +248,84 @@ public class CloudActionExecutor extends AbstractActionExecutor implements IActi
         }
         logger.info("end of the actionattributes");
 
-        String method = null;
-        if(actionAttributes.keySet().contains("method")){
-            method = actionAttributes.get(method);
+        ActionHandlerRegistry.ActionHandler handler = actionHandlers.getHandler(actionId);
+        if (handler == null) {
+            logger.info("actionId = " + actionId + " is not supported");
+            return;
         }
-
         try {
-
-            switch (actionId) {
-                case START:
-                    logger.info("actionId = " + actionId);
-                    try {
-                        machine.start();
-                        logger.info("machine started");
-                    } catch (Exception e) {
-                        logger.info("EXCEPTION");
-                        logger.info(e.toString());
-                    }
-                    break;
-                case STOP:
-                    logger.info(STOP + "in development");
-                    if (!(method == null || method.equals("undefined"))) {
-                        machine.stop(getStopMethod(method));
-                    }
-                    break;
-                case RESTART:
-                    logger.info(RESTART + "in development");
-                    if (!(method == null || method.equals("undefined"))) {
-                        machine.restart(getRestartMethod(method));
-                    }
-                    break;
-                case SUSPEND:
-                    logger.info(SUSPEND + "in development");
-                    if (!(method == null || method.equals("undefined"))) {
-                        machine.suspend(getSuspendMethod(method));
-                    }
-                    break;
-            }
+            handler.execute(entity, actionAttributes);
+        }catch(ExecuteActionException e){
+            throw e;
         }catch(Exception e){
             logger.info("ACTION ON MACHINE TRHOW EXCEPTION :" + e.getMessage());
         }
 	}
 
+    /**
+     *
+     * @return the provider machine handles.
+     */
+    public MachineHandleCache getMachineCache() {
+        return machines;
+    }
+
+    @Override
+    public boolean isActionSupported(String actionId) {
+        return actionHandlers.isSupported(actionId);
+    }
+
+    /**
+     * Register the handlers of the machine actions : start, stop, restart
+     * and suspend (with the "method" attribute).
+     */
+    private void registerActionHandlers() {
+        actionHandlers.register(START, new ActionHandlerRegistry.ActionHandler() {
+            @Override
+            public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+                logger.info("actionId = " + START);
+                Machine machine = machines.get(entity);
+                try {
+                    machine.start();
+                    logger.info("machine started");
+                } catch (Exception e) {
+                    logger.info("EXCEPTION");
+                    logger.info(e.toString());
+                }
+            }
+        });
+        actionHandlers.register(STOP, new ActionHandlerRegistry.ActionHandler() {
+            @Override
+            public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+                logger.info(STOP + "in development");
+                String method = actionAttributes.get("method");
+                if (!(method == null || method.equals("undefined"))) {
+                    machines.get(entity).stop(getStopMethod(method));
+                }
+            }
+        });
+        actionHandlers.register(RESTART, new ActionHandlerRegistry.ActionHandler() {
+            @Override
+            public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+                logger.info(RESTART + "in development");
+                String method = actionAttributes.get("method");
+                if (!(method == null || method.equals("undefined"))) {
+                    machines.get(entity).restart(getRestartMethod(method));
+                }
+            }
+        });
+        actionHandlers.register(SUSPEND, new ActionHandlerRegistry.ActionHandler() {
+            @Override
+            public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+                logger.info(SUSPEND + "in development");
+                String method = actionAttributes.get("method");
+                if (!(method == null || method.equals("undefined"))) {
+                    machines.get(entity).suspend(getSuspendMethod(method));
+                }
+            }
+        });
+    }
+
 
     /**
      * Give the right object according to method
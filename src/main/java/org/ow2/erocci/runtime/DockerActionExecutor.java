@@ -18,6 +18,7 @@ package org.ow2.erocci.runtime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 import org.eclipse.emf.common.util.EList;
@@ -27,7 +28,7 @@ import org.occiware.clouddesigner.occi.AttributeState;
 import org.occiware.clouddesigner.occi.Configuration;
 import org.occiware.clouddesigner.occi.Entity;
 import org.occiware.clouddesigner.occi.Extension;
-import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.clouddesigner.occi.Link;
 import org.occiware.clouddesigner.occi.docker.Container;
 import org.occiware.clouddesigner.occi.docker.Contains;
 import org.occiware.clouddesigner.occi.docker.Machine;
@@ -84,6 +85,16 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 
 	public final Map<String, Integer> entityTypeMap;
 
+	/**
+	 * Handlers of the actions called from ActionImpl, by action term.
+	 */
+	private final ActionHandlerRegistry actionHandlers = new ActionHandlerRegistry();
+
+	/**
+	 * Executable models of the machines and containers, by entity id.
+	 */
+	private final DockerModelCache models = new DockerModelCache();
+
 	public DockerActionExecutor() {
 		entityTypeMap = new HashMap<String, Integer>();
 		entityTypeMap.put(CONTAINER_NAME, CONTAINER_TYPE);
@@ -101,6 +112,7 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 		entityTypeMap.put(VMWARE_FUSION_NAME, VMWARE_FUSION_TYPE);
 		entityTypeMap.put(VMWARE_CLOUD_AIR_NAME, VMWARE_CLOUD_AIR_TYPE);
 		entityTypeMap.put(VMWARE_VSPHERE_NAME, VMWARE_VSPHERE_TYPE);
+		registerActionHandlers();
 	}
 
 	public DockerActionExecutor(Extension extension) {
@@ -121,6 +133,7 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 		entityTypeMap.put(VMWARE_FUSION_NAME, VMWARE_FUSION_TYPE);
 		entityTypeMap.put(VMWARE_CLOUD_AIR_NAME, VMWARE_CLOUD_AIR_TYPE);
 		entityTypeMap.put(VMWARE_VSPHERE_NAME, VMWARE_VSPHERE_TYPE);
+		registerActionHandlers();
 	}
 
 	@Override
@@ -130,11 +143,17 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 
 	@Override
 	public void occiPreDelete(Entity entity) throws ExecuteActionException {
-		execute("kill", entity, FROM_DELETE);
+		try {
+			execute("kill", entity, FROM_DELETE);
+		} finally {
+			models.invalidate(entity.getId());
+		}
 	}
 
 	@Override
 	public void occiPostUpdate(Entity entity) throws ExecuteActionException {
+		// The executable model was built from the previous attributes.
+		models.invalidate(entity.getId());
 		execute("update", entity, FROM_UPDATE);
 
 	}
@@ -170,24 +189,11 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	public void execute(String actionId, Map<String, String> actionAttributes, Entity entity, String fromMethod)
 			throws ExecuteActionException {
 
-		String actionTerm = null;
-
 		// Called from ActionImpl interface DBUS Object.
 		if (actionId == null) {
 			throw new ExecuteActionException("You must provide an action kind for entity : " + entity.getId());
 		}
 
-		// Get the action Term.
-		if (actionId.contains("#")) {
-			// This is a kind action.
-			actionTerm = actionId.split("#")[1];
-
-		} else {
-			// This is an actionTerm only.
-			actionTerm = actionId;
-
-		}
-
 		if (entity == null) {
 			throw new ExecuteActionException("You must provide an entity to execute this action : " + actionId);
 		}
@@ -283,51 +289,12 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 			// Ref: Clouddesigner ==> package
 			// docker.design.services.DockerServices
 
-			// Check if we have special actions like "synchronize" or "import".
-			if (actionId.contains("import")) {
-
-				Set<String> owners = ConfigurationManager.getAllOwner();
-				for (String owner : owners) {
-					this.importModel(ConfigurationManager.getConfigurationForOwner(owner));
-				}
-				return;
-			}
-			if (actionId.contains("synchronize")) {
-				this.synchronize(entity);
-				return;
-			}
-			if (actionId.contains("startAll")) {
-				this.startAll(entity);
-				return;
-			}
-
-			// Other cases.
-			switch (actionTerm) {
-			case "start":
-				this.start(entity);
-				break;
-			case "stop":
-				this.stop(entity);
-				break;
-			case "pause":
-				this.pause(entity);
-				break;
-			case "unpause":
-				this.unpause(entity);
-				break;
-			case "kill":
-				this.kill(entity);
-				break;
-			case "create":
-				this.create(entity);
-				break;
-			case "restart":
-				this.restart(entity);
-				break;
-			default:
+			ActionHandlerRegistry.ActionHandler handler = actionHandlers.getHandler(actionId);
+			if (handler == null) {
 				throw new ExecuteActionException(
 						"the action : " + actionId + " is not supported at this time, please report it on our github.");
 			}
+			handler.execute(entity, actionAttributes);
 
 			break;
 
@@ -335,44 +302,132 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 
 	}
 
+	@Override
+	public boolean isActionSupported(String actionId) {
+		return actionHandlers.isSupported(actionId);
+	}
+
+	/**
+	 *
+	 * @return the executable models of the machines and containers.
+	 */
+	public DockerModelCache getModelCache() {
+		return models;
+	}
+
+	/**
+	 * Register the handlers of the actions, by term : the special actions
+	 * (import, synchronize and startAll) and the machine and container
+	 * actions.
+	 */
+	private void registerActionHandlers() {
+		actionHandlers.register("import", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				importAll();
+			}
+		});
+		actionHandlers.register("synchronize", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				synchronize(entity);
+			}
+		});
+		actionHandlers.register("startAll", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				startAll(entity);
+			}
+		});
+		actionHandlers.register("start", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				start(entity);
+			}
+		});
+		actionHandlers.register("stop", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				stop(entity);
+			}
+		});
+		actionHandlers.register("pause", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				pause(entity);
+			}
+		});
+		actionHandlers.register("unpause", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				unpause(entity);
+			}
+		});
+		actionHandlers.register("kill", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				kill(entity);
+			}
+		});
+		actionHandlers.register("create", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				create(entity);
+			}
+		});
+		actionHandlers.register("restart", new ActionHandlerRegistry.ActionHandler() {
+			@Override
+			public void execute(Entity entity, Map<String, String> actionAttributes) throws ExecuteActionException {
+				restart(entity);
+			}
+		});
+	}
+
+	/**
+	 * Import the configuration models of all the owners from real.
+	 *
+	 * @throws ExecuteActionException
+	 */
+	private void importAll() throws ExecuteActionException {
+		// The imported entities replace the modelled ones.
+		models.clear();
+		Set<String> owners = ConfigurationManager.getAllOwner();
+		for (String owner : owners) {
+			Lock lock = ConfigurationManager.getLockForOwner(owner).writeLock();
+			lock.lock();
+			try {
+				this.importModel(ConfigurationManager.getConfigurationForOwner(owner));
+				// Imported entities are not referenced in the owner's index.
+				ConfigurationManager.refreshEntityIndex(owner);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
 	/**
 	 * Start a machine or a container.
 	 *
 	 * @param eo
+	 * @throws ExecuteActionException
 	 */
 	private void start(final EObject eo) throws ExecuteActionException {
-		try {
-			if (eo instanceof Machine) {
-				if ((eo instanceof Machine)) {
-					Machine machine = ((Machine) eo);
-					final ExecutableDockerModel machineExec = new ExecutableDockerModel(machine);
-					Thread threadExecutor = new Thread(new Runnable() {
-
-						@Override
-						public void run() {
-							machineExec.start();
-
-						}
-					});
-					threadExecutor.start();
-					// machineExec.start();
-
-				} else if ((eo instanceof Container)) {
-					Container container = ((Container) eo);
-					final ExecutableDockerModel containerExec = new ExecutableDockerModel(container);
-					Thread threadExecutor = new Thread(new Runnable() {
-
-						@Override
-						public void run() {
-							containerExec.container.start();
-
-						}
-					});
-					threadExecutor.start();
+		if (eo instanceof Machine) {
+			final Machine machine = ((Machine) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(machine).start();
 				}
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+			});
+		} else if (eo instanceof Container) {
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.start();
+				}
+			});
 		}
 	}
 
@@ -383,14 +438,14 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void pause(final EObject eo) throws ExecuteActionException {
-		try {
-			if (eo instanceof Container) {
-				Container container = ((Container) eo);
-				final ExecutableDockerModel containerExec = new ExecutableDockerModel(container);
-				containerExec.container.pause();
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+		if (eo instanceof Container) {
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.pause();
+				}
+			});
 		}
 	}
 
@@ -401,14 +456,14 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void unpause(final EObject eo) throws ExecuteActionException {
-		try {
-			if (eo instanceof Container) {
-				Container container = ((Container) eo);
-				final ExecutableDockerModel containerExec = new ExecutableDockerModel(container);
-				containerExec.container.unpause();
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+		if (eo instanceof Container) {
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.unpause();
+				}
+			});
 		}
 	}
 
@@ -419,14 +474,14 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void create(final EObject eo) throws ExecuteActionException {
-		try {
-			if (eo instanceof Container) {
-				Container container = ((Container) eo);
-				final ExecutableDockerModel containerExec = new ExecutableDockerModel(container);
-				containerExec.container.create();
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+		if (eo instanceof Container) {
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.create();
+				}
+			});
 		}
 	}
 
@@ -437,14 +492,14 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void kill(final EObject eo) throws ExecuteActionException {
-		try {
-			if (eo instanceof Container) {
-				Container container = ((Container) eo);
-				final ExecutableDockerModel containerExec = new ExecutableDockerModel(container);
-				containerExec.container.kill("KILL");
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+		if (eo instanceof Container) {
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.kill("KILL");
+				}
+			});
 		}
 	}
 
@@ -457,31 +512,21 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 */
 	private void startAll(final EObject eo) throws ExecuteActionException {
 		if ((eo instanceof Machine)) {
-			Machine machine = ((Machine) eo);
-			final ExecutableDockerModel main = new ExecutableDockerModel(machine);
-			Thread threadExecutor = new Thread(new Runnable() {
-
+			final Machine machine = ((Machine) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
 				@Override
 				public void run() {
-					main.startAll();
-
+					models.get(machine).startAll();
 				}
 			});
-			threadExecutor.start();
-			// main.startAll();
 		} else if ((eo instanceof Container)) {
-			Container container = ((Container) eo);
-			final ExecutableDockerModel main_1 = new ExecutableDockerModel(container);
-			Thread threadExecutor = new Thread(new Runnable() {
-
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
 				@Override
 				public void run() {
-					main_1.startAll();
-
+					models.get(container).startAll();
 				}
 			});
-			threadExecutor.start();
-			// main_1.container.restart(RestartMethod.GRACEFUL);
 		}
 	}
 
@@ -493,13 +538,21 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 */
 	private void stop(final EObject eo) throws ExecuteActionException {
 		if ((eo instanceof Machine)) {
-			Machine machine = ((Machine) eo);
-			final ExecutableDockerModel main = new ExecutableDockerModel(machine);
-			main.stop();
+			final Machine machine = ((Machine) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(machine).stop();
+				}
+			});
 		} else if ((eo instanceof Container)) {
-			Container container = ((Container) eo);
-			final ExecutableDockerModel main_1 = new ExecutableDockerModel(container);
-			main_1.container.stop(StopMethod.GRACEFUL);
+			final Container container = ((Container) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(container).container.stop(StopMethod.GRACEFUL);
+				}
+			});
 		}
 	}
 
@@ -510,14 +563,14 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void restart(final EObject eo) throws ExecuteActionException {
-		try {
-			if ((eo instanceof Machine)) {
-				Machine machine = ((Machine) eo);
-				final ExecutableDockerModel main = new ExecutableDockerModel(machine);
-				main.restart();
-			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
+		if ((eo instanceof Machine)) {
+			final Machine machine = ((Machine) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(machine).restart();
+				}
+			});
 		}
 	}
 
@@ -564,15 +617,48 @@ public class DockerActionExecutor extends AbstractActionExecutor implements IAct
 	 * @throws ExecuteActionException
 	 */
 	private void synchronize(final EObject eo) throws ExecuteActionException {
-		try {
-			if ((eo instanceof Machine)) {
-				Machine machine = ((Machine) eo);
-				final ExecutableDockerModel main = new ExecutableDockerModel(machine);
-				main.synchronize();
+		if ((eo instanceof Machine)) {
+			final Machine machine = ((Machine) eo);
+			DockerWorkerPool.getInstance().invoke(getMachineKey(eo), new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() {
+					models.get(machine).synchronize();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Get the key serializing the docker commands of a machine and of his
+	 * containers. The machine of a container is found with the links
+	 * targeting it in his owner's index, under the owner's read lock.
+	 *
+	 * @param eo
+	 *            a machine or a container.
+	 * @return the id of the machine, or of the container if it is not
+	 *         contained by a machine.
+	 */
+	private String getMachineKey(final EObject eo) {
+		String id = ((Entity) eo).getId();
+		if (!(eo instanceof Container)) {
+			return id;
+		}
+		for (String owner : ConfigurationManager.findOwnersForEntityId(id)) {
+			// The Contains link may not be built yet.
+			ConfigurationManager.materializeMappedLinks(owner, id);
+			Lock lock = ConfigurationManager.getLockForOwner(owner).readLock();
+			lock.lock();
+			try {
+				for (Link link : ConfigurationManager.getEntityIndexForOwner(owner).getLinksToTarget(id)) {
+					if (link instanceof Contains && link.getSource() instanceof Machine) {
+						return link.getSource().getId();
+					}
+				}
+			} finally {
+				lock.unlock();
 			}
-		} catch (Exception ex) {
-			throw new ExecuteActionException(ex);
 		}
+		return id;
 	}
 
 	public static IActionExecutor getInstance() {
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.docker.Container;
+import org.occiware.clouddesigner.occi.docker.Machine;
+import org.occiware.clouddesigner.occi.docker.connector.ExecutableDockerModel;
+
+/**
+ * Executable docker models of DockerActionExecutor, by entity id. A model
+ * keeps the docker client of his machine, so the commands on the same
+ * entity skip the client setup. A model is used only for the entity object
+ * it was built from, and is removed when the entity is updated or deleted.
+ *
+ * Models are used on the docker worker threads, one command at a time for a
+ * machine and his containers (see DockerWorkerPool). At most
+ * erocci.docker.model.cache.size models are kept (default 1000), the least
+ * recently used are evicted.
+ *
+ */
+public class DockerModelCache {
+
+	public static final String SIZE_PROPERTY = "erocci.docker.model.cache.size";
+
+	public static final String METRIC_SIZE = "docker.models.cached";
+	public static final String METRIC_HITS = "docker.models.hits";
+	public static final String METRIC_MISSES = "docker.models.misses";
+
+	private final int maxSize;
+
+	/**
+	 * Key : entity id, in access order.
+	 */
+	private final LinkedHashMap<String, CachedModel> models;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public DockerModelCache() {
+		this(Integer.getInteger(SIZE_PROPERTY, 1000));
+	}
+
+	/**
+	 *
+	 * @param maxSize
+	 *            maximum number of models, 0 to disable the cache.
+	 */
+	public DockerModelCache(final int maxSize) {
+		this.maxSize = Math.max(maxSize, 0);
+		this.models = new LinkedHashMap<String, CachedModel>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedModel> eldest) {
+				return size() > DockerModelCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param machine
+	 * @return the executable model of a machine.
+	 */
+	public ExecutableDockerModel get(final Machine machine) {
+		ExecutableDockerModel model = getCached(machine);
+		if (model == null) {
+			model = new ExecutableDockerModel(machine);
+			put(machine, model);
+		}
+		return model;
+	}
+
+	/**
+	 *
+	 * @param container
+	 * @return the executable model of a container.
+	 */
+	public ExecutableDockerModel get(final Container container) {
+		ExecutableDockerModel model = getCached(container);
+		if (model == null) {
+			model = new ExecutableDockerModel(container);
+			put(container, model);
+		}
+		return model;
+	}
+
+	/**
+	 * Remove the model of an entity (updated or deleted).
+	 *
+	 * @param entityId
+	 */
+	public void invalidate(final String entityId) {
+		synchronized (models) {
+			models.remove(entityId);
+		}
+	}
+
+	/**
+	 * Remove all the models.
+	 */
+	public void clear() {
+		synchronized (models) {
+			models.clear();
+		}
+	}
+
+	/**
+	 *
+	 * @return the cache metrics, by name.
+	 */
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		synchronized (models) {
+			metrics.put(METRIC_SIZE, (long) models.size());
+		}
+		metrics.put(METRIC_HITS, hits.get());
+		metrics.put(METRIC_MISSES, misses.get());
+		return metrics;
+	}
+
+	private ExecutableDockerModel getCached(final Entity entity) {
+		synchronized (models) {
+			CachedModel cached = models.get(entity.getId());
+			if (cached != null && cached.entity == entity) {
+				hits.incrementAndGet();
+				return cached.model;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private void put(final Entity entity, final ExecutableDockerModel model) {
+		if (maxSize == 0) {
+			return;
+		}
+		synchronized (models) {
+			models.put(entity.getId(), new CachedModel(entity, model));
+		}
+	}
+
+	private static class CachedModel {
+
+		private final Entity entity;
+		private final ExecutableDockerModel model;
+
+		CachedModel(final Entity entity, final ExecutableDockerModel model) {
+			this.entity = entity;
+			this.model = model;
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.runtime;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.ow2.erocci.model.exception.ExecuteActionException;
+
+/**
+ * Worker threads running the docker commands (docker-machine and docker
+ * calls) of DockerActionExecutor.
+ *
+ * Tasks are queued by key (the machine id), the tasks of a key run one at a
+ * time in submission order, the tasks of different keys run in parallel. At
+ * most erocci.docker.threads tasks run at the same time (default 4) and at
+ * most erocci.docker.queue.size tasks wait (default 64). When the queue is
+ * full, the caller waits up to erocci.docker.queue.timeout milliseconds
+ * (default 30000) for a place, then the task is rejected.
+ *
+ */
+public final class DockerWorkerPool {
+
+	public static final String THREADS_PROPERTY = "erocci.docker.threads";
+	public static final String QUEUE_SIZE_PROPERTY = "erocci.docker.queue.size";
+	public static final String QUEUE_TIMEOUT_PROPERTY = "erocci.docker.queue.timeout";
+
+	public static final String METRIC_QUEUED = "docker.queued";
+	public static final String METRIC_IN_FLIGHT = "docker.inflight";
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	private final ExecutorService executor;
+	private final long queueTimeout;
+
+	/**
+	 * Places for the queued and running tasks.
+	 */
+	private final Semaphore places;
+
+	/**
+	 * Key : task key, Value : tasks waiting for the running task of this key.
+	 * A key is present while one of his tasks is running.
+	 */
+	private final Map<String, ArrayDeque<Runnable>> pendingByKey = new HashMap<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * Set on worker threads, a task waiting for another task would block a
+	 * worker (and his key).
+	 */
+	private static final ThreadLocal<Boolean> onWorkerThread = new ThreadLocal<>();
+
+	/**
+	 * A docker command.
+	 */
+	public interface DockerTask {
+
+		void run() throws Exception;
+	}
+
+	public DockerWorkerPool() {
+		this(Integer.getInteger(THREADS_PROPERTY, 4), Integer.getInteger(QUEUE_SIZE_PROPERTY, 64),
+				Long.getLong(QUEUE_TIMEOUT_PROPERTY, 30000L));
+	}
+
+	/**
+	 *
+	 * @param threads
+	 *            maximum number of running tasks.
+	 * @param queueSize
+	 *            maximum number of waiting tasks.
+	 * @param queueTimeout
+	 *            time in milliseconds to wait for a place in the queue.
+	 */
+	public DockerWorkerPool(final int threads, final int queueSize, final long queueTimeout) {
+		final int threadCount = Math.max(threads, 1);
+		this.places = new Semaphore(threadCount + Math.max(queueSize, 0));
+		this.queueTimeout = Math.max(queueTimeout, 0);
+		this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "erocci-docker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queue a task and wait for his end. On a worker thread, the task is run
+	 * directly.
+	 *
+	 * @param key
+	 *            the machine id.
+	 * @param task
+	 * @throws ExecuteActionException
+	 *             if the queue is full or the task has failed.
+	 */
+	public void invoke(final String key, final DockerTask task) throws ExecuteActionException {
+		if (Boolean.TRUE.equals(onWorkerThread.get())) {
+			try {
+				task.run();
+			} catch (ExecuteActionException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				throw new ExecuteActionException(ex);
+			}
+			return;
+		}
+		acquirePlace(key);
+		FutureTask<Void> future = new FutureTask<>(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				task.run();
+				return null;
+			}
+		});
+		enqueue(key, future);
+		try {
+			future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ExecuteActionException("Interrupted while waiting for docker task on " + key, ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof ExecuteActionException) {
+				throw (ExecuteActionException) cause;
+			}
+			throw new ExecuteActionException(cause);
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of tasks waiting to run.
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 *
+	 * @return the number of running tasks.
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 *
+	 * @return the pool metrics, by name.
+	 */
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		metrics.put(METRIC_QUEUED, (long) queued.get());
+		metrics.put(METRIC_IN_FLIGHT, (long) inFlight.get());
+		return metrics;
+	}
+
+	private void acquirePlace(final String key) throws ExecuteActionException {
+		boolean acquired;
+		try {
+			acquired = places.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ExecuteActionException("Interrupted while waiting for the docker queue", ex);
+		}
+		if (!acquired) {
+			throw new ExecuteActionException("Docker queue is full, task on " + key + " rejected");
+		}
+		queued.incrementAndGet();
+	}
+
+	/**
+	 * Run a task after the previous tasks of his key.
+	 *
+	 * @param key
+	 * @param task
+	 */
+	private void enqueue(final String key, final Runnable task) {
+		synchronized (pendingByKey) {
+			ArrayDeque<Runnable> pending = pendingByKey.get(key);
+			if (pending != null) {
+				pending.add(task);
+				return;
+			}
+			pendingByKey.put(key, new ArrayDeque<Runnable>());
+		}
+		execute(key, task);
+	}
+
+	private void execute(final String key, final Runnable task) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				queued.decrementAndGet();
+				inFlight.incrementAndGet();
+				onWorkerThread.set(Boolean.TRUE);
+				try {
+					task.run();
+				} finally {
+					onWorkerThread.remove();
+					inFlight.decrementAndGet();
+					places.release();
+					runNext(key);
+				}
+			}
+		});
+	}
+
+	private void runNext(final String key) {
+		Runnable next;
+		synchronized (pendingByKey) {
+			ArrayDeque<Runnable> pending = pendingByKey.get(key);
+			next = pending.poll();
+			if (next == null) {
+				pendingByKey.remove(key);
+			}
+		}
+		if (next != null) {
+			execute(key, next);
+		}
+	}
+
+	public static DockerWorkerPool getInstance() {
+		return DockerWorkerPoolHolder.INSTANCE;
+	}
+
+	private static class DockerWorkerPoolHolder {
+
+		private final static DockerWorkerPool INSTANCE = new DockerWorkerPool();
+	}
+
+}
@@ -61,6 +61,14 @@ public interface IActionExecutor {
 	 * @throws ExecuteActionException
 	 */
 	public void execute(String actionId, Map<String, String> actionAttributes, Entity entity, final String fromMethod) throws ExecuteActionException;
+
+	/**
+	 * Check if an action can be executed by this executor, unknown actions
+	 * are rejected before calling execute.
+	 * @param actionId (scheme + term)
+	 * @return true if the action is supported.
+	 */
+	public boolean isActionSupported(String actionId);
     
     public void setExtension(Extension ext);
     public Extension getExtension();
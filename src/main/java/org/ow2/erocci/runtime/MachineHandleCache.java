@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.cloud.Machine;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+
+/**
+ * Provider machine handles of CloudActionExecutor, by entity id. A handle
+ * keeps his provider session, so the actions on the same machine reuse it.
+ * A missing handle (evicted, or not created since the backend has started)
+ * is attached again from the entity attributes on first use.
+ *
+ * At most erocci.cloud.machine.cache.size handles are kept (default 1000),
+ * the least recently used are evicted.
+ *
+ */
+public class MachineHandleCache {
+
+	public static final String SIZE_PROPERTY = "erocci.cloud.machine.cache.size";
+
+	public static final String METRIC_SIZE = "cloud.machines.cached";
+	public static final String METRIC_HITS = "cloud.machines.hits";
+	public static final String METRIC_MISSES = "cloud.machines.misses";
+
+	private final MachineLoader loader;
+
+	private final int maxSize;
+
+	/**
+	 * Key : entity id, in access order.
+	 */
+	private final LinkedHashMap<String, Machine> machines;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Attach a provider machine to an entity.
+	 */
+	public interface MachineLoader {
+
+		/**
+		 *
+		 * @param entity
+		 * @return the machine, null if the entity kind has no provider
+		 *         machine.
+		 */
+		Machine load(Entity entity);
+	}
+
+	public MachineHandleCache(final MachineLoader loader) {
+		this(loader, Integer.getInteger(SIZE_PROPERTY, 1000));
+	}
+
+	/**
+	 *
+	 * @param loader
+	 * @param maxSize
+	 *            maximum number of handles.
+	 */
+	public MachineHandleCache(final MachineLoader loader, final int maxSize) {
+		this.loader = loader;
+		this.maxSize = Math.max(maxSize, 1);
+		this.machines = new LinkedHashMap<String, Machine>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Machine> eldest) {
+				return size() > MachineHandleCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get the handle of an entity, attached if it is not cached.
+	 *
+	 * @param entity
+	 * @return the machine handle.
+	 * @throws ExecuteActionException
+	 *             if no machine can be attached to the entity.
+	 */
+	public Machine get(final Entity entity) throws ExecuteActionException {
+		synchronized (machines) {
+			Machine machine = machines.get(entity.getId());
+			if (machine != null) {
+				hits.incrementAndGet();
+				return machine;
+			}
+		}
+		misses.incrementAndGet();
+		Machine machine = loader.load(entity);
+		if (machine == null) {
+			throw new ExecuteActionException("No provider machine for entity : " + entity.getId());
+		}
+		synchronized (machines) {
+			// Keep the handle attached by a concurrent call, if any.
+			Machine attached = machines.get(entity.getId());
+			if (attached != null) {
+				return attached;
+			}
+			machines.put(entity.getId(), machine);
+		}
+		return machine;
+	}
+
+	/**
+	 * Set the handle of an entity.
+	 *
+	 * @param entityId
+	 * @param machine
+	 */
+	public void put(final String entityId, final Machine machine) {
+		synchronized (machines) {
+			machines.put(entityId, machine);
+		}
+	}
+
+	/**
+	 *
+	 * @param entityId
+	 * @return the cached handle, null if none (no attachment is done).
+	 */
+	public Machine peek(final String entityId) {
+		synchronized (machines) {
+			return machines.get(entityId);
+		}
+	}
+
+	/**
+	 * Evict the handle of an entity.
+	 *
+	 * @param entityId
+	 * @return the evicted handle, null if none.
+	 */
+	public Machine remove(final String entityId) {
+		synchronized (machines) {
+			return machines.remove(entityId);
+		}
+	}
+
+	/**
+	 *
+	 * @return the cache metrics, by name.
+	 */
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		synchronized (machines) {
+			metrics.put(METRIC_SIZE, (long) machines.size());
+		}
+		metrics.put(METRIC_HITS, hits.get());
+		metrics.put(METRIC_MISSES, misses.get());
+		return metrics;
+	}
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.ow2.erocci.backend.impl.ActionJobManager;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+
+public class ActionJobManagerTest {
+
+	@Test
+	public void testTableBound() throws Exception {
+		ActionJobManager manager = new ActionJobManager(1, 2, 0);
+		final List<ActionJobManager.ActionJob> completed = Collections
+				.synchronizedList(new ArrayList<ActionJobManager.ActionJob>());
+		manager.addListener(new ActionJobManager.ActionJobListener() {
+			@Override
+			public void jobCompleted(ActionJobManager.ActionJob job) {
+				completed.add(job);
+			}
+		});
+		final CountDownLatch release = new CountDownLatch(1);
+		ActionJobManager.ActionTask blocking = new ActionJobManager.ActionTask() {
+			@Override
+			public void run() throws ExecuteActionException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					throw new ExecuteActionException(ex);
+				}
+			}
+		};
+		// One job runs, the other one waits for the job thread.
+		String running = manager.submit("vm1", "start", blocking);
+		String pending = manager.submit("vm2", "start", blocking);
+
+		// The table is full of unfinished jobs.
+		String rejected = manager.submit("vm3", "start", blocking);
+		assertNotNull(rejected);
+		assertNull(manager.getJob(rejected));
+		String failed = manager.fail("vm4", "start", "unknown entity");
+		assertNotNull(failed);
+		assertNull(manager.getJob(failed));
+
+		// The listeners are notified on the job thread.
+		release.countDown();
+		waitForCompleted(completed, 4);
+		assertEquals(ActionJobManager.STATUS_FAILED, findJob(completed, rejected).getStatus());
+		assertEquals(ActionJobManager.STATUS_FAILED, findJob(completed, failed).getStatus());
+		assertEquals("unknown entity", findJob(completed, failed).getError());
+		assertEquals(ActionJobManager.STATUS_DONE, manager.getJob(running).getStatus());
+		assertEquals(ActionJobManager.STATUS_DONE, manager.getJob(pending).getStatus());
+
+		// The oldest finished job is removed for a new one.
+		String next = manager.fail("vm5", "start", "unknown entity");
+		assertNotNull(manager.getJob(next));
+		assertNull(manager.getJob(running));
+		assertNotNull(manager.getJob(pending));
+	}
+
+	@Test
+	public void testJobTtl() throws Exception {
+		ActionJobManager manager = new ActionJobManager(1, 10, 200);
+		final CountDownLatch release = new CountDownLatch(1);
+		String done = manager.submit("vm1", "start", new ActionJobManager.ActionTask() {
+			@Override
+			public void run() throws ExecuteActionException {
+			}
+		});
+		String running = manager.submit("vm2", "start", new ActionJobManager.ActionTask() {
+			@Override
+			public void run() throws ExecuteActionException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					throw new ExecuteActionException(ex);
+				}
+			}
+		});
+		waitForStatus(manager, done, ActionJobManager.STATUS_DONE);
+		waitForStatus(manager, running, ActionJobManager.STATUS_RUNNING);
+		Thread.sleep(300);
+		// Only the finished jobs expire.
+		assertNull(manager.getJob(done));
+		assertEquals(ActionJobManager.STATUS_RUNNING, manager.getJob(running).getStatus());
+		release.countDown();
+		waitForStatus(manager, running, ActionJobManager.STATUS_DONE);
+		assertNotNull(manager.getJob(running));
+		Thread.sleep(300);
+		assertNull(manager.getJob(running));
+		assertEquals(ActionJobManager.STATUS_UNKNOWN, getStatus(manager, running));
+	}
+
+	@Test
+	public void testListenerAfterReturn() throws Exception {
+		ActionJobManager manager = new ActionJobManager(1, 10, 0);
+		final CountDownLatch returned = new CountDownLatch(1);
+		final List<ActionJobManager.ActionJob> completed = Collections
+				.synchronizedList(new ArrayList<ActionJobManager.ActionJob>());
+		final List<Boolean> afterReturn = Collections.synchronizedList(new ArrayList<Boolean>());
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+		manager.addListener(new ActionJobManager.ActionJobListener() {
+			@Override
+			public void jobCompleted(ActionJobManager.ActionJob job) {
+				try {
+					afterReturn.add(returned.await(2, TimeUnit.SECONDS));
+				} catch (InterruptedException ex) {
+					afterReturn.add(false);
+				}
+				threads.add(Thread.currentThread());
+				completed.add(job);
+			}
+		});
+		String failed = manager.fail("vm1", "start", "unknown entity");
+		returned.countDown();
+		waitForCompleted(completed, 1);
+		assertEquals(failed, completed.get(0).getId());
+		assertEquals(Collections.singletonList(true), afterReturn);
+		assertNotSame(Thread.currentThread(), threads.get(0));
+		// The failed job is recorded before the id is returned.
+		assertEquals(ActionJobManager.STATUS_FAILED, manager.getJob(failed).getStatus());
+	}
+
+	private static List<ActionJobManager.ActionJob> waitForCompleted(final List<ActionJobManager.ActionJob> completed,
+			final int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (completed.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, completed.size());
+		return completed;
+	}
+
+	private static void waitForStatus(final ActionJobManager manager, final String jobId, final String status)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!status.equals(getStatus(manager, jobId)) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(status, getStatus(manager, jobId));
+	}
+
+	private static String getStatus(final ActionJobManager manager, final String jobId) {
+		ActionJobManager.ActionJob job = manager.getJob(jobId);
+		return job == null ? ActionJobManager.STATUS_UNKNOWN : job.getStatus();
+	}
+
+	private static ActionJobManager.ActionJob findJob(final List<ActionJobManager.ActionJob> jobs,
+			final String jobId) {
+		synchronized (jobs) {
+			for (ActionJobManager.ActionJob job : jobs) {
+				if (job.getId().equals(jobId)) {
+					return job;
+				}
+			}
+		}
+		return null;
+	}
+
+}
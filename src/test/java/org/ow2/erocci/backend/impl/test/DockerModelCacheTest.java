@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.docker.Container;
+import org.occiware.clouddesigner.occi.docker.DockerFactory;
+import org.occiware.clouddesigner.occi.docker.Machine;
+import org.occiware.clouddesigner.occi.docker.connector.ExecutableDockerModel;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+import org.ow2.erocci.runtime.DockerActionExecutor;
+import org.ow2.erocci.runtime.DockerModelCache;
+
+public class DockerModelCacheTest {
+
+	@Test
+	public void testSameEntityObject() {
+		DockerModelCache cache = new DockerModelCache(10);
+		Container container = createContainer("docker/c1");
+		ExecutableDockerModel model = cache.get(container);
+		assertSame(model, cache.get(container));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(DockerModelCache.METRIC_HITS));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(DockerModelCache.METRIC_MISSES));
+
+		// Another object with the same id (ex: a reloaded entity) gets his
+		// own model, which replaces the previous one.
+		Container reloaded = createContainer("docker/c1");
+		ExecutableDockerModel reloadedModel = cache.get(reloaded);
+		assertNotSame(model, reloadedModel);
+		assertSame(reloadedModel, cache.get(reloaded));
+		assertNotSame(model, cache.get(container));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(DockerModelCache.METRIC_SIZE));
+		assertEquals(Long.valueOf(2), cache.getMetrics().get(DockerModelCache.METRIC_HITS));
+		assertEquals(Long.valueOf(3), cache.getMetrics().get(DockerModelCache.METRIC_MISSES));
+	}
+
+	@Test
+	public void testInvalidateAndClear() {
+		DockerModelCache cache = new DockerModelCache(10);
+		Machine machine = createMachine("docker/m1");
+		Container container = createContainer("docker/c1");
+		ExecutableDockerModel machineModel = cache.get(machine);
+		ExecutableDockerModel containerModel = cache.get(container);
+
+		cache.invalidate(container.getId());
+		assertSame(machineModel, cache.get(machine));
+		assertNotSame(containerModel, cache.get(container));
+
+		// On import, the imported entities replace the modelled ones.
+		cache.clear();
+		assertEquals(Long.valueOf(0), cache.getMetrics().get(DockerModelCache.METRIC_SIZE));
+		assertNotSame(machineModel, cache.get(machine));
+	}
+
+	@Test
+	public void testBound() {
+		DockerModelCache cache = new DockerModelCache(2);
+		Container c1 = createContainer("docker/c1");
+		Container c2 = createContainer("docker/c2");
+		ExecutableDockerModel c1Model = cache.get(c1);
+		ExecutableDockerModel c2Model = cache.get(c2);
+		// c1 is the most recently used, c2 is evicted.
+		cache.get(c1);
+		cache.get(createContainer("docker/c3"));
+		assertEquals(Long.valueOf(2), cache.getMetrics().get(DockerModelCache.METRIC_SIZE));
+		assertNotSame(c2Model, cache.get(c2));
+		assertEquals(Long.valueOf(2), cache.getMetrics().get(DockerModelCache.METRIC_SIZE));
+		assertNotNull(c1Model);
+
+		// Disabled cache.
+		DockerModelCache disabled = new DockerModelCache(0);
+		assertNotSame(disabled.get(c1), disabled.get(c1));
+		assertEquals(Long.valueOf(0), disabled.getMetrics().get(DockerModelCache.METRIC_SIZE));
+	}
+
+	@Test
+	public void testInvalidateOnUpdateAndDelete() {
+		DockerActionExecutor executor = new DockerActionExecutor();
+		DockerModelCache cache = executor.getModelCache();
+		Container updated = createContainer("docker/updated");
+		ExecutableDockerModel model = cache.get(updated);
+		try {
+			executor.occiPostUpdate(updated);
+		} catch (ExecuteActionException ex) {
+			// This container is not built by the docker connector.
+		}
+		assertNotSame(model, cache.get(updated));
+
+		Container deleted = createContainer("docker/deleted");
+		model = cache.get(deleted);
+		try {
+			executor.occiPreDelete(deleted);
+		} catch (ExecuteActionException ex) {
+			// This container is not built by the docker connector.
+		}
+		assertNotSame(model, cache.get(deleted));
+	}
+
+	private static Container createContainer(final String id) {
+		Container container = DockerFactory.eINSTANCE.createContainer();
+		container.setId(id);
+		return container;
+	}
+
+	private static Machine createMachine(final String id) {
+		Machine machine = DockerFactory.eINSTANCE.createMachine_VirtualBox();
+		machine.setId(id);
+		return machine;
+	}
+
+}
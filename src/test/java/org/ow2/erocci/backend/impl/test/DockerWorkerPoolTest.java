@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+import org.ow2.erocci.runtime.DockerWorkerPool;
+
+public class DockerWorkerPoolTest {
+
+	@Test
+	public void testKeyOrder() throws Exception {
+		DockerWorkerPool pool = new DockerWorkerPool(4, 16, 5000);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		// The first task of m1 holds his key, the next ones wait in order.
+		threads.add(invokeAsync(pool, "m1", new DockerWorkerPool.DockerTask() {
+			@Override
+			public void run() throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+				order.add(0);
+			}
+		}, errors));
+		waitFor(pool, 0, 1);
+		for (int i = 1; i <= 3; i++) {
+			final int rank = i;
+			threads.add(invokeAsync(pool, "m1", new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() throws Exception {
+					maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+					order.add(rank);
+					running.decrementAndGet();
+				}
+			}, errors));
+			waitFor(pool, i, 1);
+			// Let the caller queue his task after incrementing the queue depth.
+			Thread.sleep(50);
+		}
+
+		// Another key runs while m1 is held.
+		final AtomicInteger otherKey = new AtomicInteger();
+		pool.invoke("m2", new DockerWorkerPool.DockerTask() {
+			@Override
+			public void run() throws Exception {
+				otherKey.incrementAndGet();
+			}
+		});
+		assertEquals(1, otherKey.get());
+		assertTrue(order.isEmpty());
+
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join(5000);
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(Arrays.asList(0, 1, 2, 3), order);
+		assertEquals(1, maxRunning.get());
+		waitFor(pool, 0, 0);
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		DockerWorkerPool pool = new DockerWorkerPool(1, 1, 100);
+		final CountDownLatch release = new CountDownLatch(1);
+		DockerWorkerPool.DockerTask blocking = new DockerWorkerPool.DockerTask() {
+			@Override
+			public void run() throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+			}
+		};
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread first = invokeAsync(pool, "m1", blocking, errors);
+		waitFor(pool, 0, 1);
+		Thread second = invokeAsync(pool, "m2", blocking, errors);
+		waitFor(pool, 1, 1);
+		assertEquals(Long.valueOf(1), pool.getMetrics().get(DockerWorkerPool.METRIC_QUEUED));
+		assertEquals(Long.valueOf(1), pool.getMetrics().get(DockerWorkerPool.METRIC_IN_FLIGHT));
+
+		// No place left, the task is rejected after the queue timeout.
+		final AtomicInteger ran = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		try {
+			pool.invoke("m3", new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() throws Exception {
+					ran.incrementAndGet();
+				}
+			});
+			fail("The queue is full, the task must be rejected");
+		} catch (ExecuteActionException ex) {
+			assertTrue(System.currentTimeMillis() - start >= 100);
+		}
+		assertEquals(0, ran.get());
+
+		release.countDown();
+		first.join(5000);
+		second.join(5000);
+		assertTrue(errors.toString(), errors.isEmpty());
+		waitFor(pool, 0, 0);
+
+		// The places are released.
+		pool.invoke("m3", new DockerWorkerPool.DockerTask() {
+			@Override
+			public void run() throws Exception {
+				ran.incrementAndGet();
+			}
+		});
+		assertEquals(1, ran.get());
+	}
+
+	@Test
+	public void testInvokeOnWorkerThread() throws Exception {
+		// One thread and no queue : a task waiting for a queued task would
+		// never end.
+		final DockerWorkerPool pool = new DockerWorkerPool(1, 0, 100);
+		final List<Thread> threads = new ArrayList<>();
+		pool.invoke("m1", new DockerWorkerPool.DockerTask() {
+			@Override
+			public void run() throws Exception {
+				threads.add(Thread.currentThread());
+				pool.invoke("m1", new DockerWorkerPool.DockerTask() {
+					@Override
+					public void run() throws Exception {
+						threads.add(Thread.currentThread());
+					}
+				});
+			}
+		});
+		assertEquals(2, threads.size());
+		assertSame(threads.get(0), threads.get(1));
+		assertNotSame(Thread.currentThread(), threads.get(0));
+	}
+
+	@Test
+	public void testTaskFailure() throws Exception {
+		DockerWorkerPool pool = new DockerWorkerPool(1, 1, 100);
+		try {
+			pool.invoke("m1", new DockerWorkerPool.DockerTask() {
+				@Override
+				public void run() throws Exception {
+					throw new IllegalStateException("docker failure");
+				}
+			});
+			fail("The task failure must be reported");
+		} catch (ExecuteActionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+		waitFor(pool, 0, 0);
+	}
+
+	private static Thread invokeAsync(final DockerWorkerPool pool, final String key,
+			final DockerWorkerPool.DockerTask task, final List<Throwable> errors) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pool.invoke(key, task);
+				} catch (Throwable ex) {
+					errors.add(ex);
+				}
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Wait for the pool counters.
+	 */
+	private static void waitFor(final DockerWorkerPool pool, final int queued, final int inFlight)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((pool.getQueueDepth() != queued || pool.getInFlightCount() != inFlight)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(queued, pool.getQueueDepth());
+		assertEquals(inFlight, pool.getInFlightCount());
+	}
+
+}
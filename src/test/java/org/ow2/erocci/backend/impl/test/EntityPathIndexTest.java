@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.infrastructure.Compute;
+import org.occiware.clouddesigner.occi.infrastructure.InfrastructureFactory;
+import org.ow2.erocci.model.EntityPathIndex;
+
+public class EntityPathIndexTest {
+
+	@Test
+	public void testPrefixIsSegmentBound() {
+		EntityPathIndex index = new EntityPathIndex();
+		Entity vm1 = createCompute("compute/vm1/f88486b7-0632-482d-a184-a9195733ddd0");
+		Entity vm10 = createCompute("compute/vm10/e0b9a2c4-3f43-4d1a-9a57-12c6b3a1a7f2");
+		index.add(vm1);
+		index.add(vm10);
+		assertEquals(Collections.singletonList(vm1), index.findByPrefix("compute/vm1"));
+		assertEquals(Collections.singletonList(vm10), index.findByPrefix("compute/vm10"));
+		assertEquals(Arrays.asList(vm1, vm10), index.findByPrefix("compute"));
+		assertTrue(index.findByPrefix("compute/vm").isEmpty());
+		assertTrue(EntityPathIndex.isPathPrefix("compute/vm1", vm1.getId()));
+		assertFalse(EntityPathIndex.isPathPrefix("compute/vm1", vm10.getId()));
+	}
+
+	@Test
+	public void testSlashVariants() {
+		EntityPathIndex index = new EntityPathIndex();
+		Entity slashed = createCompute("/compute/x");
+		Entity plain = createCompute("compute/x");
+		index.add(slashed);
+		index.add(plain);
+		// Both ids are on the same node, none overwrites the other.
+		List<Entity> found = index.findByPrefix("compute/x");
+		assertEquals(Arrays.asList(slashed, plain), found);
+		assertSame(slashed, index.get("/compute/x"));
+		assertSame(plain, index.get("compute/x"));
+
+		index.remove(slashed);
+		assertEquals(Collections.singletonList(plain), index.findByPrefix("compute"));
+		assertNull(index.get("/compute/x"));
+		// Removing an entity not referenced does nothing.
+		index.remove(createCompute("compute/x"));
+		assertSame(plain, index.get("compute/x"));
+		index.remove(plain);
+		assertTrue(index.findByPrefix("compute").isEmpty());
+	}
+
+	private static Compute createCompute(final String id) {
+		Compute compute = InfrastructureFactory.eINSTANCE.createCompute();
+		compute.setId(id);
+		return compute;
+	}
+
+}
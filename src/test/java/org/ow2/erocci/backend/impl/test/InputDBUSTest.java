@@ -46,12 +46,20 @@ import org.occiware.clouddesigner.occi.Extension;
 import org.occiware.clouddesigner.occi.Kind;
 import org.occiware.clouddesigner.occi.Link;
 import org.occiware.clouddesigner.occi.Mixin;
+import org.occiware.clouddesigner.occi.OCCIFactory;
 import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.clouddesigner.occi.infrastructure.Compute;
+import org.occiware.clouddesigner.occi.infrastructure.ComputeStatus;
 import org.occiware.clouddesigner.occi.util.OcciHelper;
 import org.ow2.erocci.backend.Pair;
 import org.ow2.erocci.backend.Quad;
 import org.ow2.erocci.backend.Struct1;
 import org.ow2.erocci.backend.Struct2;
+import org.ow2.erocci.backend.Struct3;
+import org.ow2.erocci.backend.Struct4;
+import org.ow2.erocci.backend.Struct5;
+import org.ow2.erocci.backend.Struct6;
+import org.ow2.erocci.backend.impl.ActionJobManager;
 import org.ow2.erocci.backend.impl.CoreImpl;
 import org.ow2.erocci.model.ConfigurationManager;
 
@@ -278,6 +286,14 @@ public class InputDBUSTest {
 		assertFalse(attributesReturned.isEmpty());
 		Resource res = ConfigurationManager.findResource(container.getOwner(), container.getId());
 		assertFalse(res.getAttributes().isEmpty());
+
+		// The executor doesnt change the entity (restart of an active
+		// compute), the entity is touched once.
+		long version = ConfigurationManager.getEntityIndexForOwner(container.getOwner()).getVersion();
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant<String>("vm2b"));
+		core.Update(container.getId(), attributes);
+		assertEquals(version + 1, ConfigurationManager.getEntityIndexForOwner(container.getOwner()).getVersion());
 	}
 
 	@Test
@@ -474,6 +490,60 @@ public class InputDBUSTest {
 		assertFalse(attribs.isEmpty());
 	}
 
+	@Test
+	public void testLoadCache() {
+		buildInfraTest();
+		testSaveResourceAndLinks();
+		String opaqueId = ConfigurationManager.findAllEntitiesLikePartialId(DEFAULT_OWNER, "compute/vm2").get(0)
+				.getId();
+		core.Load(new Variant(opaqueId));
+		long hits = core.Get("", "quads.hits");
+		core.Load(new Variant(opaqueId));
+		assertEquals(hits + 1, (long) core.Get("", "quads.hits"));
+
+		// An update gives a new version, the cached quad is not used.
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant("vmCached"));
+		core.Update(opaqueId, attributes);
+		Quad<String, String, List<String>, Map<String, Variant>> quad = core.Load(new Variant(opaqueId));
+		assertEquals("vmCached", quad.d.get("occi.compute.hostname").getValue());
+	}
+
+	@Test
+	public void testLoadMany() {
+		buildInfraTest();
+		testSaveResourceAndLinks();
+		Pair<Variant, UInt32> pair = core.List(COMPUTE_KIND, new HashMap<String, Variant>());
+		List<Struct2> items = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		List<Variant> opaqueIds = new ArrayList<>();
+		for (Struct2 item : items) {
+			opaqueIds.add(new Variant(item.a));
+		}
+		opaqueIds.add(new Variant("compute/unknown"));
+
+		List<Struct5> entities = core.LoadMany(opaqueIds);
+		assertEquals(opaqueIds.size(), entities.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals(items.get(i).a, entities.get(i).a);
+			assertEquals(COMPUTE_KIND, entities.get(i).b);
+			assertFalse(entities.get(i).d.isEmpty());
+		}
+		assertTrue(entities.get(items.size()).b.isEmpty());
+	}
+
+	@Test
+	public void testExtensionForKind() {
+		buildInfraTest();
+		testSaveResourceAndLinks();
+		Extension ext = ConfigurationManager.getExtensionForKind(DEFAULT_OWNER, COMPUTE_KIND);
+		assertNotNull(ext);
+		assertEquals(ConfigurationManager.EXT_INFRASTRUCTURE_NAME, ext.getName());
+		assertNull(ConfigurationManager.getExtensionForKind(DEFAULT_OWNER, SCHEME_INFRA + "unknown"));
+
+		Entity compute = ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, COMPUTE_KIND).get(0);
+		assertTrue(ext == ConfigurationManager.getExtensionFromEntity(compute));
+	}
+
 	@Test
 	public void testListNext() {
 		buildInfraTest();
@@ -487,6 +557,130 @@ public class InputDBUSTest {
 
 	}
 
+	@Test
+	public void testEtagAfterReset() {
+		ConfigurationManager.resetAll();
+		String id = "compute/6df690d2-3158-40c4-88fb-d1c41584d6e5";
+		InputContainer container = buildComputeContainer(id, "vmEtag", "x64", 2, 4.0, new ArrayList<String>(),
+				DEFAULT_OWNER);
+		core.SaveResource(container.getId(), container.getKind(), container.getMixins(), container.getAttributes(),
+				DEFAULT_OWNER);
+		UInt32 etag = core.Find(id).get(0).d;
+
+		// The same entity saved again after a reset has a new etag.
+		ConfigurationManager.resetForOwner(DEFAULT_OWNER);
+		core.SaveResource(container.getId(), container.getKind(), container.getMixins(), container.getAttributes(),
+				DEFAULT_OWNER);
+		UInt32 etagAfterReset = core.Find(id).get(0).d;
+		assertNotEquals(etag, etagAfterReset);
+
+		ConfigurationManager.resetAll();
+		core.SaveResource(container.getId(), container.getKind(), container.getMixins(), container.getAttributes(),
+				DEFAULT_OWNER);
+		assertNotEquals(etag, core.Find(id).get(0).d);
+		assertNotEquals(etagAfterReset, core.Find(id).get(0).d);
+	}
+
+	@Test
+	public void testSaveManyAndDeleteMany() {
+		ConfigurationManager.resetAll();
+		List<Struct3> resources = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			InputContainer container = buildComputeContainer("compute/", "batch" + i, "x64", 2, 4.0,
+					new ArrayList<String>(), DEFAULT_OWNER);
+			resources.add(new Struct3(container.getId(), container.getKind(), container.getMixins(),
+					container.getAttributes(), DEFAULT_OWNER));
+		}
+		List<String> ids = core.SaveResources(resources);
+		assertEquals(3, ids.size());
+		List<Entity> computes = ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, COMPUTE_KIND);
+		assertEquals(3, computes.size());
+
+		List<Struct4> links = new ArrayList<>();
+		links.add(new Struct4("storagelink/", STORAGE_LINK_KIND, new ArrayList<String>(), computes.get(0).getId(),
+				computes.get(1).getId(), new HashMap<String, Variant>(), DEFAULT_OWNER));
+		ids = core.SaveLinks(links);
+		assertEquals(1, ids.size());
+		List<Entity> storageLinks = ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, STORAGE_LINK_KIND);
+		assertEquals(1, storageLinks.size());
+
+		List<String> toDelete = new ArrayList<>();
+		toDelete.add(storageLinks.get(0).getId());
+		toDelete.add(computes.get(2).getId());
+		core.DeleteMany(toDelete);
+		assertTrue(ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, STORAGE_LINK_KIND).isEmpty());
+		assertEquals(2, ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, COMPUTE_KIND).size());
+
+		// A link to the deleted compute is not saved, his id is empty.
+		links.add(new Struct4("storagelink/", STORAGE_LINK_KIND, new ArrayList<String>(), computes.get(0).getId(),
+				computes.get(2).getId(), new HashMap<String, Variant>(), DEFAULT_OWNER));
+		ids = core.SaveLinks(links);
+		assertEquals(2, ids.size());
+		assertFalse(ids.get(0).isEmpty());
+		assertEquals("", ids.get(1));
+		assertEquals(1, ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, STORAGE_LINK_KIND).size());
+	}
+
+	@Test
+	public void testListFilters() {
+		buildInfraTest();
+		testSaveResourceAndLinks();
+		Map<String, Variant> filters = new HashMap<>();
+		filters.put("occi.compute.cores", new Variant("2"));
+		Pair<Variant, UInt32> pair = core.List(COMPUTE_KIND, filters);
+		List<Struct2> structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertEquals(1, structLst.size());
+		assertTrue(structLst.get(0).a.contains("vm2"));
+
+		// Prefix and kind filters.
+		filters.clear();
+		filters.put("occi.compute.architecture", new Variant("x6*"));
+		filters.put("kind", new Variant(COMPUTE_KIND));
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertEquals(2, structLst.size());
+
+		filters.put("kind", new Variant(STORAGE_KIND));
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertTrue(structLst.isEmpty());
+
+		// Indexed attribute, reindexed on update and removed on delete.
+		String vm1Id = containers.get("compute/vm1").getId();
+		String vm2Id = containers.get("compute/vm2").getId();
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.core.title", new Variant("web-1"));
+		core.Update(vm1Id, attributes);
+		attributes.put("occi.core.title", new Variant("db-1"));
+		core.Update(vm2Id, attributes);
+		filters.clear();
+		filters.put("occi.core.title", new Variant("web-1"));
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertEquals(1, structLst.size());
+		assertEquals(vm1Id, structLst.get(0).a);
+
+		attributes.put("occi.core.title", new Variant("db-2"));
+		core.Update(vm1Id, attributes);
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertTrue(structLst.isEmpty());
+		filters.put("occi.core.title", new Variant("db*"));
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertEquals(2, structLst.size());
+
+		core.Delete(vm2Id);
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertEquals(1, structLst.size());
+		assertEquals(vm1Id, structLst.get(0).a);
+		filters.put("occi.core.title", new Variant("db-1"));
+		pair = core.List(COMPUTE_KIND, filters);
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertTrue(structLst.isEmpty());
+	}
+
 	private void list(String catId, Map<String, Variant> filters) {
 		Pair<Variant, UInt32> pair = core.List(catId, filters);
 		assertNotNull(pair);
@@ -512,6 +706,17 @@ public class InputDBUSTest {
 		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(1));
 		assertNotNull(structLst);
 		assertTrue(structLst.size() == 1);
+
+		// The cursor stays open, all the items are read page by page.
+		List<Struct2> allItems = core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+		assertFalse(allItems.isEmpty());
+		for (int i = 0; i < allItems.size(); i++) {
+			structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(i), new UInt32(1));
+			assertEquals(1, structLst.size());
+			assertEquals(allItems.get(i).a, structLst.get(0).a);
+		}
+		structLst = core.Next((new Variant((String) pair.a.getValue())), new UInt32(allItems.size()), new UInt32(1));
+		assertTrue(structLst.isEmpty());
 	}
 
 	@Test
@@ -570,12 +775,31 @@ public class InputDBUSTest {
 		// attributes.put("method", new Variant("start")); used only with method
 		// parameters.
 
-		core.Action(entityId, actionFullPath, attributes);
+		// The actions run on the model entity, their changes are journaled.
+		Entity compute = ConfigurationManager.findEntity(DEFAULT_OWNER, entityId);
+		Map<String, Variant> stopAttributes = new HashMap<>();
+		stopAttributes.put("method", new Variant<String>("graceful"));
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(core.Action(entityId,
+				"http://schemas.ogf.org/occi/infrastructure/compute/action#stop", stopAttributes)));
+		assertEquals(ComputeStatus.INACTIVE, ((Compute) compute).getState());
+		long version = ConfigurationManager.getEntityIndexForOwner(DEFAULT_OWNER).getEntityVersion(entityId);
+		String jobId = core.Action(entityId, actionFullPath, attributes);
+		assertNotNull(jobId);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(jobId));
+		assertEquals(ComputeStatus.ACTIVE, ((Compute) compute).getState());
+		assertTrue(ConfigurationManager.getEntityIndexForOwner(DEFAULT_OWNER).getEntityVersion(entityId) > version);
 
 		relativeEntityPath = "test/doesntexist";
 		actionFullPath = "noAction";
 		attributes.clear();
-		core.Action(relativeEntityPath, actionFullPath, attributes);
+		jobId = core.Action(relativeEntityPath, actionFullPath, attributes);
+		assertEquals(ActionJobManager.STATUS_FAILED, core.GetActionStatus(jobId).a);
+		assertFalse(core.GetActionStatus(jobId).b.isEmpty());
+		assertEquals(ActionJobManager.STATUS_UNKNOWN, core.GetActionStatus("doesntexist").a);
+
+		// Unknown actions are rejected before reaching the executor.
+		jobId = core.Action(entityId, "http://schemas.ogf.org/occi/infrastructure/compute/action#noAction", attributes);
+		assertEquals(ActionJobManager.STATUS_FAILED, core.GetActionStatus(jobId).a);
 
 		// Action stop on compute infrastructure extension with a parameter.
 		relativeEntityPath = "compute/vm2";
@@ -583,7 +807,7 @@ public class InputDBUSTest {
 		entityId = containers.get(relativeEntityPath).getId();
 		attributes.put("method", new Variant<String>("graceful"));
 
-		core.Action(entityId, actionFullPath, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(core.Action(entityId, actionFullPath, attributes)));
 
 		attributes.clear();
 
@@ -592,19 +816,88 @@ public class InputDBUSTest {
 		actionFullPath = "http://schemas.ogf.org/occi/infrastructure/storage/action#online";
 		entityId = containers.get(relativeEntityPath).getId();
 
-		core.Action(entityId, actionFullPath, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(core.Action(entityId, actionFullPath, attributes)));
 		actionFullPath = "http://schemas.ogf.org/occi/infrastructure/storage/action#resize";
 		attributes.put("size", new Variant<String>("123.0"));
 
-		core.Action(entityId, actionFullPath, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(core.Action(entityId, actionFullPath, attributes)));
 		attributes.clear();
 
 		// Action on network.
 		relativeEntityPath = "network/network1";
 		actionFullPath = "http://schemas.ogf.org/occi/infrastructure/network/action#up";
 		entityId = containers.get(relativeEntityPath).getId();
-		core.Action(entityId, actionFullPath, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(core.Action(entityId, actionFullPath, attributes)));
+
+	}
+
+	/**
+	 * Wait for the end of an action job.
+	 * 
+	 * @param jobId
+	 * @return the final status of the job.
+	 */
+	private String waitForAction(String jobId) {
+		long timeout = System.currentTimeMillis() + 10000;
+		String status = core.GetActionStatus(jobId).a;
+		while ((ActionJobManager.STATUS_PENDING.equals(status) || ActionJobManager.STATUS_RUNNING.equals(status))
+				&& System.currentTimeMillis() < timeout) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			status = core.GetActionStatus(jobId).a;
+		}
+		return status;
+	}
+
+	@Test
+	public void testActionOnCollection() {
+		buildInfraTest();
+		testSaveResourceAndLinks();
+		Map<String, Variant> attributes = new HashMap<>();
+		String actionStart = "http://schemas.ogf.org/occi/infrastructure/compute/action#start";
+		int computeCount = ConfigurationManager.findAllEntitiesForKind(DEFAULT_OWNER, COMPUTE_KIND).size();
+
+		String jobId = core.ActionOnCollection(COMPUTE_KIND, actionStart, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(jobId));
+		List<Struct6> outcomes = core.GetActionOutcomes(jobId);
+		assertEquals(computeCount, outcomes.size());
+		for (Struct6 outcome : outcomes) {
+			assertEquals(ActionJobManager.STATUS_DONE, outcome.b);
+		}
 
+		// Path prefix, the action is not supported on the storage.
+		jobId = core.ActionOnCollection("compute/vm1", actionStart, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(jobId));
+		assertEquals(1, core.GetActionOutcomes(jobId).size());
+		jobId = core.ActionOnCollection("storage/", actionStart, attributes);
+		assertEquals(ActionJobManager.STATUS_FAILED, waitForAction(jobId));
+		outcomes = core.GetActionOutcomes(jobId);
+		assertFalse(outcomes.isEmpty());
+		assertEquals(ActionJobManager.STATUS_FAILED, outcomes.get(0).b);
+		assertFalse(outcomes.get(0).c.isEmpty());
+
+		// Empty collection.
+		jobId = core.ActionOnCollection("test/doesntexist", actionStart, attributes);
+		assertEquals(ActionJobManager.STATUS_DONE, waitForAction(jobId));
+		assertTrue(core.GetActionOutcomes(jobId).isEmpty());
+
+		// An entity without kind gives a failed outcome.
+		Resource noKind = OCCIFactory.eINSTANCE.createResource();
+		noKind.setId("nokind/r1");
+		ConfigurationManager.getConfigurationForOwner(DEFAULT_OWNER).getResources().add(noKind);
+		ConfigurationManager.refreshEntityIndex(DEFAULT_OWNER);
+		jobId = core.ActionOnCollection("nokind/", actionStart, attributes);
+		assertEquals(ActionJobManager.STATUS_FAILED, waitForAction(jobId));
+		outcomes = core.GetActionOutcomes(jobId);
+		assertEquals(1, outcomes.size());
+		assertEquals("nokind/r1", outcomes.get(0).a);
+		assertEquals(ActionJobManager.STATUS_FAILED, outcomes.get(0).b);
+		assertFalse(outcomes.get(0).c.isEmpty());
+		assertEquals(ActionJobManager.STATUS_FAILED, waitForAction(core.Action("nokind/r1", actionStart, attributes)));
 	}
 
 	public void validateModel() {
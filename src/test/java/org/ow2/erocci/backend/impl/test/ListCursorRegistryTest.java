@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.ow2.erocci.backend.Struct2;
+import org.ow2.erocci.backend.impl.ListCursor;
+import org.ow2.erocci.backend.impl.ListCursorRegistry;
+
+public class ListCursorRegistryTest {
+
+	@Test
+	public void testIdleExpiry() throws Exception {
+		ListCursorRegistry registry = new ListCursorRegistry(200, 10);
+		String id = ListCursorRegistry.getCollectionId(registry.open(createCursor("a", 3)));
+		List<Struct2> page = registry.page(id, 0, 2);
+		assertEquals(2, page.size());
+		assertEquals("a0", page.get(0).a);
+
+		// Each page read keeps the cursor open.
+		Thread.sleep(120);
+		assertNotNull(registry.page(id, 2, 0));
+		Thread.sleep(120);
+		assertEquals(1, registry.page(id, 2, 0).size());
+
+		// Idle for more than the ttl.
+		Thread.sleep(250);
+		assertNull(registry.page(id, 0, 0));
+		assertEquals(0, registry.size());
+		assertEquals(Long.valueOf(1), registry.getMetrics().get(ListCursorRegistry.METRIC_EXPIRED));
+		assertEquals(Long.valueOf(3), registry.getMetrics().get(ListCursorRegistry.METRIC_PAGES));
+		assertEquals(Long.valueOf(1), registry.getMetrics().get(ListCursorRegistry.METRIC_MISSES));
+	}
+
+	@Test
+	public void testSweepOnOpen() throws Exception {
+		ListCursorRegistry registry = new ListCursorRegistry(100, 10);
+		registry.open(createCursor("a", 1));
+		registry.open(createCursor("b", 1));
+		Thread.sleep(150);
+		// The expired cursors are removed when a cursor is opened.
+		String id = ListCursorRegistry.getCollectionId(registry.open(createCursor("c", 1)));
+		assertEquals(1, registry.size());
+		assertNotNull(registry.page(id, 0, 0));
+		assertEquals(Long.valueOf(2), registry.getMetrics().get(ListCursorRegistry.METRIC_EXPIRED));
+		assertEquals(Long.valueOf(3), registry.getMetrics().get(ListCursorRegistry.METRIC_CREATED));
+		assertEquals(Long.valueOf(1), registry.getMetrics().get(ListCursorRegistry.METRIC_OPEN));
+	}
+
+	@Test
+	public void testMaxCursors() throws Exception {
+		ListCursorRegistry registry = new ListCursorRegistry(60000, 2);
+		String a = ListCursorRegistry.getCollectionId(registry.open(createCursor("a", 1)));
+		Thread.sleep(5);
+		String b = ListCursorRegistry.getCollectionId(registry.open(createCursor("b", 1)));
+		Thread.sleep(5);
+		// a is used after b, b is the least recently used.
+		assertNotNull(registry.page(a, 0, 0));
+		Thread.sleep(5);
+		String c = ListCursorRegistry.getCollectionId(registry.open(createCursor("c", 1)));
+		assertEquals(2, registry.size());
+		assertNull(registry.page(b, 0, 0));
+		assertNotNull(registry.page(a, 0, 0));
+		assertNotNull(registry.page(c, 0, 0));
+		assertEquals(Long.valueOf(1), registry.getMetrics().get(ListCursorRegistry.METRIC_EVICTED));
+		assertEquals(Long.valueOf(0), registry.getMetrics().get(ListCursorRegistry.METRIC_EXPIRED));
+		assertEquals(Long.valueOf(3), registry.getMetrics().get(ListCursorRegistry.METRIC_CREATED));
+		assertEquals(Long.valueOf(2), registry.getMetrics().get(ListCursorRegistry.METRIC_OPEN));
+		assertEquals(Long.valueOf(3), registry.getMetrics().get(ListCursorRegistry.METRIC_PAGES));
+		assertEquals(Long.valueOf(1), registry.getMetrics().get(ListCursorRegistry.METRIC_MISSES));
+
+		registry.close(a);
+		assertNull(registry.page(a, 0, 0));
+		assertEquals(1, registry.size());
+	}
+
+	private static ListCursor createCursor(final String prefix, final int size) {
+		ListCursor cursor = new ListCursor();
+		for (int i = 0; i < size; i++) {
+			cursor.addItem(new Struct2(prefix + i, ""));
+		}
+		return cursor;
+	}
+
+}
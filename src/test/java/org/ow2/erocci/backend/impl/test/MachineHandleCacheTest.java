@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.cloud.CloudFactory;
+import org.occiware.clouddesigner.occi.cloud.Machine;
+import org.ow2.erocci.model.exception.ExecuteActionException;
+import org.ow2.erocci.runtime.CloudActionExecutor;
+import org.ow2.erocci.runtime.MachineHandleCache;
+
+public class MachineHandleCacheTest {
+
+	/**
+	 * Entities attached by the loader, in load order.
+	 */
+	private List<Entity> loaded;
+
+	private MachineHandleCache.MachineLoader loader;
+
+	@Before
+	public void setUp() throws Exception {
+		loaded = new ArrayList<>();
+		loader = new MachineHandleCache.MachineLoader() {
+			@Override
+			public Machine load(Entity entity) {
+				if (entity.getId().startsWith("none")) {
+					return null;
+				}
+				loaded.add(entity);
+				return createMachine(entity.getId());
+			}
+		};
+	}
+
+	@Test
+	public void testLruBound() throws Exception {
+		MachineHandleCache cache = new MachineHandleCache(loader, 2);
+		Machine vm1 = createMachine("vm1");
+		Machine vm2 = createMachine("vm2");
+		Machine vm1Handle = cache.get(vm1);
+		Machine vm2Handle = cache.get(vm2);
+		// vm1 is the most recently used, vm2 is evicted.
+		assertSame(vm1Handle, cache.get(vm1));
+		cache.get(createMachine("vm3"));
+		assertEquals(Long.valueOf(2), cache.getMetrics().get(MachineHandleCache.METRIC_SIZE));
+		assertSame(vm1Handle, cache.peek("vm1"));
+		assertNull(cache.peek("vm2"));
+		assertNotNull(cache.peek("vm3"));
+
+		// The evicted handle is attached again through the loader.
+		Machine reattached = cache.get(vm2);
+		assertNotNull(reattached);
+		assertNotSame(vm2Handle, reattached);
+		assertEquals(4, loaded.size());
+		assertSame(vm2, loaded.get(3));
+		assertSame(reattached, cache.get(vm2));
+		assertEquals(4, loaded.size());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		MachineHandleCache cache = new MachineHandleCache(loader, 10);
+		Machine vm1 = createMachine("vm1");
+		cache.get(vm1);
+		cache.get(vm1);
+		cache.get(vm1);
+		cache.put("vm2", createMachine("vm2"));
+		cache.get(createMachine("vm2"));
+		assertEquals(Long.valueOf(2), cache.getMetrics().get(MachineHandleCache.METRIC_SIZE));
+		assertEquals(Long.valueOf(3), cache.getMetrics().get(MachineHandleCache.METRIC_HITS));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(MachineHandleCache.METRIC_MISSES));
+		// peek doesn't count.
+		cache.peek("vm1");
+		cache.peek("vm3");
+		assertEquals(Long.valueOf(3), cache.getMetrics().get(MachineHandleCache.METRIC_HITS));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(MachineHandleCache.METRIC_MISSES));
+	}
+
+	@Test
+	public void testNoMachine() throws Exception {
+		MachineHandleCache cache = new MachineHandleCache(loader, 10);
+		try {
+			cache.get(createMachine("none1"));
+			fail("No machine can be attached to this entity");
+		} catch (ExecuteActionException ex) {
+			assertNull(cache.peek("none1"));
+		}
+		assertEquals(Long.valueOf(0), cache.getMetrics().get(MachineHandleCache.METRIC_SIZE));
+		assertEquals(Long.valueOf(1), cache.getMetrics().get(MachineHandleCache.METRIC_MISSES));
+	}
+
+	@Test
+	public void testRemoveOnPreDelete() throws Exception {
+		CloudActionExecutor executor = (CloudActionExecutor) CloudActionExecutor.getInstance();
+		MachineHandleCache cache = executor.getMachineCache();
+		Machine vm = createMachine("cloud/vm-predelete");
+		Machine handle = createMachine(vm.getId());
+		cache.put(vm.getId(), handle);
+		assertSame(handle, cache.peek(vm.getId()));
+		executor.occiPreDelete(vm);
+		assertNull(cache.peek(vm.getId()));
+		// Deleting an entity without handle is not an error.
+		executor.occiPreDelete(vm);
+		assertNull(cache.peek(vm.getId()));
+	}
+
+	private static Machine createMachine(final String id) {
+		Machine machine = CloudFactory.eINSTANCE.createMachine_OpenStack();
+		machine.setId(id);
+		return machine;
+	}
+
+}
@@ -0,0 +1,439 @@
+/**
+ * Copyright (c) 2015-2017 Inria - Linagora
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.erocci.backend.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+
+import org.freedesktop.dbus.UInt32;
+import org.freedesktop.dbus.Variant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Link;
+import org.occiware.clouddesigner.occi.Mixin;
+import org.ow2.erocci.backend.Pair;
+import org.ow2.erocci.backend.Quad;
+import org.ow2.erocci.backend.Struct1;
+import org.ow2.erocci.backend.Struct2;
+import org.ow2.erocci.backend.impl.CoreImpl;
+import org.ow2.erocci.model.ConfigurationManager;
+import org.ow2.erocci.model.EntityInput;
+import org.ow2.erocci.model.persistence.MappedModelSnapshot;
+import org.ow2.erocci.model.persistence.ModelJournal;
+
+/**
+ * Recovery of the model from the journal and the snapshots.
+ */
+public class PersistenceTest {
+	private CoreImpl core;
+
+	private final String SCHEME_INFRA = "http://schemas.ogf.org/occi/infrastructure#";
+	private final String COMPUTE_KIND = SCHEME_INFRA + "compute";
+	private final String STORAGE_KIND = SCHEME_INFRA + "storage";
+	private final String STORAGE_LINK_KIND = SCHEME_INFRA + "storagelink";
+	private final String MIXIN_OS_GENERIC_ID = "http://schemas.ogf.org/occi/infrastructure#os_tpl";
+
+	private final String DEFAULT_OWNER = "anonymous";
+
+	/**
+	 * Data directories created by the test.
+	 */
+	private List<File> dataDirs = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigurationManager.resetAll();
+		open(newDataDir());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ModelJournal.getInstance().close();
+		System.clearProperty(ModelJournal.DATA_DIR_PROPERTY);
+		ConfigurationManager.resetAll();
+		for (File dir : dataDirs) {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testRecoverFromJournal() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String vm2 = saveCompute("vm2", "host2");
+		String storage1 = saveStorage("storage1", 10.0);
+		String link = saveStorageLink("sl1", vm1, storage1);
+
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant("host1b"));
+		core.Update(vm1, attributes);
+		core.SaveMixin(MIXIN_OS_GENERIC_ID, Arrays.asList(vm1));
+		core.Delete(vm2);
+
+		Map<String, String> expected = dumpModel();
+		assertEquals(3, expected.size());
+		assertTrue(expected.containsKey(link));
+
+		crashAndRecover();
+
+		assertEquals(expected, dumpModel());
+		assertNull(ConfigurationManager.findEntity(DEFAULT_OWNER, vm2));
+		assertNotNull(ConfigurationManager.findMixinOnEntities(DEFAULT_OWNER, MIXIN_OS_GENERIC_ID));
+	}
+
+	@Test
+	public void testRecoverTruncatedRecord() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		saveCompute("vm2", "host2");
+		Map<String, String> expected = dumpModel();
+		long validLength = lastSegment(dataDirs.get(0)).length();
+
+		// The records of this update are torn by the crash.
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant("lost"));
+		core.Update(vm1, attributes);
+
+		File crashDir = newDataDir();
+		copy(dataDirs.get(0), crashDir);
+		File segment = lastSegment(crashDir);
+		assertTrue(segment.length() > validLength + 5);
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.setLength(validLength + 5);
+		} finally {
+			raf.close();
+		}
+		recover(crashDir);
+
+		assertEquals(expected, dumpModel());
+		assertEquals(validLength, segment.length());
+	}
+
+	@Test
+	public void testRecoverSnapshotAndJournal() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String vm2 = saveCompute("vm2", "host2");
+		ModelJournal.getInstance().snapshot();
+
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant("host1b"));
+		core.Update(vm1, attributes);
+		core.Delete(vm2);
+		String storage1 = saveStorage("storage1", 20.0);
+		saveStorageLink("sl1", vm1, storage1);
+		Map<String, String> expected = dumpModel();
+
+		crashAndRecover();
+
+		assertEquals(expected, dumpModel());
+	}
+
+	@Test
+	public void testMappedSnapshot() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String vm2 = saveCompute("vm2", "host2");
+		String storage1 = saveStorage("storage1", 30.0);
+		String link = saveStorageLink("sl1", vm1, storage1);
+		restart();
+
+		MappedModelSnapshot snapshot = ConfigurationManager.getMappedSnapshot();
+		assertNotNull(snapshot);
+		assertEquals(4, snapshot.getRemaining());
+
+		// Entities are read from the mapped records.
+		assertEquals(2, list(COMPUTE_KIND).size());
+		assertEquals(4, snapshot.getRemaining());
+		assertFalse(core.Find(vm1).isEmpty());
+		Quad<String, String, List<String>, Map<String, Variant>> quad = core.Load(new Variant(vm2));
+		assertEquals(COMPUTE_KIND, quad.b);
+		assertEquals("host2", quad.d.get("occi.compute.hostname").getValue());
+		core.Delete(vm2);
+		assertTrue(core.Find(vm2).isEmpty());
+		assertEquals(1, list(COMPUTE_KIND).size());
+
+		// All the entities are built.
+		assertEquals(3, ConfigurationManager.findAllEntitiesOwner(DEFAULT_OWNER).size());
+		assertNull(ConfigurationManager.getMappedSnapshot());
+		List<Struct2> computes = list(COMPUTE_KIND);
+		assertEquals(1, computes.size());
+		assertEquals(vm1, computes.get(0).a);
+		quad = core.Load(new Variant(vm1));
+		assertEquals("host1", quad.d.get("occi.compute.hostname").getValue());
+		List<Struct1> found = core.Find(link);
+		assertEquals(1, found.size());
+		core.Delete(link);
+		assertTrue(core.Find(link).isEmpty());
+		assertTrue(list(STORAGE_LINK_KIND).isEmpty());
+	}
+
+	@Test
+	public void testSnapshotOfMappedSnapshot() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		saveCompute("vm2", "host2");
+		String storage1 = saveStorage("storage1", 40.0);
+		saveStorageLink("sl1", vm1, storage1);
+		Map<String, String> expected = dumpModel();
+		restart();
+
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant("host1b"));
+		core.Update(vm1, attributes);
+		MappedModelSnapshot snapshot = ConfigurationManager.getMappedSnapshot();
+		assertNotNull(snapshot);
+		int remaining = snapshot.getRemaining();
+		assertTrue(remaining > 0);
+
+		// The records not built are copied to the new snapshot.
+		ModelJournal.getInstance().snapshot();
+		assertEquals(remaining, snapshot.getRemaining());
+		restart();
+
+		Map<String, String> model = dumpModel();
+		assertEquals(expected.keySet(), model.keySet());
+		for (String id : expected.keySet()) {
+			if (!id.equals(vm1)) {
+				assertEquals(expected.get(id), model.get(id));
+			}
+		}
+		Quad<String, String, List<String>, Map<String, Variant>> quad = core.Load(new Variant(vm1));
+		assertEquals("host1b", quad.d.get("occi.compute.hostname").getValue());
+	}
+
+	@Test
+	public void testDeleteMappedResourceWithLinks() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String storage1 = saveStorage("storage1", 30.0);
+		String link = saveStorageLink("sl1", vm1, storage1);
+		restart();
+
+		// The links of a resource are built with it, and deleted with it.
+		core.Delete(vm1);
+		assertTrue(list(STORAGE_LINK_KIND).isEmpty());
+		ModelJournal.getInstance().snapshot();
+		assertTrue(core.Find(vm1).isEmpty());
+		assertTrue(core.Find(link).isEmpty());
+		assertFalse(core.Find(storage1).isEmpty());
+
+		restart();
+		assertTrue(list(STORAGE_LINK_KIND).isEmpty());
+		assertTrue(core.Find(link).isEmpty());
+		assertEquals(1, ConfigurationManager.findAllEntitiesOwner(DEFAULT_OWNER).size());
+	}
+
+	@Test
+	public void testMappedLinksToTarget() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String storage1 = saveStorage("storage1", 30.0);
+		String link = saveStorageLink("sl1", vm1, storage1);
+		restart();
+
+		// Mapped entities can't be built under the read lock.
+		Lock lock = ConfigurationManager.getLockForOwner(DEFAULT_OWNER).readLock();
+		lock.lock();
+		try {
+			ConfigurationManager.findEntity(DEFAULT_OWNER, storage1);
+			fail("Mapped entity built under the read lock");
+		} catch (IllegalStateException ex) {
+			// Expected.
+		} finally {
+			lock.unlock();
+		}
+
+		ConfigurationManager.materializeMappedLinks(DEFAULT_OWNER, storage1);
+		lock.lock();
+		try {
+			Set<Link> links = ConfigurationManager.getEntityIndexForOwner(DEFAULT_OWNER).getLinksToTarget(storage1);
+			assertEquals(1, links.size());
+			Link found = links.iterator().next();
+			assertEquals(link, found.getId());
+			assertEquals(vm1, found.getSource().getId());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Test
+	public void testSaveEntitiesOnMappedSnapshot() throws Exception {
+		String vm1 = saveCompute("vm1", "host1");
+		String storage1 = saveStorage("storage1", 30.0);
+		String link = saveStorageLink("sl1", vm1, storage1);
+		restart();
+
+		// The mapped entities are overwritten, the inputs are not modified.
+		Map<String, String> computeAttributes = new HashMap<>();
+		computeAttributes.put("occi.compute.hostname", "host1b");
+		Map<String, String> linkAttributes = new HashMap<>();
+		linkAttributes.put("occi.storagelink.deviceid", "dev-sl1b");
+		List<EntityInput> inputs = new ArrayList<>();
+		inputs.add(new EntityInput(vm1, COMPUTE_KIND, null, computeAttributes));
+		inputs.add(new EntityInput(link, STORAGE_LINK_KIND, null, vm1, storage1, linkAttributes));
+		List<Entity> saved = ConfigurationManager.saveEntities(DEFAULT_OWNER, inputs);
+		assertEquals(2, saved.size());
+		assertNotNull(saved.get(0));
+		assertNotNull(saved.get(1));
+		assertFalse(computeAttributes.containsKey("occi.core.id"));
+		assertFalse(linkAttributes.containsKey("occi.core.id"));
+		assertEquals(1, list(COMPUTE_KIND).size());
+		assertEquals(1, list(STORAGE_LINK_KIND).size());
+
+		restart();
+		assertEquals(3, ConfigurationManager.findAllEntitiesOwner(DEFAULT_OWNER).size());
+		Quad<String, String, List<String>, Map<String, Variant>> quad = core.Load(new Variant(vm1));
+		assertEquals("host1b", quad.d.get("occi.compute.hostname").getValue());
+		quad = core.Load(new Variant(link));
+		assertEquals("dev-sl1b", quad.d.get("occi.storagelink.deviceid").getValue());
+	}
+
+	private String saveCompute(String name, String hostname) {
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.compute.hostname", new Variant(hostname));
+		attributes.put("occi.compute.architecture", new Variant("x64"));
+		attributes.put("occi.compute.cores", new Variant(2));
+		core.SaveResource("compute/" + name, COMPUTE_KIND, new ArrayList<String>(), attributes, DEFAULT_OWNER);
+		return ConfigurationManager.findAllEntitiesLikePartialId(DEFAULT_OWNER, "compute/" + name).get(0).getId();
+	}
+
+	private String saveStorage(String name, Double size) {
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.storage.size", new Variant(size));
+		core.SaveResource("storage/" + name, STORAGE_KIND, new ArrayList<String>(), attributes, DEFAULT_OWNER);
+		return ConfigurationManager.findAllEntitiesLikePartialId(DEFAULT_OWNER, "storage/" + name).get(0).getId();
+	}
+
+	private String saveStorageLink(String name, String src, String target) {
+		Map<String, Variant> attributes = new HashMap<>();
+		attributes.put("occi.storagelink.deviceid", new Variant("dev-" + name));
+		core.SaveLink("storagelink/" + name, STORAGE_LINK_KIND, new ArrayList<String>(), src, target, attributes,
+				DEFAULT_OWNER);
+		return ConfigurationManager.findAllEntitiesLikePartialId(DEFAULT_OWNER, "storagelink/" + name).get(0)
+				.getId();
+	}
+
+	private List<Struct2> list(String categoryId) {
+		Pair<Variant, UInt32> pair = core.List(categoryId, new HashMap<String, Variant>());
+		return core.Next((new Variant((String) pair.a.getValue())), new UInt32(0), new UInt32(0));
+	}
+
+	/**
+	 * Dump the owner's model, all the entities are built.
+	 *
+	 * @return a description of each entity, by entity id.
+	 */
+	private Map<String, String> dumpModel() {
+		Map<String, String> model = new TreeMap<>();
+		for (Entity entity : ConfigurationManager.findAllEntitiesOwner(DEFAULT_OWNER)) {
+			Set<String> mixins = new TreeSet<>();
+			for (Mixin mixin : entity.getMixins()) {
+				mixins.add(mixin.getScheme() + mixin.getTerm());
+			}
+			Map<String, String> attributes = new TreeMap<>();
+			for (AttributeState attribute : entity.getAttributes()) {
+				attributes.put(attribute.getName(), attribute.getValue());
+			}
+			String description = entity.getKind().getScheme() + entity.getKind().getTerm() + " " + mixins + " "
+					+ attributes;
+			if (entity instanceof Link) {
+				Link link = (Link) entity;
+				description += " " + link.getSource().getId() + " -> " + link.getTarget().getId();
+			}
+			model.put(entity.getId(), description);
+		}
+		return model;
+	}
+
+	/**
+	 * Recover the model from a copy of the data directory taken while the
+	 * journal is open.
+	 */
+	private void crashAndRecover() throws IOException {
+		File crashDir = newDataDir();
+		copy(dataDirs.get(0), crashDir);
+		recover(crashDir);
+	}
+
+	/**
+	 * Close the journal and recover the model from the same data directory.
+	 */
+	private void restart() throws IOException {
+		recover(new File(System.getProperty(ModelJournal.DATA_DIR_PROPERTY)));
+	}
+
+	private void recover(File dataDir) throws IOException {
+		ModelJournal.getInstance().close();
+		ConfigurationManager.resetAll();
+		open(dataDir);
+	}
+
+	private void open(File dataDir) throws IOException {
+		System.setProperty(ModelJournal.DATA_DIR_PROPERTY, dataDir.getPath());
+		ModelJournal.getInstance().open();
+		core = new CoreImpl();
+	}
+
+	private File newDataDir() throws IOException {
+		File dir = Files.createTempDirectory("erocci-data").toFile();
+		dataDirs.add(dir);
+		return dir;
+	}
+
+	private File lastSegment(File dataDir) {
+		File last = null;
+		for (File file : dataDir.listFiles()) {
+			if (file.getName().startsWith("journal-")
+					&& (last == null || file.getName().compareTo(last.getName()) > 0)) {
+				last = file;
+			}
+		}
+		return last;
+	}
+
+	private void copy(File from, File to) throws IOException {
+		for (File file : from.listFiles()) {
+			Files.copy(file.toPath(), new File(to, file.getName()).toPath());
+		}
+	}
+
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
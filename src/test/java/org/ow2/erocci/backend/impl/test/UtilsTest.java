@@ -18,12 +18,16 @@ package org.ow2.erocci.backend.impl.test;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.freedesktop.dbus.UInt32;
+import org.freedesktop.dbus.Variant;
 import org.junit.Test;
 import org.ow2.erocci.backend.impl.Utils;
 
@@ -50,6 +54,37 @@ public class UtilsTest {
 	public void testCreateEtagNumberObject() {
 	}
 
+	@Test
+	public void testCreateEtagNumber() {
+		String id = "compute/vm1/" + Utils.createUUID();
+		Set<Long> eTags = new HashSet<>();
+		for (long version = 0; version < 1000; version++) {
+			long eTag = Utils.createEtagNumber(id, version).longValue();
+			assertTrue(eTag > 1);
+			// Each version of an entity has his own eTag.
+			assertTrue(eTags.add(eTag));
+		}
+		assertEquals(Utils.createEtagNumber(id, 10), Utils.createEtagNumber(id, 10));
+	}
+
+	@Test
+	public void testConvertVariantMap() {
+		Map<String, Variant> vmap = new HashMap<>();
+		vmap.put("s", new Variant("value"));
+		vmap.put("b", new Variant(Boolean.TRUE));
+		vmap.put("i", new Variant(12));
+		vmap.put("u", new Variant(new UInt32(42)));
+		vmap.put("d", new Variant(16.0));
+		vmap.put("ay", new Variant("bytes".getBytes()));
+		Map<String, String> map = Utils.convertVariantMap(vmap);
+		assertEquals("value", map.get("s"));
+		assertEquals("true", map.get("b"));
+		assertEquals("12", map.get("i"));
+		assertEquals("42", map.get("u"));
+		assertEquals("16.0", map.get("d"));
+		assertEquals("bytes", map.get("ay"));
+		assertTrue(Utils.convertVariantMap(null).isEmpty());
+	}
 
 	@Test
 	public void testIsEntityUUIDProvided() {
@@ -120,6 +155,32 @@ public class UtilsTest {
 		
 	}
 	
+	@Test
+	public void testParseEntityId() {
+		for (Map.Entry<String, Map<String, String>> entry : buildIds().entrySet()) {
+			String id = entry.getKey();
+			Utils.EntityIdParts parts = Utils.parseEntityId(id, entry.getValue());
+			if (parts.getUuid() == null) {
+				assertEquals(id, parts.getRelativePath());
+			} else {
+				assertTrue(parts.getUuid().matches(Utils.REGEX_CONTROL_UUID));
+				assertEquals(Utils.getRelativePathFromId(id, parts.getUuid()), parts.getRelativePath());
+			}
+		}
+		// The uuid of the id is used before the one of occi.core.id.
+		String uuid = Utils.createUUID();
+		Map<String, String> attr = new HashMap<>();
+		attr.put("occi.core.id", "urn:uuid:" + Utils.createUUID());
+		Utils.EntityIdParts parts = Utils.parseEntityId("compute/" + uuid, attr);
+		assertEquals(uuid, parts.getUuid());
+		assertEquals("compute", parts.getRelativePath());
+
+		assertTrue(Utils.isUUID(uuid, 0, uuid.length()));
+		assertFalse(Utils.isUUID(uuid.toUpperCase(), 0, uuid.length()));
+		assertFalse(Utils.isUUID("00000000-0000-0000-0000-000000000000", 0, 36));
+		assertNull(Utils.parseEntityId("compute/vm1/" + uuid + "0", null).getUuid());
+	}
+
 	private Map<String, Map<String, String>> buildIds() {
 		Map<String, Map<String, String>> idsAttr = new HashMap<>();
 		String id = "compute/" + Utils.createUUID();